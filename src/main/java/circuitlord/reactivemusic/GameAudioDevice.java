@@ -0,0 +1,163 @@
+package circuitlord.reactivemusic;
+
+import net.fabricmc.fabric.api.client.sound.v1.FabricSoundInstance;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.sound.AbstractSoundInstance;
+import net.minecraft.client.sound.AudioStream;
+import net.minecraft.client.sound.SoundInstance;
+import net.minecraft.client.sound.SoundLoader;
+import net.minecraft.client.sound.SoundSystem;
+import net.minecraft.sound.SoundCategory;
+import net.minecraft.util.Identifier;
+import rm_javazoom.jl.decoder.JavaLayerException;
+import rm_javazoom.jl.player.PcmStream;
+import rm_javazoom.jl.player.StreamAudioDevice;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays music through the game's own sound engine, as a streaming source on its OpenAL device, so it goes to the same
+ * output as every other sound and follows it when that changes. The decoded audio is handed over in the stream's
+ * buffers, without another copy.
+ * <p>
+ * The engine applies the music and master volume sliders itself. When it drops the sound, e.g. because the output
+ * device changed, a new one is started that carries on where it stopped.
+ */
+public class GameAudioDevice extends StreamAudioDevice {
+
+    // the engine keeps a few buffers queued and only tops them up on the game tick, so each one spans a couple of ticks
+    private static final int BUFFER_MILLIS = 100;
+
+    // dropped again this soon after being started, e.g. while the music volume slider is dragged through 0
+    private static final long QUICK_RECONNECT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    // that many times in a row, the engine isn't going to keep playing it
+    private static final int MAX_QUICK_RECONNECTS = 8;
+
+    private volatile boolean unavailable = false;
+
+    // only touched on the client thread
+    private long lastConnectNanos = 0;
+    private int quickReconnects = 0;
+
+    public GameAudioDevice() {
+        super(BUFFER_MILLIS, DEFAULT_QUEUED_BUFFERS);
+    }
+
+    /**
+     * Whether the sound engine wouldn't play the music, e.g. because it has no output device, so another device should
+     * be used from the next song on.
+     */
+    public boolean isUnavailable() {
+        return unavailable;
+    }
+
+    @Override
+    protected void streamStarted(PcmStream stream) {
+        // always queued, so the sound is never started from inside the engine's own tick, and by the time it is the
+        // first buffers are ready
+        MinecraftClient.getInstance().send(() -> connect(stream));
+    }
+
+    @Override
+    protected void writeImpl(float[] samples, int offs, int len) throws JavaLayerException {
+        if (unavailable) {
+            throw new JavaLayerException("The game's sound engine isn't playing music");
+        }
+        super.writeImpl(samples, offs, len);
+    }
+
+    private void connect(PcmStream stream) {
+        if (stream.isEnded() || stream.isAttached()) return;
+
+        long now = System.nanoTime();
+        quickReconnects = now - lastConnectNanos < QUICK_RECONNECT_NANOS ? quickReconnects + 1 : 0;
+        lastConnectNanos = now;
+        if (quickReconnects >= MAX_QUICK_RECONNECTS) {
+            giveUp(stream, "it keeps being stopped");
+            return;
+        }
+
+        SoundSystem.PlayResult result = MinecraftClient.getInstance().getSoundManager().play(new Instance(new Stream(stream)));
+        // a sound started silently is still started and reads the stream, only NOT_STARTED means it never will
+        if (result == SoundSystem.PlayResult.NOT_STARTED) {
+            giveUp(stream, "the sound engine didn't start it");
+        }
+    }
+
+    private void giveUp(PcmStream stream, String reason) {
+        ReactiveMusic.LOGGER.warn("Can't play music through the game's sound engine, " + reason);
+        unavailable = true;
+
+        // wakes up a write waiting for the stream to be read
+        if (getStream() == stream) {
+            fadeOut(0);
+        }
+    }
+
+    /**
+     * What the engine reads from, attached to the device's stream while the engine has it.
+     */
+    private class Stream implements AudioStream {
+
+        private final PcmStream stream;
+        private boolean attached = false;
+
+        Stream(PcmStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public AudioFormat getFormat() {
+            return stream.getFormat();
+        }
+
+        @Override
+        public ByteBuffer read(int size) {
+            // the first read comes once the engine has a source for it
+            if (!attached && !(attached = stream.attach())) {
+                return null;
+            }
+            return stream.read(size);
+        }
+
+        @Override
+        public void close() {
+            if (!attached) return;
+
+            attached = false;
+            stream.close();
+
+            // stopped before the song's end, pick up from there on a new source
+            if (!stream.isEnded()) {
+                MinecraftClient.getInstance().send(() -> connect(stream));
+            }
+        }
+    }
+
+    private static class Instance extends AbstractSoundInstance {
+
+        private final Stream stream;
+
+        Instance(Stream stream) {
+            super(FabricSoundInstance.EMPTY_SOUND, SoundCategory.MUSIC, SoundInstance.createRandom());
+            this.stream = stream;
+            this.attenuationType = SoundInstance.AttenuationType.NONE;
+            this.relative = true;
+        }
+
+        // started even while the music volume is off, the engine stops it as it would any other sound
+        @Override
+        public boolean shouldAlwaysPlay() {
+            return true;
+        }
+
+        @Override
+        public CompletableFuture<AudioStream> getAudioStream(SoundLoader loader, Identifier id, boolean repeatInstantly) {
+            return CompletableFuture.completedFuture(stream);
+        }
+    }
+}
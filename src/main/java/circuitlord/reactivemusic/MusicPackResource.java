@@ -1,5 +1,8 @@
 package circuitlord.reactivemusic;
 
+import rm_javazoom.jl.decoder.Source;
+
+import java.io.Closeable;
 import java.io.InputStream;
 import java.nio.file.FileSystem;
 
@@ -9,9 +12,13 @@ public class MusicPackResource {
 
     public InputStream inputStream = null;
 
+    // what the player reads songs from, either the mapped file or the input stream
+    public Source source = null;
+
     public void close() throws Exception {
-        inputStream.close();
-        fileSystem.close();
+        if (inputStream != null) inputStream.close();
+        if (source instanceof Closeable) ((Closeable) source).close();
+        if (fileSystem != null) fileSystem.close();
     }
 
 
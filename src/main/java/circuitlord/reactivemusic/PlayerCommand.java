@@ -0,0 +1,56 @@
+package circuitlord.reactivemusic;
+
+/**
+ * Immutable message posted from the game thread to the {@link PlayerThread} mailbox.
+ */
+public final class PlayerCommand {
+
+    public enum Type {
+        PLAY,
+        STOP,
+        GAIN
+    }
+
+    public final Type type;
+
+    // sequence number of a play/stop request, lets the game thread tell if everything it asked for is handled
+    public final long generation;
+
+    public final SongpackZip songpack;
+    public final String song;
+
+    // crossfade from the song playing now instead of stopping it first, 0 to stop it
+    public final int crossfadeMillis;
+
+    public final float gain;
+    // how fast the player moves to the new gain, in dB per second
+    public final float gainRate;
+
+    // System.nanoTime() when this was queued, used to measure queue-to-first-sample latency
+    public final long queuedNanos;
+
+
+    private PlayerCommand(Type type, long generation, SongpackZip songpack, String song, int crossfadeMillis, float gain, float gainRate) {
+        this.type = type;
+        this.generation = generation;
+        this.songpack = songpack;
+        this.song = song;
+        this.crossfadeMillis = crossfadeMillis;
+        this.gain = gain;
+        this.gainRate = gainRate;
+        this.queuedNanos = System.nanoTime();
+    }
+
+    public static PlayerCommand play(long generation, SongpackZip songpack, String song, int crossfadeMillis) {
+        return new PlayerCommand(Type.PLAY, generation, songpack, song, crossfadeMillis, 0F, 0F);
+    }
+
+    public static PlayerCommand stop(long generation) {
+        return new PlayerCommand(Type.STOP, generation, null, null, 0, 0F, 0F);
+    }
+
+    public static PlayerCommand gain(float gain, float gainRate) {
+        return new PlayerCommand(Type.GAIN, 0, null, null, 0, gain, gainRate);
+    }
+
+}
@@ -4,13 +4,26 @@ package circuitlord.reactivemusic;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.option.GameOptions;
 import net.minecraft.sound.SoundCategory;
+import rm_javazoom.jl.decoder.Bitstream;
+import rm_javazoom.jl.decoder.Decoder;
+import rm_javazoom.jl.decoder.JavaLayerException;
+import rm_javazoom.jl.decoder.OutputChannels;
+import circuitlord.reactivemusic.config.DecodeQuality;
+import circuitlord.reactivemusic.config.ModConfig;
 import rm_javazoom.jl.player.AudioDevice;
+import rm_javazoom.jl.player.DecodeAheadAudioDevice;
+import rm_javazoom.jl.player.FactoryRegistry;
+import rm_javazoom.jl.player.GainRamp;
 import rm_javazoom.jl.player.JavaSoundAudioDevice;
+import rm_javazoom.jl.player.PcmCache;
+import rm_javazoom.jl.player.PcmOutputDevice;
+import rm_javazoom.jl.player.Resampler;
 import rm_javazoom.jl.player.advanced.AdvancedPlayer;
 import net.minecraft.text.TranslatableTextContent;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PlayerThread extends Thread {
 
@@ -36,33 +49,141 @@ public class PlayerThread extends Thread {
 	public volatile static float gainPercentage = 1.0f;
 	public volatile static float musicDiscDuckPercentage = 1.0f;
 
+	// how fast the player moves to a new gain, in dB per second of music, so it ramps smoothly between ticks
+	public static final float GAIN_RATE = GainRamp.DEFAULT_RATE;
+	// fades cross the whole range in FADE_DURATION ticks, but on the player's clock, so lagging ticks don't stretch them
+	public static final float FADE_GAIN_RATE = (MAX_GAIN - MIN_GAIN) / (ReactiveMusic.FADE_DURATION / 20F);
+
 	public static final float QUIET_VOLUME_PERCENTAGE = 0.7f;
 	public static final float QUIET_VOLUME_LERP_RATE = 0.02f;
 	public static float quietPercentage = 1.0f;
 
-	public volatile static float realGain = 0;
-
-	public volatile static String currentSong = null;
-	public volatile static String currentSongChoices = null;
-
-	public volatile MusicPackResource currentSongResource = null;
-	
-	AdvancedPlayer player;
-
-	private volatile boolean queued = false;
+	public static final int OPEN_RETRY_ATTEMPTS = 3;
+	public static final long OPEN_RETRY_BACKOFF_MS = 250;
+
+	public static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
+	// length of the crossfade between songs of entries that ask for one
+	public static final int CROSSFADE_MILLIS = ReactiveMusic.FADE_DURATION * 50;
+
+	// every song is converted to this format, so songs of any format can share the line and crossfade
+	public static final int OUTPUT_FREQUENCY = 44100;
+	public static final int OUTPUT_CHANNELS = 2;
+
+	// share of the playing time the decoder may take before AUTO quality steps down, measured over a window of music
+	public static final float DECODE_LOAD_BUDGET = 0.2F;
+	public static final long DECODE_LOAD_WINDOW_MICROS = 10_000_000;
+
+	// how often to check whether a fully decoded song has finished playing
+	public static final int PLAY_OUT_POLL_MILLIS = 10;
+	// a stop taking longer than this, from the request to silence, is logged
+	public static final long STOP_LATENCY_WARN_MILLIS = 20;
+
+	// commands from the game thread, the player thread blocks on this whenever nothing is playing
+	private final LinkedBlockingDeque<PlayerCommand> mailbox = new LinkedBlockingDeque<>();
+
+	// generation of the last play/stop request, only incremented by the game thread
+	private final AtomicLong requestedGeneration = new AtomicLong();
+
+	// generation of the song currently playing, and of the last request that's fully handled
+	private volatile long playingGeneration = 0;
+	private volatile long finishedGeneration = 0;
+
+	private volatile long lastStartLatencyNanos = -1;
+	private volatile long lastStopLatencyNanos = -1;
+
+	// last gain sent to the player thread, only touched by the game thread
+	private float sentGain = Float.NaN;
+	private float sentGainRate = Float.NaN;
+	// gain changes are sent at the fade rate until then, so a fade isn't cut short by e.g. the quiet lerp
+	private long fadeUntilNanos;
+
+	// the device every song plays on, either the game's sound engine or a line kept open between songs and only
+	// reopened for another format
+	private volatile AudioDevice outputDevice;
+	// the game's sound engine wouldn't play music, Java Sound is used for the rest of the session
+	private boolean gameAudioUnavailable;
+
+	// owned by the player thread
+	private AdvancedPlayer player;
+	// the last player, kept after its song ended so the next song can reuse its bitstream and decoder
+	private AdvancedPlayer idlePlayer;
+	private DecodeAheadAudioDevice decodeAhead;
+	private MusicPackResource songResource;
+	private PlayerCommand startingCommand;
+	private String playingSong;
+	// the song is fully decoded, what's left in the decode-ahead buffer and the line is still playing
+	private boolean playingOut;
+	// the song being crossfaded out, still decoded until the new one has fully taken over its line
+	private AdvancedPlayer fadingPlayer;
+	private DecodeAheadAudioDevice fadingDecodeAhead;
+	private MusicPackResource fadingResource;
+	private float gain = MAX_GAIN;
+	private float gainRate = GAIN_RATE;
+
+	// quality AUTO plays at, only ever lowered for the rest of the session
+	private DecodeQuality autoQuality = DecodeQuality.FULL;
+	// start of the current decode load window, in decoded and decoding time of the player
+	private long loadWindowMicros;
+	private long loadWindowNanos;
+	private boolean loadWindowWarm;
+
+	// decoded audio of recently played songs, so one that comes up again isn't decoded again. Off until the config gives
+	// it a budget
+	private final PcmCache pcmCache = new PcmCache(0);
 
 	private volatile boolean kill = false;
-	private volatile boolean playing = false;
 
 
 	boolean notQueuedOrPlaying() {
-		return !(queued || isPlaying());
+		return finishedGeneration == requestedGeneration.get();
 	}
 
 	boolean isPlaying() {
-		return playing && !player.getComplete();
+		long playing = playingGeneration;
+		return playing == requestedGeneration.get() && finishedGeneration != playing;
+	}
+
+	/**
+	 * Time between the last song being queued and its first frame being written to the audio device, or -1 if nothing has played yet.
+	 */
+	public long getLastStartLatencyMs() {
+		long latency = lastStartLatencyNanos;
+		return latency < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(latency);
+	}
+
+	/**
+	 * The cache of decoded songs, for its hit, miss and byte counts.
+	 */
+	public PcmCache getPcmCache() {
+		return pcmCache;
+	}
+
+	/**
+	 * Time between the last stop being requested and the song having faded out and been discarded, or -1 if nothing has
+	 * been stopped yet.
+	 */
+	public long getLastStopLatencyMicros() {
+		long latency = lastStopLatencyNanos;
+		return latency < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(latency);
 	}
 	
+	/**
+	 * Number of output lines opened so far, songs of the same format share one.
+	 */
+	public long getLineOpens() {
+		return outputDevice instanceof JavaSoundAudioDevice ? ((JavaSoundAudioDevice) outputDevice).getLineOpens() : 0;
+	}
+
+	/**
+	 * Time it took to get the output line ready for the last song, opening a new one or starting the kept one again,
+	 * or -1 if nothing has played yet.
+	 */
+	public long getLastLineStartMicros() {
+		long nanos = outputDevice instanceof JavaSoundAudioDevice ? ((JavaSoundAudioDevice) outputDevice).getLastStartNanos() : -1;
+		return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(nanos);
+	}
+
 	public PlayerThread() {
 		setDaemon(true);
 		setName("ReactiveMusic Player Thread");
@@ -74,63 +195,441 @@ public class PlayerThread extends Thread {
 		try {
 			while(!kill) {
 
-				if(queued && currentSong != null) {
+				// only block when there's nothing to decode, otherwise just check for new commands between frames
+				PlayerCommand command;
+				if (player == null && fadingPlayer == null) {
+					command = mailbox.take();
+				}
+				else {
+					// once the decode-ahead buffers are full, only wake up for commands until one needs more
+					int wait = getMillisUntilRefill();
+					command = wait > 0 ? mailbox.poll(wait, TimeUnit.MILLISECONDS) : mailbox.poll();
+				}
+
+				if (command != null) {
+					handleCommand(command);
+				}
+				else {
+					if (fadingPlayer != null) {
+						playFadingFrame();
+					}
+					if (player != null && playingOut) {
+						if (decodeAhead.isPlayedOut()) {
+							closePlayer();
+							finishedGeneration = playingGeneration;
+						}
+					}
+					else if (player != null && decodeAhead.getMillisUntilRefill() == 0) {
+						playFrame();
+					}
+				}
+			}
+		} catch(InterruptedException e) {
+			// forceKill
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
 
-					currentSongResource = RMSongpackLoader.getInputStream(ReactiveMusic.currentSongpack.path, "music/" + currentSong + ".mp3", ReactiveMusic.currentSongpack.embedded);
-					if(currentSongResource == null || currentSongResource.inputStream == null)
-						continue;
+		closePlayer();
 
-					player = new AdvancedPlayer(currentSongResource.inputStream);
-					queued = false;
+		if (outputDevice instanceof JavaSoundAudioDevice) {
+			((JavaSoundAudioDevice) outputDevice).closeLine();
+		}
+	}
 
+	private void handleCommand(PlayerCommand command) throws InterruptedException {
+		switch (command.type) {
+			case PLAY:
+				// only once the old song is actually playing, otherwise there's nothing to fade from
+				if (command.crossfadeMillis > 0 && player != null && startingCommand == null) {
+					// keep the old song going on its line until the new one has faded in over it
+					closeFadingPlayer();
+					fadingPlayer = player;
+					fadingDecodeAhead = decodeAhead;
+					fadingResource = songResource;
+					playingOut = false;
+					player = null;
+					decodeAhead = null;
+					songResource = null;
+				}
+				else {
+					closePlayer();
 				}
+				startSong(command);
+				break;
+
+			case STOP:
+				boolean wasPlaying = player != null || fadingPlayer != null;
+				closePlayer();
+				finishedGeneration = command.generation;
+
+				if (wasPlaying) {
+					lastStopLatencyNanos = System.nanoTime() - command.queuedNanos;
+					if (lastStopLatencyNanos > TimeUnit.MILLISECONDS.toNanos(STOP_LATENCY_WARN_MILLIS)) {
+						ReactiveMusic.LOGGER.warn("Stopping " + playingSong + " took " + TimeUnit.NANOSECONDS.toMillis(lastStopLatencyNanos) + "ms");
+					}
+				}
+				break;
 
+			case GAIN:
+				gain = command.gain;
+				gainRate = command.gainRate;
+				applyGain();
+				break;
+		}
+	}
 
-				if(player != null && player.getAudioDevice() != null) {
+	private void startSong(PlayerCommand command) throws InterruptedException {
+		long backoff = OPEN_RETRY_BACKOFF_MS;
 
-					// go to full volume
-					setGainPercentage(1.0f);
-					processRealGain();
+		for (int attempt = 1; !openSong(command); attempt++) {
 
-					ReactiveMusic.LOGGER.info("Playing " + currentSong);
-					playing = true;
-					player.play();
+			if (attempt >= OPEN_RETRY_ATTEMPTS) {
+				ReactiveMusic.LOGGER.error("Giving up on " + command.song + " after " + attempt + " attempts");
+				closeFadingPlayer();
+				finishedGeneration = command.generation;
+				return;
+			}
 
+			// wait before retrying, but bail out early if something other than a gain change comes in
+			long retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+			long remaining;
+			while ((remaining = retryAt - System.nanoTime()) > 0) {
+				PlayerCommand next = mailbox.poll(remaining, TimeUnit.NANOSECONDS);
+				if (next == null) break;
+
+				if (next.type != PlayerCommand.Type.GAIN) {
+					mailbox.offerFirst(next);
+					closeFadingPlayer();
+					finishedGeneration = command.generation;
+					return;
 				}
 
+				handleCommand(next);
 			}
-		} catch(Exception e) {
-			e.printStackTrace();
+
+			backoff *= 2;
 		}
+
+		startingCommand = command;
+		playingSong = command.song;
+		playingGeneration = command.generation;
 	}
 
+	private boolean openSong(PlayerCommand command) {
+		pcmCache.setBudget(ModConfig.getConfig().pcmCacheMegabytes * BYTES_PER_MEGABYTE);
 
+		// a cached song is played as it was decoded, under AUTO whatever quality that was
+		DecodeQuality quality = getDecodeQuality();
+		PcmCache.Reader cached = pcmCache.open(getSongKey(command), ModConfig.getConfig().decodeQuality == DecodeQuality.AUTO ? -1 : quality.ordinal());
 
-	public void resetPlayer() {
-		playing = false;
+		MusicPackResource resource = null;
+		if (cached == null) {
+			resource = openSongResource(command);
+			if (resource == null || resource.source == null) {
+				ReactiveMusic.LOGGER.error("Failed to open " + command.song);
+				return false;
+			}
+		}
+
+		try {
+			int lead = ModConfig.getConfig().decodeAheadMillis;
+			if (fadingDecodeAhead != null) {
+				decodeAhead = new DecodeAheadAudioDevice(fadingDecodeAhead, command.crossfadeMillis, lead, lead / 2);
+			}
+			else {
+				decodeAhead = new DecodeAheadAudioDevice(getOutputDevice(), lead, lead / 2);
+			}
+			decodeAhead.setOutputFormat(OUTPUT_FREQUENCY, OUTPUT_CHANNELS, getResampleQuality());
+			if (cached != null) {
+				decodeAhead.setInputFormat(cached.getFrequency(), cached.getChannels(), cached.getBlockSize());
+				if (idlePlayer != null) {
+					player = idlePlayer;
+					idlePlayer = null;
+					player.reset(cached, decodeAhead);
+				}
+				else {
+					player = new AdvancedPlayer(cached, decodeAhead);
+				}
+			}
+			else if (idlePlayer != null) {
+				player = idlePlayer;
+				idlePlayer = null;
+				setDecodeQuality(player);
+				player.reset(resource.source, decodeAhead);
+			}
+			else {
+				player = new AdvancedPlayer(resource.source, decodeAhead);
+				setDecodeQuality(player);
+			}
+			// the end of the song plays out while commands are still handled, see playFrame
+			player.setCloseAtEnd(false);
+
+			if (cached == null) {
+				decodeAhead.setCacheWriter(pcmCache.record(getSongKey(command), quality.ordinal()));
+			}
+		} catch (JavaLayerException e) {
+			ReactiveMusic.LOGGER.error("Failed to create player for " + command.song + " " + e.getMessage());
+			if (player != null) {
+				player.close();
+				player = null;
+			}
+			else if (cached != null) {
+				cached.close();
+			}
+			decodeAhead = null;
+			if (resource != null) closeResource(resource);
+			return false;
+		}
+
+		songResource = resource;
+		applyGain();
+
+		loadWindowMicros = player.getDecodedMicros();
+		loadWindowNanos = player.getDecodeNanos();
+		loadWindowWarm = false;
+		return true;
+	}
+
+	private AudioDevice getOutputDevice() throws JavaLayerException {
+		if (outputDevice instanceof GameAudioDevice && ((GameAudioDevice) outputDevice).isUnavailable() && !gameAudioUnavailable) {
+			ReactiveMusic.LOGGER.warn("Playing music through Java Sound instead");
+			gameAudioUnavailable = true;
+		}
+
+		// the option applies from the next song
+		boolean throughGame = ModConfig.getConfig().playThroughGameAudio && !gameAudioUnavailable;
+		if (outputDevice != null && outputDevice instanceof GameAudioDevice != throughGame) {
+			if (outputDevice instanceof JavaSoundAudioDevice) {
+				((JavaSoundAudioDevice) outputDevice).closeLine();
+			}
+			outputDevice = null;
+		}
+
+		if (outputDevice == null) {
+			AudioDevice device = throughGame ? new GameAudioDevice() : FactoryRegistry.systemRegistry().createAudioDevice();
+			if (device instanceof JavaSoundAudioDevice) {
+				((JavaSoundAudioDevice) device).setKeepLineOpen(true);
+			}
+			outputDevice = device;
+		}
+		return outputDevice;
+	}
 
-		if(player != null)
-			player.queuedToStop = true;
+	private static int getResampleQuality() {
+		switch (ModConfig.getConfig().resampleQuality) {
+			case LOW: return Resampler.LOW_QUALITY;
+			case HIGH: return Resampler.HIGH_QUALITY;
+			default: return Resampler.MEDIUM_QUALITY;
+		}
+	}
 
-		queued = false;
-		currentSong = null;
+	private DecodeQuality getDecodeQuality() {
+		DecodeQuality quality = ModConfig.getConfig().decodeQuality;
+		return quality == DecodeQuality.AUTO ? autoQuality : quality;
+	}
 
-		if (currentSongResource != null && currentSongResource.fileSystem != null) {
-            try {
-				currentSongResource.close();
-            } catch (Exception e) {
-                ReactiveMusic.LOGGER.error("Failed to close file system/input stream " + e.getMessage());
-            }
-        }
+	private void setDecodeQuality(AdvancedPlayer player) {
+		DecodeQuality quality = getDecodeQuality();
 
-		currentSongResource = null;
+		boolean halfRate = quality == DecodeQuality.HALF_RATE || quality == DecodeQuality.HALF_RATE_MONO;
+		boolean mono = quality == DecodeQuality.MONO || quality == DecodeQuality.HALF_RATE_MONO;
+		player.setDecoderParams(mono ? OutputChannels.DOWNMIX : OutputChannels.BOTH, halfRate ? Decoder.MEDIUM_QUALITY : Decoder.HIGH_QUALITY);
 	}
 
-	public void play(String song) {
-		resetPlayer();
+	/**
+	 * Steps AUTO quality down, from the next song, when decoding took too much of the playing time over the last window.
+	 * Mono comes first as it saves the most.
+	 */
+	private void checkDecodeLoad() {
+		if (ModConfig.getConfig().decodeQuality != DecodeQuality.AUTO || autoQuality == DecodeQuality.HALF_RATE_MONO) return;
+
+		long micros = player.getDecodedMicros() - loadWindowMicros;
+		if (micros < DECODE_LOAD_WINDOW_MICROS) return;
+
+		long nanos = player.getDecodeNanos() - loadWindowNanos;
+		loadWindowMicros += micros;
+		loadWindowNanos += nanos;
+
+		// the first window of a song also has the start up and, early on, the JIT in it
+		if (!loadWindowWarm) {
+			loadWindowWarm = true;
+			return;
+		}
+
+		float load = nanos / (micros * 1000F);
+		if (load <= DECODE_LOAD_BUDGET) return;
+
+		autoQuality = autoQuality == DecodeQuality.FULL ? DecodeQuality.MONO : DecodeQuality.HALF_RATE_MONO;
+		ReactiveMusic.LOGGER.warn("Decoding took " + Math.round(load * 100) + "% of the playing time, lowering quality to " + autoQuality + " from the next song");
+	}
 
-		currentSong = song;
-		queued = true;
+	private static MusicPackResource openSongResource(PlayerCommand command) {
+		return RMSongpackLoader.openSong(command.songpack.path, "music/" + command.song + ".mp3", command.songpack.embedded);
+	}
+
+	// identifies a song across songpacks, for the cache of decoded songs
+	private static String getSongKey(PlayerCommand command) {
+		return (command.songpack.embedded ? "embedded" : String.valueOf(command.songpack.path)) + "/" + command.song;
+	}
+
+	private void playFrame() {
+		boolean hasMoreFrames;
+		try {
+			hasMoreFrames = player.play(1);
+		} catch (JavaLayerException e) {
+			ReactiveMusic.LOGGER.error("Failed while playing " + playingSong + " " + e.getMessage());
+			// what was decoded of it isn't the whole song
+			decodeAhead.setCacheWriter(null);
+			hasMoreFrames = false;
+		}
+
+		if (startingCommand != null) {
+			lastStartLatencyNanos = System.nanoTime() - startingCommand.queuedNanos;
+			ReactiveMusic.LOGGER.info("Playing " + startingCommand.song + (player.getBitstream() == null ? " from the cache" : "")
+					+ " (" + getLastStartLatencyMs() + "ms from queue to first frame)");
+			startingCommand = null;
+		}
+
+		if (!hasMoreFrames) {
+			// the rest is played out from the buffers without blocking this thread, so a stop can still cut it short
+			decodeAhead.end();
+			playingOut = true;
+		}
+		else {
+			checkDecodeLoad();
+		}
+	}
+
+	/**
+	 * Decodes a frame of the song being crossfaded out if it needs more, or closes it once it's no longer heard.
+	 */
+	private void playFadingFrame() {
+		if (fadingDecodeAhead.isFadedOut()) {
+			closeFadingPlayer();
+			return;
+		}
+		if (fadingDecodeAhead.getMillisUntilRefill() > 0) return;
+
+		boolean hasMoreFrames;
+		try {
+			// at its end this leaves the rest of its buffer to the crossfade instead of waiting for it to play
+			hasMoreFrames = fadingPlayer.play(1);
+		} catch (JavaLayerException e) {
+			ReactiveMusic.LOGGER.error("Failed while crossfading " + e.getMessage());
+			fadingDecodeAhead.setCacheWriter(null);
+			hasMoreFrames = false;
+		}
+
+		if (!hasMoreFrames) {
+			fadingDecodeAhead.end();
+			closeFadingPlayer();
+		}
+	}
+
+	private int getMillisUntilRefill() {
+		int wait = Integer.MAX_VALUE;
+		if (player != null) {
+			if (playingOut) {
+				wait = decodeAhead.isPlayedOut() ? 0 : PLAY_OUT_POLL_MILLIS;
+			}
+			else {
+				wait = decodeAhead.getMillisUntilRefill();
+			}
+		}
+		if (fadingPlayer != null) {
+			wait = fadingDecodeAhead.isFadedOut() ? 0 : Math.min(wait, fadingDecodeAhead.getMillisUntilRefill());
+		}
+		return wait;
+	}
+
+	private void closeFadingPlayer() {
+		if (fadingPlayer == null) return;
+
+		fadingPlayer.close();
+		if (idlePlayer == null) {
+			idlePlayer = fadingPlayer;
+		}
+		fadingPlayer = null;
+		fadingDecodeAhead = null;
+
+		if (fadingResource != null) {
+			closeResource(fadingResource);
+			fadingResource = null;
+		}
+	}
+
+	private void closePlayer() {
+		closeFadingPlayer();
+
+		if (player != null) {
+			Bitstream bitstream = player.getBitstream();
+			if (bitstream != null && bitstream.getResyncs() > 0) {
+				ReactiveMusic.LOGGER.warn(playingSong + " lost sync " + bitstream.getResyncs() + " times, skipped " + bitstream.getSkippedBytes() + " bytes");
+			}
+			player.close();
+			idlePlayer = player;
+			player = null;
+		}
+
+		if (decodeAhead != null) {
+			if (decodeAhead.getUnderruns() > 0) {
+				ReactiveMusic.LOGGER.warn(playingSong + " ran out of decoded audio " + decodeAhead.getUnderruns() + " times");
+			}
+			decodeAhead = null;
+		}
+
+		if (songResource != null) {
+			closeResource(songResource);
+			songResource = null;
+		}
+
+		startingCommand = null;
+		playingOut = false;
+	}
+
+	private static void closeResource(MusicPackResource resource) {
+		try {
+			resource.close();
+		} catch (Exception e) {
+			ReactiveMusic.LOGGER.error("Failed to close file system/input stream " + e.getMessage());
+		}
+	}
+
+	private void applyGain() {
+		if (decodeAhead == null) return;
+
+		// the gain is applied as the samples go to the line, after the decode-ahead buffer, so it still takes effect right away
+		AudioDevice device = decodeAhead.getDevice();
+		if (device instanceof PcmOutputDevice) {
+			((PcmOutputDevice) device).setGain(gain, gainRate);
+		}
+	}
+
+
+
+	public void resetPlayer() {
+		mailbox.offer(PlayerCommand.stop(requestedGeneration.incrementAndGet()));
+	}
+
+	public void play(SongpackZip songpack, String song) {
+		play(songpack, song, 0);
+	}
+
+	/**
+	 * Plays a song over the one playing now, which is faded out on the same line as the new one fades in.
+	 */
+	public void crossfade(SongpackZip songpack, String song) {
+		play(songpack, song, CROSSFADE_MILLIS);
+	}
+
+	private void play(SongpackZip songpack, String song, int crossfadeMillis) {
+		// go to full volume, the old song is stopped by the time this one starts, or is faded out by the crossfade itself
+		setGainPercentage(1.0f);
+		fadeUntilNanos = 0;
+		sendGain(computeRealGain());
+
+		mailbox.offer(PlayerCommand.play(requestedGeneration.incrementAndGet(), songpack, song, crossfadeMillis));
 	}
 	
 /*	public float getGain() {
@@ -154,13 +653,35 @@ public class PlayerThread extends Thread {
 	public void setMusicDiscDuckPercentage(float newGain) {
 		musicDiscDuckPercentage = newGain;
 	}
+
+	/**
+	 * Fades to a gain percentage, over FADE_DURATION ticks for the whole way. Call every tick until the fade is done,
+	 * the player keeps fading on its own in between.
+	 */
+	public void fadeGainPercentage(float target) {
+		target = Math.min(1.0f, Math.max(0.0f, target));
+		if (target != gainPercentage) {
+			setGainPercentage(target);
+			startFade();
+		}
+	}
+
+	public void fadeMusicDiscDuckPercentage(float target) {
+		if (target != musicDiscDuckPercentage) {
+			setMusicDiscDuckPercentage(target);
+			startFade();
+		}
+	}
+
+	private void startFade() {
+		fadeUntilNanos = System.nanoTime() + ReactiveMusic.FADE_DURATION * 50_000_000L;
+		sendGain(computeRealGain());
+	}
 	
 	public void processRealGain() {
 
 		var client = MinecraftClient.getInstance();
 
-		GameOptions options = MinecraftClient.getInstance().options;
-
 		boolean musicOptionsOpen = false;
 
 		// Try to find the music options menu
@@ -185,8 +706,23 @@ public class PlayerThread extends Thread {
         quietPercentage = MyMath.lerpConstant(quietPercentage, targetQuietMusicPercentage, QUIET_VOLUME_LERP_RATE);
 
 		
+		sendGain(computeRealGain());
+		
+		//if(musicGain == 0)
+		//	play(null);
+	}
+
+	private float computeRealGain() {
+
+		GameOptions options = MinecraftClient.getInstance().options;
+
 		float minecraftGain = options.getSoundVolume(SoundCategory.MUSIC) * options.getSoundVolume(SoundCategory.MASTER);
 
+		// the game's sound engine already applies its own volume sliders to what it plays
+		if (outputDevice instanceof GameAudioDevice) {
+			minecraftGain = 1.0f;
+		}
+
 		// my jank way of changing the volume curve to be less drastic
 		float minecraftDistFromMax = 1.0f - minecraftGain;
 		float minecraftGainAddScalar = (minecraftDistFromMax * 1.0f) * minecraftGain;
@@ -205,20 +741,17 @@ public class PlayerThread extends Thread {
 
 		//ReactiveMusic.LOGGER.info("Current gain: " + newRealGain);
 
-		realGain = newRealGain;
-		if(player != null) {
-			AudioDevice device = player.getAudioDevice();
-			if(device != null && device instanceof JavaSoundAudioDevice) {
-				try {
-					((JavaSoundAudioDevice) device).setGain(newRealGain);
-				} catch(IllegalArgumentException e) {
-					ReactiveMusic.LOGGER.error(e.toString());
-				}
-			}
-		}
-		
-		//if(musicGain == 0)
-		//	play(null);
+		return newRealGain;
+	}
+
+	// only wake up the player thread when the gain actually changed
+	private void sendGain(float newRealGain) {
+		float rate = System.nanoTime() - fadeUntilNanos < 0 ? FADE_GAIN_RATE : GAIN_RATE;
+		if (newRealGain == sentGain && rate == sentGainRate) return;
+
+		sentGain = newRealGain;
+		sentGainRate = rate;
+		mailbox.offer(PlayerCommand.gain(newRealGain, rate));
 	}
 
 	
@@ -238,11 +771,10 @@ public class PlayerThread extends Thread {
 	
 	public void forceKill() {
 		try {
-			resetPlayer();
+			kill = true;
 			interrupt();
 
 			finalize();
-			kill = true;
 		} catch(Throwable e) {
 			e.printStackTrace();
 		}
@@ -4,11 +4,20 @@ import circuitlord.reactivemusic.entries.RMRuntimeEntry;
 import net.fabricmc.loader.api.FabricLoader;
 import org.rm_yaml.snakeyaml.Yaml;
 import org.rm_yaml.snakeyaml.constructor.Constructor;
+import rm_javazoom.jl.decoder.ByteBufferSource;
+import rm_javazoom.jl.decoder.FrameIndex;
+import rm_javazoom.jl.decoder.ID3v2Tag;
+import rm_javazoom.jl.decoder.InputStreamSource;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RMSongpackLoader {
 
@@ -65,6 +74,117 @@ public class RMSongpackLoader {
         return null;
     }
 
+    /**
+     * Opens a song for the player. Songs in plain folders are mapped into memory, so the decoder reads them in place
+     * and playback can start anywhere in them, zipped and embedded ones are streamed.
+     */
+    public static MusicPackResource openSong(Path dirPath, String fileName, boolean embedded) {
+        if (!embedded && dirPath != null && Files.isDirectory(dirPath)) {
+            Path filePath = dirPath.resolve(fileName);
+            try (FileChannel channel = FileChannel.open(filePath)) {
+                MusicPackResource resource = new MusicPackResource();
+                resource.source = ByteBufferSource.map(channel);
+                return resource;
+            } catch (NoSuchFileException e) {
+                ReactiveMusic.LOGGER.error("Couldn't find file! " + filePath);
+            } catch (IOException e) {
+                ReactiveMusic.LOGGER.error(e.toString());
+            }
+            return null;
+        }
+
+        MusicPackResource resource = getInputStream(dirPath, fileName, embedded);
+        if (resource != null && resource.inputStream != null) {
+            resource.source = new InputStreamSource(resource.inputStream);
+        }
+        return resource;
+    }
+
+    // descriptions of songs that started playing, read off the render thread, see describeSong
+    private static final Map<String, String> songDescriptions = new ConcurrentHashMap<>();
+    private static final ExecutorService songDescriber = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ReactiveMusic Song Info");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts reading the title, artist and length of a song in the background, for describeSong. Songs that were
+     * described before aren't read again.
+     */
+    public static void readSongDescription(SongpackZip songpack, String song) {
+        String key = getSongKey(songpack, song);
+        if (songDescriptions.containsKey(key)) return;
+
+        songDescriber.execute(() -> songDescriptions.computeIfAbsent(key, k -> readDescription(songpack, song)));
+    }
+
+    /**
+     * Title, artist and length of a song for display, or just its name if readSongDescription hasn't read them yet.
+     * Never touches the file, so it's safe to call while building a screen.
+     */
+    public static String describeSong(SongpackZip songpack, String song) {
+        return songDescriptions.getOrDefault(getSongKey(songpack, song), song);
+    }
+
+    private static String getSongKey(SongpackZip songpack, String song) {
+        return (songpack.embedded ? "embedded" : String.valueOf(songpack.path)) + "/" + song;
+    }
+
+    /**
+     * Only the text frames of the ID3v2 tag are read, cover art and the like are skipped over, and nothing is kept
+     * around. Without a length in the tag the whole file is scanned for its frames.
+     */
+    private static String readDescription(SongpackZip songpack, String song) {
+        String fileName = "music/" + song + ".mp3";
+
+        String title = song;
+        String artist = null;
+        long lengthMillis = -1;
+
+        MusicPackResource resource = getInputStream(songpack.path, fileName, songpack.embedded);
+        if (resource != null && resource.inputStream != null) {
+            try {
+                ID3v2Tag tag = ID3v2Tag.read(new BufferedInputStream(resource.inputStream));
+                if (tag != null) {
+                    if (tag.getTitle() != null && !tag.getTitle().isBlank()) title = tag.getTitle();
+                    artist = tag.getArtist();
+                    lengthMillis = tag.getLengthMillis();
+                }
+            } catch (IOException | RuntimeException e) {
+                ReactiveMusic.LOGGER.error("Failed to read tags of " + song + " " + e.getMessage());
+            }
+            closeResource(resource);
+        }
+
+        // most files don't say how long they are, count the frames instead
+        if (lengthMillis < 0) {
+            resource = getInputStream(songpack.path, fileName, songpack.embedded);
+            if (resource != null && resource.inputStream != null) {
+                try {
+                    FrameIndex index = FrameIndex.scan(new InputStreamSource(new BufferedInputStream(resource.inputStream)));
+                    if (index != null) lengthMillis = index.getDurationMillis();
+                } catch (IOException | RuntimeException e) {
+                    ReactiveMusic.LOGGER.error("Failed to read length of " + song + " " + e.getMessage());
+                }
+                closeResource(resource);
+            }
+        }
+
+        String description = title;
+        if (artist != null && !artist.isBlank()) description += " - " + artist;
+        if (lengthMillis >= 0) description += String.format(" (%d:%02d)", lengthMillis / 60000, lengthMillis / 1000 % 60);
+        return description;
+    }
+
+    private static void closeResource(MusicPackResource resource) {
+        try {
+            resource.close();
+        } catch (Exception e) {
+            ReactiveMusic.LOGGER.error("Failed to close file system/input stream " + e.getMessage());
+        }
+    }
+
     public static void fetchAvailableSongpacks() {
         long startTime = System.currentTimeMillis();
         availableSongpacks.clear();
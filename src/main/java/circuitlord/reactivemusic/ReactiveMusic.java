@@ -63,8 +63,6 @@ public class ReactiveMusic implements ModInitializer {
 	//static int fadeInTicks = 0;
 	static int silenceTicks = 0;
 
-	static int musicTrackedSoundsDuckTicks = 0;
-
 	static int slowTickUpdateCounter = 0;
 
 	static boolean currentDimBlacklisted = false;
@@ -364,8 +362,8 @@ public class ReactiveMusic implements ModInitializer {
 			if (thread.isPlaying() && !wantsToSwitch && fadeOutTicks > 0) {
 				fadeOutTicks--;
 
-				// Copy the behavior from below where it fades out
-				thread.setGainPercentage(1f - (fadeOutTicks / (float)FADE_DURATION));
+				// the player fades back in on its own clock at the same rate as below, this just counts along
+				thread.fadeGainPercentage(1f);
 			}
 
 
@@ -389,7 +387,20 @@ public class ReactiveMusic implements ModInitializer {
 				}
 
 				if (shouldFadeOutMusic) {
-					tickFadeOut();
+
+					// crossfade straight into the new entry, unless we've already started fading out
+					String picked = newEntry.crossfade && fadeOutTicks == 0 ? SongPicker.pickRandomSong(selectedSongs) : null;
+
+					if (picked != null) {
+						crossfadeCurrentSong(picked, newEntry);
+					}
+					else if (queuedToStopMusic) {
+						// forced, so stop right away instead of the slow fade, the player still fades the last few ms so it doesn't click
+						resetPlayer();
+					}
+					else {
+						tickFadeOut();
+					}
 				}
 			}
 			else {
@@ -553,7 +564,8 @@ public class ReactiveMusic implements ModInitializer {
 
 		if (fadeOutTicks < FADE_DURATION) {
 			fadeOutTicks++;
-			thread.setGainPercentage(1f - (fadeOutTicks / (float)FADE_DURATION));
+			// the player ramps the gain down by itself, smoothly and independent of the tick rate, the ticks only decide when to stop
+			thread.fadeGainPercentage(0f);
 		}
 		else {
 			resetPlayer();
@@ -561,6 +573,10 @@ public class ReactiveMusic implements ModInitializer {
 	}
 
 
+	public static String getCurrentSong() {
+		return currentSong;
+	}
+
 	public static void changeCurrentSong(String song, RMRuntimeEntry newEntry) {
 
 		resetPlayer();
@@ -574,7 +590,8 @@ public class ReactiveMusic implements ModInitializer {
 		if (song != null) {
             doDebugLog("Changing entry: " + newEntry.eventString + " Song name: " + song);
 
-			thread.play(song);
+			thread.play(currentSongpack, song);
+			RMSongpackLoader.readSongDescription(currentSongpack, song);
 		}
 		else {
 			// TODO: maybe a better way to do this that doesn't spam?
@@ -590,6 +607,24 @@ public class ReactiveMusic implements ModInitializer {
 
 
 
+	public static void crossfadeCurrentSong(String song, RMRuntimeEntry newEntry) {
+
+		currentSong = song;
+		currentEntry = newEntry;
+
+		doDebugLog("Crossfading to entry: " + newEntry.eventString + " Song name: " + song);
+
+		thread.crossfade(currentSongpack, song);
+		RMSongpackLoader.readSongDescription(currentSongpack, song);
+
+		fadeOutTicks = 0;
+		queuedToStopMusic = false;
+		queuedToPlayMusic = false;
+
+	}
+
+
+
 	public static void setActiveSongpack(SongpackZip songpackZip) {
 
 		// TODO: more than one songpack?
@@ -729,20 +764,8 @@ public class ReactiveMusic implements ModInitializer {
 
 
 		// only duck for jukebox if our volume is loud enough to where it would matter
-		if (foundSoundInstance) {
-
-			if (musicTrackedSoundsDuckTicks < FADE_DURATION) {
-				musicTrackedSoundsDuckTicks++;
-			}
-
-		}
-		else {
-			if (musicTrackedSoundsDuckTicks > 0) {
-				musicTrackedSoundsDuckTicks--;
-			}
-		}
-
-		thread.setMusicDiscDuckPercentage(1f - (musicTrackedSoundsDuckTicks / (float)FADE_DURATION));
+		// the player fades between the two over FADE_DURATION on its own clock
+		thread.fadeMusicDiscDuckPercentage(foundSoundInstance ? 0f : 1f);
 
 
 	}
@@ -27,6 +27,9 @@ public class SongpackEntry {
 
     public boolean startMusicOnEventValid = false;
 
+    // switch to this entry by crossfading into its song instead of fading out and waiting first
+    public boolean crossfade = false;
+
     // deprecated for now
     public boolean stackable = false;
 
@@ -0,0 +1,9 @@
+package circuitlord.reactivemusic.config;
+
+public enum DecodeQuality {
+    AUTO,
+    FULL,
+    HALF_RATE,
+    MONO,
+    HALF_RATE_MONO
+}
@@ -76,6 +76,27 @@ public class ModConfig {
     @SerialEntry
     public boolean hasForcedInitialVolume = false;
 
+    // how far the mp3 decoder runs ahead of what's being heard
+    @SerialEntry
+    public int decodeAheadMillis = 1000;
+
+    // trades sound quality for less CPU time spent decoding
+    @SerialEntry
+    public DecodeQuality decodeQuality = DecodeQuality.AUTO;
+
+    // songs that aren't 44.1 kHz stereo are converted to it, better filters take more CPU time
+    @SerialEntry
+    public ResampleQuality resampleQuality = ResampleQuality.MEDIUM;
+
+    // music goes through minecraft's sound engine rather than a java sound line of its own. Off until that route has
+    // been tried in game on every supported version
+    @SerialEntry
+    public boolean playThroughGameAudio = false;
+
+    // memory for decoded songs, so songs that come up again aren't decoded again. 0 turns it off
+    @SerialEntry
+    public int pcmCacheMegabytes = 0;
+
 
 
 
@@ -159,6 +180,10 @@ public class ModConfig {
                         description = "Encountered warnings while loading:\n\n" + songpackZip.errorString + "----------\n\n" + description;
                     }
 
+                    if (isLoaded && ReactiveMusic.getCurrentSong() != null) {
+                        description += "\n\nNow playing: " + RMSongpackLoader.describeSong(songpackZip, ReactiveMusic.getCurrentSong());
+                    }
+
                     songpacksBuilder.option(ButtonOption.createBuilder()
                             .name(Text.literal(name))
                             .description(
@@ -225,6 +250,70 @@ public class ModConfig {
 
                                     .build())
 
+                            .option(Option.<Integer>createBuilder()
+                                    .name(Text.literal("Decode Ahead"))
+                                    .binding(defaults.decodeAheadMillis, () -> config.decodeAheadMillis, newVal -> config.decodeAheadMillis = newVal )
+                                    .controller(opt -> IntegerSliderControllerBuilder.create(opt).range(500, 2000).step(250).formatValue(val -> Text.literal(val + " ms")))
+                                    .description(
+                                            OptionDescription.createBuilder()
+                                                    .text(Text.literal("How much music is decoded ahead of playback.\n\n" +
+                                                            "Raise this if music stutters while the game is busy. Applies from the next song."))
+                                                    .build()
+                                    )
+
+                                    .build())
+
+                            .option(Option.<DecodeQuality>createBuilder()
+                                    .name(Text.literal("Decode Quality"))
+                                    .binding(defaults.decodeQuality, () -> config.decodeQuality, newVal -> config.decodeQuality = newVal )
+                                    .controller(opt -> EnumControllerBuilder.create(opt).enumClass(DecodeQuality.class))
+                                    .description(
+                                            OptionDescription.createBuilder()
+                                                    .text(Text.literal("Lower quality takes less CPU time to decode, for slow computers.\n\n" +
+                                                            "HALF_RATE drops the highest frequencies, MONO mixes both channels into one.\n\n" +
+                                                            "AUTO starts at full quality and steps down if decoding can't keep up. Applies from the next song."))
+                                                    .build()
+                                    )
+
+                                    .build())
+
+                            .option(Option.<ResampleQuality>createBuilder()
+                                    .name(Text.literal("Resample Quality"))
+                                    .binding(defaults.resampleQuality, () -> config.resampleQuality, newVal -> config.resampleQuality = newVal )
+                                    .controller(opt -> EnumControllerBuilder.create(opt).enumClass(ResampleQuality.class))
+                                    .description(
+                                            OptionDescription.createBuilder()
+                                                    .text(Text.literal("How songs that aren't 44.1 kHz stereo, and songs decoded at HALF_RATE or MONO, are converted for playback.\n\n" +
+                                                            "Higher quality keeps more of the highest frequencies and lets less distortion through, for a little more CPU time. Applies from the next song."))
+                                                    .build()
+                                    )
+
+                                    .build())
+
+                            .option(Option.<Boolean>createBuilder()
+                                    .name(Text.literal("Play Through Game Audio"))
+                                    .description(OptionDescription.createBuilder()
+                                            .text(Text.literal("Experimental. Plays music through Minecraft's own sound engine, so it uses the same output device as the rest of the game and follows it when that changes.\n\n" +
+                                                    "When off, music plays on Java Sound's default device, which also stops music right away rather than a fraction of a second later. Java Sound is used anyway if the game's sound engine won't play music. Applies from the next song."))
+                                            .build())
+                                    .binding(defaults.playThroughGameAudio, () -> config.playThroughGameAudio, newVal -> config.playThroughGameAudio = newVal )
+                                    .controller(TickBoxControllerBuilder::create)
+                                    .build())
+
+                            .option(Option.<Integer>createBuilder()
+                                    .name(Text.literal("Decoded Song Cache"))
+                                    .binding(defaults.pcmCacheMegabytes, () -> config.pcmCacheMegabytes, newVal -> config.pcmCacheMegabytes = newVal )
+                                    .controller(opt -> IntegerSliderControllerBuilder.create(opt).range(0, 1024).step(32).formatValue(val -> Text.literal(val == 0 ? "Off" : val + " MB")))
+                                    .description(
+                                            OptionDescription.createBuilder()
+                                                    .text(Text.literal("Memory kept for songs that were played to the end, so they play without being decoded again when they come up. " +
+                                                            "A three minute song takes about 30 MB, less at HALF_RATE or MONO.\n\n" +
+                                                            "The least recently played songs are dropped to stay within it. The memory is outside of Java's heap. Applies from the next song."))
+                                                    .build()
+                                    )
+
+                                    .build())
+
 
 /*
                             .option(Option.<MusicDelayLength>createBuilder()
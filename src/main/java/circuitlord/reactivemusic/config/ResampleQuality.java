@@ -0,0 +1,7 @@
+package circuitlord.reactivemusic.config;
+
+public enum ResampleQuality {
+    LOW,
+    MEDIUM,
+    HIGH
+}
@@ -25,6 +25,8 @@ public class RMRuntimeEntry {
 
     public float forceChance = 1.0f;
 
+    public boolean crossfade = false;
+
     public List<String> songs = new ArrayList<>();
 
     public String eventString = "";
@@ -48,6 +50,8 @@ public class RMRuntimeEntry {
 
         Entry.forceChance = songpackEntry.forceChance;
 
+        Entry.crossfade = songpackEntry.crossfade;
+
         if (songpackEntry.songs != null) {
             Entry.songs = Arrays.stream(songpackEntry.songs).toList();
         }
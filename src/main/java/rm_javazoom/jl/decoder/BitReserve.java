@@ -26,15 +26,16 @@
  */
 
 package rm_javazoom.jl.decoder;
+
+import java.util.Arrays;
 	
 /**
  * Implementation of Bit Reservoir for Layer III.
  * <p>
- * The implementation stores single bits as a word in the buffer. If
- * a bit is set, the corresponding word in the buffer will be non-zero.
- * If a bit is clear, the corresponding word is zero. Although this
- * may seem waseful, this can be a factor of two quicker than 
- * packing 8 bits to a byte and extracting. 
+ * The implementation packs the reserved bits into 32-bit words, most
+ * significant bit first. Any read of up to 32 bits spans at most two
+ * words, so reading, peeking and rewinding cost the same regardless
+ * of the number of bits involved.
  * <p> 
  */
 
@@ -44,8 +45,8 @@ final class BitReserve
 {
    /**
     * Size of the internal buffer to store the reserved bits.
-    * Must be a power of 2. And x8, as each bit is stored as a single
-    * entry.
+    * Must be a power of 2, and a multiple of 32 as the bits are
+    * packed into words.
     */
 	private static final int		BUFSIZE = 4096*8;
 	
@@ -54,10 +55,14 @@ final class BitReserve
 	 * modulus operation on BUFSIZE.
 	 */
 	private static final int		BUFSIZE_MASK = BUFSIZE-1;
+
+	/**
+	 * Mask for the modulus operation on the number of words.
+	 */
+	private static final int		WORDS_MASK = (BUFSIZE >>> 5)-1;
 	
 	private int 					offset, totbit, buf_byte_idx;
-	private final int[] 			buf = new int[BUFSIZE];
-	private int 					buf_bit_idx;
+	private final int[] 			buf = new int[BUFSIZE >>> 5];
 	
    BitReserve()
    {
@@ -66,6 +71,17 @@ final class BitReserve
       totbit = 0;
       buf_byte_idx = 0;	  
    }
+
+   /**
+    * Empties the reserve, as if it had just been created.
+	*/
+   public void reset()
+   {
+	  offset = 0;
+	  totbit = 0;
+	  buf_byte_idx = 0;
+	  Arrays.fill(buf, 0);
+   }
       
    
    /**
@@ -82,55 +98,41 @@ final class BitReserve
 	*/
    public int hgetbits(int N)
    {
-   	 totbit += N;
-	 
-	 int val = 0;
-	 
-	 int pos = buf_byte_idx;
-	 if (pos+N < BUFSIZE)
+	 if (N > 32)
 	 {
-		while (N-- > 0)
-		{
-			val <<= 1;
-			val |= ((buf[pos++]!=0) ? 1 : 0);		 
-		}
-	}
-	 else
-	 {	 
-		 while (N-- > 0)
-		{
-			 val <<= 1;			 
-			 val |= ((buf[pos]!=0) ? 1 : 0);
-			 pos = (pos+1) & BUFSIZE_MASK;
-		}		 
-	 }	
-	 buf_byte_idx = pos;
+		// only the last 32 bits fit in the result
+		hskipbits(N - 32);
+		N = 32;
+	 }
+	 int val = hpeekbits(N);
+	 hskipbits(N);
 	 return val;
    }
-   
-	 
-   
+
    /**
-    * Read 1 bit from the bit stream.
-	*/
-/*
-   public int hget1bit_old()
+    * Returns the next N bits without consuming them.
+    * @param N the number of bits, at most 32.
+    */
+   public int hpeekbits(int N)
    {
-   	  int val;
-	  totbit++;
-	  if (buf_bit_idx == 0)
-	  {
-         buf_bit_idx = 8;
-	     buf_byte_idx++;		 
-	  }
-      // BUFSIZE = 4096 = 2^12, so
-      // buf_byte_idx%BUFSIZE == buf_byte_idx & 0xfff
-      val = buf[buf_byte_idx & BUFSIZE_MASK] & putmask[buf_bit_idx];
-      buf_bit_idx--;
-	  val = val >>> buf_bit_idx;
-      return val;   
+	 if (N == 0)
+		 return 0;
+
+	 int pos = buf_byte_idx;
+	 int word = pos >>> 5;
+	 long bits = ((long)buf[word] << 32) | (buf[(word+1) & WORDS_MASK] & 0xFFFFFFFFL);
+	 return (int)((bits << (pos & 31)) >>> (64 - N));
    }
- */
+
+   /**
+    * Skips N bits, typically after they were examined with hpeekbits().
+    */
+   public void hskipbits(int N)
+   {
+	 totbit += N;
+	 buf_byte_idx = (buf_byte_idx+N) & BUFSIZE_MASK;
+   }
+
    /**
     * Returns next bit from reserve.
     * @returns 0 if next bit is reset, or 1 if next bit is set.
@@ -138,43 +140,10 @@ final class BitReserve
    public int hget1bit()
    {   	  
 	  totbit++;	  
-	  int val = buf[buf_byte_idx];
-	  buf_byte_idx = (buf_byte_idx+1) & BUFSIZE_MASK;
-      return val;
-   }
-   
-   /**
-    * Retrieves bits from the reserve.     
-    */
-/*   
-   public int readBits(int[] out, int len)
-   {
-		if (buf_bit_idx == 0)
-		{
-		   buf_bit_idx = 8;
-		   buf_byte_idx++;
-		   current = buf[buf_byte_idx & BUFSIZE_MASK];
-		}      
-		
-		
-		
-		// save total number of bits returned
-		len = buf_bit_idx;
-		buf_bit_idx = 0;
-		  
-		int b = current;
-		int count = len-1;
-		  
-		while (count >= 0)
-		{
-		    out[count--] = (b & 0x1);
-		    b >>>= 1;
-		}
-	  
-		totbit += len;
-		return len;
+	  int pos = buf_byte_idx;
+	  buf_byte_idx = (pos+1) & BUFSIZE_MASK;
+      return (buf[pos >>> 5] >>> (31 - (pos & 31))) & 1;
    }
-  */
    
    /**
     * Write 8 bits into the bit stream.
@@ -182,20 +151,10 @@ final class BitReserve
    public void hputbuf(int val)
    {   	  
 	   int ofs = offset;
-	   buf[ofs++] = val & 0x80;
-	   buf[ofs++] = val & 0x40;
-	   buf[ofs++] = val & 0x20;
-	   buf[ofs++] = val & 0x10;
-	   buf[ofs++] = val & 0x08;
-	   buf[ofs++] = val & 0x04;
-	   buf[ofs++] = val & 0x02;
-	   buf[ofs++] = val & 0x01;
-	   
-	   if (ofs==BUFSIZE)
-			offset = 0;
-	   else
-			offset = ofs;
-	   
+	   int shift = 24 - (ofs & 31);
+	   int word = ofs >>> 5;
+	   buf[word] = (buf[word] & ~(0xFF << shift)) | ((val & 0xFF) << shift);
+	   offset = (ofs+8) & BUFSIZE_MASK;
    }
  
    /**
@@ -204,9 +163,7 @@ final class BitReserve
    public void rewindNbits(int N)
    {
  	  totbit -= N;	  	  
-	  buf_byte_idx -= N;
-	  if (buf_byte_idx<0)
-		  buf_byte_idx += BUFSIZE;
+	  buf_byte_idx = (buf_byte_idx-N) & BUFSIZE_MASK;
    }
 	
    /**
@@ -216,8 +173,6 @@ final class BitReserve
    {
       int bits = (N << 3);
 	  totbit -= bits;
-	  buf_byte_idx -= bits;	  
-	  if (buf_byte_idx<0)
-		  buf_byte_idx += BUFSIZE;
+	  buf_byte_idx = (buf_byte_idx-bits) & BUFSIZE_MASK;
    }
 }
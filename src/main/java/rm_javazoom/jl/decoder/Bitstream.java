@@ -37,9 +37,11 @@ package rm_javazoom.jl.decoder;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
 
 
 /**
@@ -70,6 +72,31 @@ public final class Bitstream implements BitstreamErrors
 	 */
 	private static final int	BUFFER_INT_SIZE = 433;
 
+	/**
+	 * Number of frames that must follow a header found by searching
+	 * before it is taken as the start of a frame.
+	 */
+	private static final int	CONFIRM_FRAMES = 2;
+
+	/**
+	 * Number of bytes searched at once when the stream has lost
+	 * sync: a header followed by <code>CONFIRM_FRAMES</code> of the
+	 * longest frames and the header after them.
+	 */
+	private static final int	SCAN_SIZE = (CONFIRM_FRAMES + 1)*BUFFER_INT_SIZE*4 + 4;
+
+	/**
+	 * Bytes that can be pushed back: what is left of a search window
+	 * plus a frame.
+	 */
+	private static final int	PUSHBACK_SIZE = SCAN_SIZE + BUFFER_INT_SIZE*4;
+
+	/**
+	 * Only the version, layer and sample rate of a frame must match
+	 * the frame before it.
+	 */
+	private static final int	STREAM_MASK = 0xFFFE0C00;
+
 	/**
 	 * The frame buffer that holds the data for the current frame.
 	 */
@@ -120,15 +147,61 @@ public final class Bitstream implements BitstreamErrors
 	 0x00001FFF, 0x00003FFF, 0x00007FFF, 0x0000FFFF,
      0x0001FFFF };
 
-	private final PushbackInputStream	source;
+	private ReusablePushbackInputStream	source;
+
+	/**
+	 * The buffering stream below <code>source</code>.
+	 */
+	private ReusableBufferedInputStream	buffered;
+
+	/**
+	 * Reads <code>seekable</code> for <code>buffered</code>.
+	 */
+	private SourceInputStream			sourceStream;
+
+	/**
+	 * The source the stream reads from, if it was constructed from one.
+	 */
+	private Source						seekable;
+
+	/**
+	 * The whole stream when it is read from a <code>ByteBufferSource</code>.
+	 * Frames are then parsed where they are in the buffer, and
+	 * <code>source</code>, <code>frame_bytes</code> and
+	 * <code>framebuffer</code> are not used.
+	 */
+	private ByteBuffer					buffer;
+
+	/**
+	 * Offset of the data of the current frame in <code>buffer</code>.
+	 */
+	private int						frame_start;
 
 	private final Header			header = new Header();
 
 	private final byte				syncbuf[] = new byte[4];
 
+	/**
+	 * Search window used by <code>resync()</code>.
+	 */
+	private ByteBuffer				scanbuf;
+
+	/**
+	 * Number of times sync was lost and found again.
+	 */
+	private int						resyncs;
+
+	/**
+	 * Bytes passed over to find sync again.
+	 */
+	private long					skipped_bytes;
+
 	private Crc16[]					crc = new Crc16[1];
 
-	private byte[]					rawid3v2 = null;
+	/**
+	 * Offset of the ID3v2 tag in <code>buffer</code>.
+	 */
+	private int						id3v2_start;
 
 	private boolean					firstframe = true;
 
@@ -140,19 +213,100 @@ public final class Bitstream implements BitstreamErrors
 	 * @param in	The InputStream to read from.
 	 */
 	public Bitstream(InputStream in)
+	{
+		reset(in);
+	}
+
+	/**
+	 * Construct a IBitstream that reads data from a
+	 * given Source.
+	 *
+	 * @param in	The Source to read from.
+	 */
+	public Bitstream(Source in)
+	{
+		reset(in);
+	}
+
+	/**
+	 * Starts reading another stream. The buffers of this
+	 * bitstream are used again, the stream read so far
+	 * should have been closed.
+	 *
+	 * @param in	The InputStream to read from.
+	 */
+	public void reset(InputStream in)
+	{
+		if (in==null) throw new NullPointerException("in");
+		open(in, null);
+	}
+
+	/**
+	 * Starts reading another stream, see <code>reset(InputStream)</code>.
+	 *
+	 * @param in	The Source to read from.
+	 */
+	public void reset(Source in)
 	{
 		if (in==null) throw new NullPointerException("in");
-		in = new BufferedInputStream(in);		
-		loadID3v2(in);
+		if (in instanceof ByteBufferSource)
+		{
+			open(null, in);
+			return;
+		}
+
+		if (sourceStream==null)
+			sourceStream = new SourceInputStream(in);
+		else
+			sourceStream.setSource(in);
+		open(sourceStream, in);
+	}
+
+	private void open(InputStream in, Source seekable)
+	{
+		this.seekable = seekable;
+		header_pos = 0;
+		id3v2_start = 0;
+		if (in==null)
+		{
+			buffer = ((ByteBufferSource)seekable).getBuffer();
+			loadID3v2(buffer);
+		}
+		else
+		{
+			buffer = null;
+			setInput(in);
+			loadID3v2(buffered);
+		}
+		header.reset();
 		firstframe = true;
-		//source = new PushbackInputStream(in, 1024);
-		source = new PushbackInputStream(in, BUFFER_INT_SIZE*4);
+		resyncs = 0;
+		skipped_bytes = 0;
 		
 		closeFrame();
 		//current_frame_number = -1;
 		//last_frame_number = -1;
 	}
 
+	/**
+	 * Points the buffering and pushback streams at <code>in</code>,
+	 * they are only created for the first stream.
+	 */
+	private void setInput(InputStream in)
+	{
+		if (buffered==null)
+		{
+			buffered = new ReusableBufferedInputStream(in);
+			//source = new PushbackInputStream(in, 1024);
+			source = new ReusablePushbackInputStream(buffered, PUSHBACK_SIZE);
+		}
+		else
+		{
+			buffered.setInput(in);
+			source.setInput(buffered);
+		}
+	}
+
 	/**
 	 * Return position of the first audio header.
 	 * @return size of ID3v2 tag frames.
@@ -161,6 +315,25 @@ public final class Bitstream implements BitstreamErrors
 	{
 		return header_pos;
 	}
+
+	/**
+	 * Number of times a frame header was not where the last frame
+	 * said it would be and the stream was searched for the next one:
+	 * junk before the first frame, or damaged frames. Data after
+	 * the last frame, such as an ID3v1 or APE tag, does not count.
+	 */
+	public int getResyncs()
+	{
+		return resyncs;
+	}
+
+	/**
+	 * Number of bytes passed over by those searches.
+	 */
+	public long getSkippedBytes()
+	{
+		return skipped_bytes;
+	}
 	
 	/**
 	 * Load ID3v2 frames.
@@ -189,19 +362,34 @@ public final class Bitstream implements BitstreamErrors
 			catch (IOException e)
 			{}
 		}
-		// Load ID3v2 tags.
+		// Skip ID3v2 tags, they can hold megabytes of cover art.
+		// ID3v2Tag reads what's needed from them on demand.
 		try
 		{
 			if (size > 0)
-			{
-				rawid3v2 = new byte[size];
-				in.read(rawid3v2,0,rawid3v2.length);
-			}			
+				ID3v2Tag.skip(in, size);
 		}
 		catch (IOException e)
 		{}
 	}
 	
+	/**
+	 * Skip ID3v2 frames in the buffer.
+	 */
+	private void loadID3v2(ByteBuffer in)
+	{
+		int pos = in.position();
+		id3v2_start = pos;
+		if (in.remaining() >= 10 && in.get(pos)=='I' && in.get(pos+1)=='D' && in.get(pos+2)=='3')
+		{
+			// same as readID3v2Header()
+			int size = (in.get(pos+6) << 21) + (in.get(pos+7) << 14) + (in.get(pos+8) << 7) + in.get(pos+9) + 10;
+			header_pos = size;
+			if (size > 0)
+				in.position(pos + Math.min(size, in.remaining()));
+		}
+	}
+
 	/**
 	 * Parse ID3v2 tag header to find out size of ID3v2 frames. 
 	 * @param in MP3 InputStream
@@ -211,7 +399,7 @@ public final class Bitstream implements BitstreamErrors
 	 */
 	private int readID3v2Header(InputStream in) throws IOException
 	{		
-		byte[] id3header = new byte[4];
+		byte[] id3header = syncbuf;
 		int size = -10;
 		in.read(id3header,0,3);
 		// Look for ID3v2
@@ -228,14 +416,20 @@ public final class Bitstream implements BitstreamErrors
 	
 	/**
 	 * Return raw ID3v2 frames + header.
+	 * The tag is skipped when reading from a stream, so it is only
+	 * available from a <code>ByteBufferSource</code>, and copied out
+	 * on each call. <code>ID3v2Tag</code> reads the common fields from
+	 * the start of the file without keeping the tag.
 	 * @return ID3v2 InputStream or null if ID3v2 frames are not available.
 	 */
 	public InputStream getRawID3v2()
 	{
-		if (rawid3v2 == null) return null;
+		if (buffer == null || header_pos <= 0) return null;
 		else
 		{
-			ByteArrayInputStream bain = new ByteArrayInputStream(rawid3v2);		
+			byte[] raw = new byte[Math.min(header_pos, buffer.limit() - id3v2_start)];
+			buffer.get(id3v2_start, raw);
+			ByteArrayInputStream bain = new ByteArrayInputStream(raw);		
 			return bain;
 		}
 	}
@@ -246,6 +440,8 @@ public final class Bitstream implements BitstreamErrors
 	 */
 	public void close() throws BitstreamException
 	{
+		if (buffer!=null)
+			return;
 		try
 		{
 			source.close();
@@ -270,6 +466,8 @@ public final class Bitstream implements BitstreamErrors
 			// E.B, Parse VBR (if any) first frame.
 			if (firstframe == true)
 			{
+				if (buffer!=null)
+					buffer.get(frame_start, frame_bytes, 0, Math.min(framesize, frame_bytes.length));
 				result.parseVBR(frame_bytes);
 				firstframe = false;
 			}			
@@ -303,6 +501,47 @@ public final class Bitstream implements BitstreamErrors
 		return result;
 	}
 
+	/**
+	 * Skips the next frame without reading its data. Only the header is
+	 * parsed, the rest of the frame is passed over with <code>skip()</code>,
+	 * which seeks in files. The first frame is read normally, since that
+	 * is where the stream format is picked up.
+	 *
+	 * @return false if the end of the stream has been reached.
+	 */
+	public boolean skipFrame() throws BitstreamException
+	{
+		if (firstframe)
+		{
+			Header h = readFrame();
+			closeFrame();
+			return h!=null;
+		}
+
+		closeFrame();
+		try
+		{
+			while (true)
+			{
+				int headerstring = syncHeader(STRICT_SYNC);
+				int size = FrameIndex.frameSize(headerstring) - 4;
+				if (size < 0)
+					continue;	// free format, can't be decoded either
+				if (skipBytes(size) < size)
+					return false;
+				// same as readFrame(), a frame that isn't followed by another is not counted
+				if (isSyncCurrentPosition(STRICT_SYNC))
+					return true;
+			}
+		}
+		catch (BitstreamException ex)
+		{
+			if (ex.getErrorCode()!=STREAM_EOF)
+				throw newBitstreamException(ex.getErrorCode(), ex);
+			return false;
+		}
+	}
+
 	/**
 	 * Read next MP3 frame.
 	 * @return MP3 frame header.
@@ -337,6 +576,11 @@ public final class Bitstream implements BitstreamErrors
 	{
 		if (wordpointer==-1 && bitindex==-1 && (framesize>0))
 		{
+			if (buffer!=null)
+			{
+				buffer.position(frame_start);
+				return;
+			}
 			try
 			{
 				source.unread(frame_bytes, 0, framesize);
@@ -364,15 +608,26 @@ public final class Bitstream implements BitstreamErrors
 	 */
 	public boolean isSyncCurrentPosition(int syncmode) throws BitstreamException
 	{
-		int read = readBytes(syncbuf, 0, 4);
-		int headerstring = ((syncbuf[0] << 24) & 0xFF000000) | ((syncbuf[1] << 16) & 0x00FF0000) | ((syncbuf[2] << 8) & 0x0000FF00) | ((syncbuf[3] << 0) & 0x000000FF);
-
-		try
+		int read;
+		int headerstring;
+		if (buffer!=null)
 		{
-			source.unread(syncbuf, 0, read);
+			int pos = buffer.position();
+			read = Math.min(4, buffer.limit() - pos);
+			headerstring = (read == 4) ? buffer.getInt(pos) : 0;
 		}
-		catch (IOException ex)
+		else
 		{
+			read = readBytes(syncbuf, 0, 4);
+			headerstring = ((syncbuf[0] << 24) & 0xFF000000) | ((syncbuf[1] << 16) & 0x00FF0000) | ((syncbuf[2] << 8) & 0x0000FF00) | ((syncbuf[3] << 0) & 0x000000FF);
+
+			try
+			{
+				source.unread(syncbuf, 0, read);
+			}
+			catch (IOException ex)
+			{
+			}
 		}
 
 		boolean sync = false;
@@ -422,32 +677,185 @@ public final class Bitstream implements BitstreamErrors
 
 	int syncHeader(byte syncmode) throws BitstreamException
 	{
-		boolean sync;
-		int headerstring;
-		// read additional 2 bytes
-		int bytesRead = readBytes(syncbuf, 0, 3);
+		if (buffer!=null)
+			return syncHeaderInBuffer(syncmode);
 
-		if (bytesRead!=3) throw newBitstreamException(STREAM_EOF, null);
+		int bytesRead = readBytes(syncbuf, 0, 4);
+		if (bytesRead!=4) throw newBitstreamException(STREAM_EOF, null);
 
-		headerstring = ((syncbuf[0] << 16) & 0x00FF0000) | ((syncbuf[1] << 8) & 0x0000FF00) | ((syncbuf[2] << 0) & 0x000000FF);
+		// the first header is always checked against the ones after it
+		int headerstring = ((syncbuf[0] << 24) & 0xFF000000) | ((syncbuf[1] << 16) & 0x00FF0000) | ((syncbuf[2] << 8) & 0x0000FF00) | ((syncbuf[3] << 0) & 0x000000FF);
+		if (syncmode==STRICT_SYNC && isSyncMark(headerstring, syncmode, syncword))
+			return headerstring;
+
+		unread(syncbuf, 0, 4);
+		return resync(syncmode);
+	}
 
-		do
+	/**
+	 * Searches the stream for the next frame header, a window at a
+	 * time.
+	 */
+	private int resync(byte syncmode) throws BitstreamException
+	{
+		if (scanbuf==null)
+			scanbuf = ByteBuffer.allocate(SCAN_SIZE);
+		final byte[] b = scanbuf.array();
+		long skipped = 0;
+		int n = 0;
+		boolean eof = false;
+		while (true)
 		{
-			headerstring <<= 8;
+			if (!eof)
+			{
+				int read = readBytes(b, n, SCAN_SIZE - n);
+				eof = read < SCAN_SIZE - n;
+				n += read;
+			}
 
-			if (readBytes(syncbuf, 3, 1)!=1)
+			int pos = findHeader(scanbuf, 0, n, eof, syncmode);
+			if (pos >= 0)
+			{
+				countResync(skipped + pos);
+				unread(b, pos + 4, n - pos - 4);
+				return scanbuf.getInt(pos);
+			}
+			if (eof)
 				throw newBitstreamException(STREAM_EOF, null);
 
-			headerstring |= (syncbuf[3] & 0x000000FF);
+			// keep what is still to be searched and fill up the window
+			int keep = -1 - pos;
+			System.arraycopy(b, keep, b, 0, n - keep);
+			skipped += keep;
+			n -= keep;
+		}
+	}
+
+	/**
+	 * syncHeader() straight on the buffer.
+	 */
+	private int syncHeaderInBuffer(byte syncmode) throws BitstreamException
+	{
+		final ByteBuffer in = buffer;
+		final int start = in.position();
+		final int limit = in.limit();
+		if (limit - start < 4)
+		{
+			in.position(limit);
+			throw newBitstreamException(STREAM_EOF, null);
+		}
+
+		int headerstring = in.getInt(start);
+		if (syncmode==STRICT_SYNC && isSyncMark(headerstring, syncmode, syncword))
+		{
+			in.position(start + 4);
+			return headerstring;
+		}
+
+		// same as resync(), with the whole stream as the window
+		int pos = findHeader(in, start, limit, true, syncmode);
+		if (pos < 0)
+		{
+			in.position(limit);
+			throw newBitstreamException(STREAM_EOF, null);
+		}
+		countResync(pos - start);
+		in.position(pos + 4);
+		return in.getInt(pos);
+	}
+
+	/**
+	 * Searches <code>in</code> from <code>from</code> up to
+	 * <code>limit</code> for a frame header that is followed by
+	 * <code>CONFIRM_FRAMES</code> more, or by the end of the stream,
+	 * so that sync patterns inside junk or frame data aren't decoded
+	 * as frames.
+	 *
+	 * @param eof	Whether <code>limit</code> is the end of the stream.
+	 *
+	 * @return the offset of the header, or if none was found,
+	 *		   -1 - the offset the search has to go on from once
+	 *		   more of the stream has been read.
+	 */
+	private int findHeader(ByteBuffer in, int from, int limit, boolean eof, byte syncmode)
+	{
+		int pos = from;
+		for (; pos + 4 <= limit; pos++)
+		{
+			if (in.get(pos)!=(byte)0xFF || (in.get(pos+1) & 0xE0)!=0xE0)
+				continue;
+			int headerstring = in.getInt(pos);
+			if (!isSyncMark(headerstring, syncmode, syncword))
+				continue;
+
+			boolean found = true;
+			int next = pos;
+			int h = headerstring;
+			for (int k=0; k<CONFIRM_FRAMES && found; k++)
+			{
+				int size = FrameIndex.frameSize(h);
+				if (size==0)
+				{
+					found = false;	// free format or bad bitrate
+					break;
+				}
+				next += size;
+				if (next + 4 <= limit)
+				{
+					h = in.getInt(next);
+					found = isNextHeader(headerstring, h, syncmode);
+				}
+				else if (eof)
+				{
+					found = next==limit;
+					break;
+				}
+				else if (pos > from)
+				{
+					return -1 - pos;	// move the window up to this header
+				}
+				else
+				{
+					break;	// the frames are longer than the window, take what was seen
+				}
+			}
+			if (found)
+				return pos;
+		}
+		return -1 - pos;
+	}
 
-			sync = isSyncMark(headerstring, syncmode, syncword);
+	private void countResync(long skipped)
+	{
+		if (skipped > 0)
+		{
+			resyncs++;
+			skipped_bytes += skipped;
 		}
-		while (!sync);
+	}
 
-		//current_frame_number++;
-		//if (last_frame_number < current_frame_number) last_frame_number = current_frame_number;
+	/**
+	 * Determines if <code>next</code> is the header of a frame that
+	 * can follow the frame of <code>headerstring</code>.
+	 */
+	private boolean isNextHeader(int headerstring, int next, byte syncmode)
+	{
+		return (next & STREAM_MASK)==(headerstring & STREAM_MASK) && isSyncMark(next, syncmode, syncword);
+	}
 
-		return headerstring;
+	/**
+	 * Pushes bytes back into the source input stream.
+	 */
+	private void unread(byte[] b, int offs, int len) throws BitstreamException
+	{
+		try
+		{
+			source.unread(b, offs, len);
+		}
+		catch (IOException ex)
+		{
+			throw newBitstreamException(STREAM_ERROR, ex);
+		}
 	}
 
 	public boolean isSyncMark(int headerstring, int syncmode, int word)
@@ -485,7 +893,17 @@ public final class Bitstream implements BitstreamErrors
 	int read_frame_data(int bytesize) throws BitstreamException
 	{
  		int	numread = 0;
-		numread = readFully(frame_bytes, 0, bytesize);
+		if (buffer!=null)
+		{
+			// the frame stays where it is
+			frame_start = buffer.position();
+			numread = Math.max(0, Math.min(bytesize, buffer.remaining()));
+			buffer.position(frame_start + numread);
+		}
+		else
+		{
+			numread = readFully(frame_bytes, 0, bytesize);
+		}
 		framesize = bytesize;
 		wordpointer = -1;
 	    bitindex = -1;
@@ -497,6 +915,14 @@ public final class Bitstream implements BitstreamErrors
    */
   void parse_frame() throws BitstreamException
   {
+	if (buffer!=null)
+	{
+		// get_bits() reads the buffer
+		wordpointer = 0;
+		bitindex = 0;
+		return;
+	}
+
 	// Convert Bytes read to int
 	int	b=0;
 	byte[] byteread = frame_bytes;
@@ -547,7 +973,8 @@ public final class Bitstream implements BitstreamErrors
   	if (sum <= 32)
   	{
 	   // all bits contained in *wordpointer
-	   returnvalue = (framebuffer[wordpointer] >>> (32 - sum)) & bitmask[number_of_bits];
+	   int word = (buffer==null) ? framebuffer[wordpointer] : frameWord(wordpointer);
+	   returnvalue = (word >>> (32 - sum)) & bitmask[number_of_bits];
 	   // returnvalue = (wordpointer[0] >> (32 - sum)) & bitmask[number_of_bits];
 	   if ((bitindex += number_of_bits) == 32)
 	   {
@@ -561,9 +988,9 @@ public final class Bitstream implements BitstreamErrors
     //((short[])&returnvalue)[0] = ((short[])wordpointer + 1)[0];
     //wordpointer++; // Added by me!
     //((short[])&returnvalue + 1)[0] = ((short[])wordpointer)[0];
-	int Right = (framebuffer[wordpointer] & 0x0000FFFF);
+	int Right = ((buffer==null) ? framebuffer[wordpointer] : frameWord(wordpointer)) & 0x0000FFFF;
 	wordpointer++;
-	int Left = (framebuffer[wordpointer] & 0xFFFF0000);
+	int Left = ((buffer==null) ? framebuffer[wordpointer] : frameWord(wordpointer)) & 0xFFFF0000;
 	returnvalue = ((Right << 16) & 0xFFFF0000) | ((Left >>> 16)& 0x0000FFFF);
 
     returnvalue >>>= 48 - sum;	// returnvalue >>= 16 - (number_of_bits - (32 - bitindex))
@@ -572,6 +999,28 @@ public final class Bitstream implements BitstreamErrors
     return returnvalue;
 }
 
+	/**
+	 * Word of the current frame in the buffer, what
+	 * <code>framebuffer[w]</code> holds when reading from a stream.
+	 */
+	private int frameWord(int w)
+	{
+		int pos = frame_start + (w << 2);
+		int end = frame_start + framesize;
+		if (pos + 4 <= end)
+			return buffer.getInt(pos);
+
+		// the last word is padded with zeros
+		int word = 0;
+		for (int i=0; i<4; i++)
+		{
+			word <<= 8;
+			if (pos + i < end)
+				word |= buffer.get(pos + i) & 0xFF;
+		}
+		return word;
+	}
+
 	/**
 	 * Set the word we want to sync the header to.
 	 * In Big-Endian byte order
@@ -624,6 +1073,46 @@ public final class Bitstream implements BitstreamErrors
 		return nRead;
 	}
 
+	/**
+	 * Skips bytes of the source input stream.
+	 *
+	 * @return the number of bytes skipped, less than <code>len</code>
+	 *		only at the end of the stream.
+	 */
+	private int skipBytes(int len)
+		throws BitstreamException
+	{
+		if (buffer!=null)
+		{
+			int n = Math.min(len, buffer.remaining());
+			buffer.position(buffer.position() + n);
+			return n;
+		}
+
+		int skipped = 0;
+		try
+		{
+			while (skipped < len)
+			{
+				long n = source.skip(len - skipped);
+				if (n <= 0)
+				{
+					// skip() may stop short, only a read tells the end of the stream
+					if (source.read() == -1)
+						break;
+					n = 1;
+				}
+				// never more than asked for, whatever the stream claims
+				skipped += (int)Math.min(n, len - skipped);
+			}
+		}
+		catch (IOException ex)
+		{
+			throw newBitstreamException(STREAM_ERROR, ex);
+		}
+		return skipped;
+	}
+
 	/**
 	 * Simlar to readFully, but doesn't throw exception when
 	 * EOF is reached.
@@ -652,4 +1141,104 @@ public final class Bitstream implements BitstreamErrors
 		}
 		return totalBytesRead;
 	}
+
+	/**
+	 * Reads a <code>Source</code> as an <code>InputStream</code>.
+	 */
+	private static final class SourceInputStream extends InputStream
+	{
+		private Source			source;
+		private final byte[]	single = new byte[1];
+
+		SourceInputStream(Source source)
+		{
+			setSource(source);
+		}
+
+		void setSource(Source source)
+		{
+			if (source==null) throw new NullPointerException("source");
+			this.source = source;
+		}
+
+		public int read() throws IOException
+		{
+			return read(single, 0, 1)==1 ? single[0] & 0xFF : -1;
+		}
+
+		public int read(byte[] b, int offs, int len) throws IOException
+		{
+			return len==0 ? 0 : source.read(b, offs, len);
+		}
+
+		public long skip(long n) throws IOException
+		{
+			if (!source.isSeekable())
+				return super.skip(n);
+
+			long pos = source.tell();
+			long length = source.length();
+			if (length != Source.LENGTH_UNKNOWN)
+				n = Math.min(n, length - pos);
+			if (n <= 0)
+				return 0;
+			return source.seek(pos + n) < 0 ? 0 : n;
+		}
+
+		public void close() throws IOException
+		{
+			if (source instanceof Closeable)
+				((Closeable)source).close();
+		}
+	}
+
+	/**
+	 * A <code>BufferedInputStream</code> that can be pointed at another
+	 * stream. Closing it closes the stream below but keeps the buffer.
+	 */
+	private static final class ReusableBufferedInputStream extends BufferedInputStream
+	{
+		ReusableBufferedInputStream(InputStream in)
+		{
+			super(in);
+		}
+
+		void setInput(InputStream in)
+		{
+			this.in = in;
+			count = 0;
+			pos = 0;
+			markpos = -1;
+		}
+
+		public void close() throws IOException
+		{
+			if (in!=null)
+				in.close();
+		}
+	}
+
+	/**
+	 * A <code>PushbackInputStream</code> that can be pointed at another
+	 * stream. Closing it closes the stream below but keeps the buffer.
+	 */
+	private static final class ReusablePushbackInputStream extends PushbackInputStream
+	{
+		ReusablePushbackInputStream(InputStream in, int size)
+		{
+			super(in, size);
+		}
+
+		void setInput(InputStream in)
+		{
+			this.in = in;
+			pos = buf.length;
+		}
+
+		public void close() throws IOException
+		{
+			if (in!=null)
+				in.close();
+		}
+	}
 }
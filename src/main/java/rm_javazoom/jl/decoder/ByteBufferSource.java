@@ -0,0 +1,105 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.decoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * An instance of <code>ByteBufferSource</code> implements a
+ * <code>Source</code> over a <code>ByteBuffer</code> that holds a whole
+ * file, usually one mapped into memory. Seeking is supported.
+ * <p>
+ * A <code>Bitstream</code> constructed from this source reads frames
+ * straight out of the buffer instead of through <code>read()</code>.
+ */
+public class ByteBufferSource implements Source
+{
+	private final ByteBuffer	buffer;
+
+	/**
+	 * @param buffer	The data, from its position to its limit. The
+	 *					source takes over the position of the buffer.
+	 */
+	public ByteBufferSource(ByteBuffer buffer)
+	{
+		if (buffer==null)
+			throw new NullPointerException("buffer");
+
+		this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * Maps a whole file into memory. The channel can be closed afterwards,
+	 * the mapping stays valid until the source is garbage collected.
+	 */
+	public static ByteBufferSource map(FileChannel channel) throws IOException
+	{
+		return new ByteBufferSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	}
+
+	/**
+	 * The buffer read by this source, its position is the position of the
+	 * source.
+	 */
+	ByteBuffer getBuffer()
+	{
+		return buffer;
+	}
+
+	public int read(byte[] b, int offs, int len)
+		throws IOException
+	{
+		int n = Math.min(len, buffer.remaining());
+		if (n==0 && len > 0)
+			return -1;
+		buffer.get(b, offs, n);
+		return n;
+	}
+
+	public boolean willReadBlock()
+	{
+		return false;
+	}
+
+	public boolean isSeekable()
+	{
+		return true;
+	}
+
+	public long length()
+	{
+		return buffer.limit();
+	}
+
+	public long tell()
+	{
+		return buffer.position();
+	}
+
+	public long seek(long pos)
+	{
+		if (pos < 0 || pos > buffer.limit())
+			return -1;
+		buffer.position((int)pos);
+		return pos;
+	}
+}
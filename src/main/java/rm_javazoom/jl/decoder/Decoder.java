@@ -20,6 +20,8 @@
  
 package rm_javazoom.jl.decoder;
 
+import java.util.ArrayList;
+
 /**
  * The <code>Decoder</code> class encapsulates the details of
  * decoding an MPEG audio frame. 
@@ -32,6 +34,13 @@ public class Decoder implements DecoderErrors
 {
 	static private final Params DEFAULT_PARAMS = new Params();
 	
+	/**
+	 * Synthesis qualities, see <code>Params.setQuality()</code>.
+	 */
+	public static final int	HIGH_QUALITY = SynthesisFilter.HIGH_QUALITY;
+	public static final int	MEDIUM_QUALITY = SynthesisFilter.MEDIUM_QUALITY;
+	public static final int	LOW_QUALITY = SynthesisFilter.LOW_QUALITY;
+	
 	/**
 	 * The Bistream from which the MPEG audio frames are read.
 	 */
@@ -68,6 +77,21 @@ public class Decoder implements DecoderErrors
 	private Params					params;
 	
 	private boolean					initialized;
+	
+	/**
+	 * The output buffer set by the client, if any.
+	 */
+	private Obuffer					clientOutput;
+	
+	/**
+	 * Components of every output format decoded so far.
+	 */
+	private final ArrayList<Format>	formats = new ArrayList<Format>();
+	
+	/**
+	 * Components of the stream being decoded.
+	 */
+	private Format					format;
 		
 	
 	/**
@@ -106,6 +130,20 @@ public class Decoder implements DecoderErrors
 		return (Params)DEFAULT_PARAMS.clone();
 	}
 	
+	/**
+	 * Changes the output channels and quality of the decoder. This takes
+	 * effect with the next stream, after <code>reset()</code>, or with
+	 * the first frame if none has been decoded yet. The equalizer
+	 * settings of the new parameters are not used.
+	 */
+	public void setParams(Params params0)
+	{
+		if (params0==null)
+			params0 = DEFAULT_PARAMS;
+		
+		params = params0;
+	}
+	
 	public void setEqualizer(Equalizer eq)
 	{
 		if (eq==null)
@@ -135,7 +173,7 @@ public class Decoder implements DecoderErrors
 	{
 		if (!initialized)
 		{
-			initialize(header);
+			initialize(header, stream);
 		}
 		
 		int layer = header.layer();
@@ -151,6 +189,35 @@ public class Decoder implements DecoderErrors
 		return output;	
 	}
 	
+	/**
+	 * Tells the decoder that the next frame does not follow the last
+	 * one decoded, e.g. after frames were skipped. State carried
+	 * over between frames is cleared, the first frames decoded after
+	 * this are incomplete until the Layer III bit reservoir and the
+	 * filters have filled again.
+	 */
+	public void seekNotify()
+	{
+		if (l3decoder!=null)
+			l3decoder.seek_notify();
+		if (filter1!=null)
+			filter1.reset();
+		if (filter2!=null)
+			filter2.reset();
+	}
+
+	/**
+	 * Prepares the decoder for a new stream, the next frame decoded
+	 * may be from a different stream than the last one. Components
+	 * are kept for every output format, a stream of a format decoded
+	 * before uses them again after they have been reset, so that
+	 * switching between songs allocates next to nothing.
+	 */
+	public void reset()
+	{
+		initialized = false;
+	}
+
 	/**
 	 * Changes the output buffer. This will take effect the next time
 	 * decodeFrame() is called. 
@@ -158,6 +225,7 @@ public class Decoder implements DecoderErrors
 	public void setOutputBuffer(Obuffer out)
 	{
 		output = out;
+		clientOutput = out;
 	}
 	
 	/**
@@ -219,16 +287,14 @@ public class Decoder implements DecoderErrors
 	{
 		FrameDecoder decoder = null;
 		
-		// REVIEW: allow channel output selection type
-		// (LEFT, RIGHT, BOTH, DOWNMIX)
 		switch (layer)
 		{
 		case 3:
 			if (l3decoder==null)
 			{
-				l3decoder = new LayerIIIDecoder(stream, 
+				l3decoder = format.l3decoder = new LayerIIIDecoder(stream, 
 					header, filter1, filter2, 
-					output, OutputChannels.BOTH_CHANNELS);
+					output, format.which);
 			}						
 			
 			decoder = l3decoder;
@@ -236,20 +302,20 @@ public class Decoder implements DecoderErrors
 		case 2:
 			if (l2decoder==null)
 			{
-				l2decoder = new LayerIIDecoder();
+				l2decoder = format.l2decoder = new LayerIIDecoder();
 				l2decoder.create(stream, 
 					header, filter1, filter2, 
-					output, OutputChannels.BOTH_CHANNELS);				
+					output, format.which);				
 			}
 			decoder = l2decoder;
 			break;
 		case 1:
 			if (l1decoder==null)
 			{
-				l1decoder = new LayerIDecoder();
+				l1decoder = format.l1decoder = new LayerIDecoder();
 				l1decoder.create(stream, 
 					header, filter1, filter2, 
-					output, OutputChannels.BOTH_CHANNELS);				
+					output, format.which);				
 			}
 			decoder = l1decoder;
 			break;
@@ -263,7 +329,7 @@ public class Decoder implements DecoderErrors
 		return decoder;
 	}
 	
-	private void initialize(Header header)
+	private void initialize(Header header, Bitstream stream)
 		throws DecoderException
 	{
 		
@@ -271,27 +337,109 @@ public class Decoder implements DecoderErrors
 		float scalefactor = 32700.0f;
 		
 		int mode = header.mode();
-		int layer = header.layer();
 		int channels = mode==Header.SINGLE_CHANNEL ? 1 : 2;
-
-					
-		// set up output buffer if not set up by client.
-		if (output==null)
-			output = new SampleBuffer(header.frequency(), channels);
+		int frequency = header.frequency();
+		int which = params.getOutputChannels().getChannelsOutputCode();
+		int quality = params.getQuality();
 		
+		// a mono stream is output as it is, whichever channels were asked for
+		int outChannels = channels==1 ? 1 : params.getOutputChannels().getChannelCount();
+		int outFrequency = frequency / quality;
+
 		float[] factors = equalizer.getBandFactors();
-		filter1 = new SynthesisFilter(0, scalefactor, factors);
-   		
-		// REVIEW: allow mono output for stereo
-		if (channels==2) 
-			filter2 = new SynthesisFilter(1, scalefactor, factors);
 
-		outputChannels = channels;
-		outputFrequency = header.frequency();
+		format = null;
+		for (int i=0; i<formats.size(); i++)
+		{
+			Format f = formats.get(i);
+			if (f.frequency==frequency && f.channels==channels
+				&& f.which==which && f.quality==quality
+				&& (clientOutput==null || f.output==clientOutput))
+				format = f;
+		}
+
+		if (format==null)
+		{
+			format = new Format(frequency, channels, which, quality);
+			
+			// set up output buffer if not set up by client.
+			if (clientOutput!=null)
+				format.output = clientOutput;
+			else if (params.isFloatOutput())
+				format.output = new FloatSampleBuffer(outFrequency, outChannels);
+			else
+				format.output = new SampleBuffer(outFrequency, outChannels);
+			
+			format.filter1 = new SynthesisFilter(0, scalefactor, factors);
+			format.filter1.setQuality(quality);
+	   		
+			// also made for mono output of stereo, layer I and II downmix the subband samples of both
+			if (channels==2)
+			{
+				format.filter2 = new SynthesisFilter(1, scalefactor, factors);
+				format.filter2.setQuality(quality);
+			}
+
+			formats.add(format);
+		}
+		else
+		{
+			// left as they were by the last stream of this format
+			format.filter1.reset();
+			format.filter1.setEQ(factors);
+			if (format.filter2!=null)
+			{
+				format.filter2.reset();
+				format.filter2.setEQ(factors);
+			}
+			if (format.l3decoder!=null)
+				format.l3decoder.reset(stream, header);
+			if (format.l2decoder!=null)
+				format.l2decoder.create(stream, header, format.filter1, format.filter2, format.output, which);
+			if (format.l1decoder!=null)
+				format.l1decoder.create(stream, header, format.filter1, format.filter2, format.output, which);
+		}
+
+		output = format.output;
+		filter1 = format.filter1;
+		filter2 = format.filter2;
+		l3decoder = format.l3decoder;
+		l2decoder = format.l2decoder;
+		l1decoder = format.l1decoder;
+
+		outputChannels = outChannels;
+		outputFrequency = outFrequency;
 		
 		initialized = true;
 	}
 	
+	/**
+	 * The output buffer, synthesis filters and frame decoders made
+	 * for one output format.
+	 */
+	private static final class Format
+	{
+		final int			frequency;
+		final int			channels;
+		final int			which;
+		final int			quality;
+		
+		Obuffer				output;
+		SynthesisFilter		filter1;
+		SynthesisFilter		filter2;
+		LayerIIIDecoder		l3decoder;
+		LayerIIDecoder		l2decoder;
+		LayerIDecoder		l1decoder;
+		
+		Format(int frequency, int channels, int which, int quality)
+		{
+			this.frequency = frequency;
+			this.channels = channels;
+			this.which = which;
+			this.quality = quality;
+		}
+	}
+	
 	/**
 	 * The <code>Params</code> class presents the customizable
 	 * aspects of the decoder. 
@@ -304,6 +452,10 @@ public class Decoder implements DecoderErrors
 		
 		private Equalizer		equalizer = new Equalizer();
 		
+		private boolean			floatOutput = false;
+		
+		private int				quality = HIGH_QUALITY;
+		
 		public Params()
 		{			
 		}
@@ -333,6 +485,40 @@ public class Decoder implements DecoderErrors
 			return outputChannels;
 		}
 		
+		/**
+		 * Chooses the output buffer the decoder creates when the client
+		 * did not set one: a <code>FloatSampleBuffer</code> when true,
+		 * otherwise a <code>SampleBuffer</code>.
+		 */
+		public void setFloatOutput(boolean floatOutput)
+		{
+			this.floatOutput = floatOutput;
+		}
+		
+		public boolean isFloatOutput()
+		{
+			return floatOutput;
+		}
+		
+		/**
+		 * Trades quality for CPU time. At MEDIUM_QUALITY only the lower
+		 * 16 subbands are synthesized and the output is at half the
+		 * sample rate of the stream, at LOW_QUALITY 8 subbands at a
+		 * quarter. HIGH_QUALITY, the default, decodes everything.
+		 */
+		public void setQuality(int quality)
+		{
+			if (quality!=HIGH_QUALITY && quality!=MEDIUM_QUALITY && quality!=LOW_QUALITY)
+				throw new IllegalArgumentException("Unknown quality value");
+			
+			this.quality = quality;
+		}
+		
+		public int getQuality()
+		{
+			return quality;
+		}
+		
 		/**
 		 * Retrieves the equalizer settings that the decoder's equalizer
 		 * will be initialized from.
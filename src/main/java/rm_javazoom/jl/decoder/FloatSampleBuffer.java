@@ -0,0 +1,126 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.decoder;
+
+/**
+ * The <code>FloatSampleBuffer</code> class is an output buffer like
+ * <code>SampleBuffer</code>, except that it keeps the interleaved
+ * samples as floats. Samples are on the 16 bit scale of the synthesis
+ * filter but are not clipped, so gain and mixing stages can run on them
+ * before a single conversion to the output format by the audio device.
+ */
+public class FloatSampleBuffer extends Obuffer
+{
+  private float[] 		buffer;
+  private int[] 		bufferp;
+  private int 			channels;
+  private int			frequency;
+
+  /**
+   * Constructor
+   */
+  public FloatSampleBuffer(int sample_frequency, int number_of_channels)
+  {
+	buffer = new float[OBUFFERSIZE];
+	bufferp = new int[MAXCHANNELS];
+	channels = number_of_channels;
+	frequency = sample_frequency;
+
+	for (int i = 0; i < number_of_channels; ++i)
+		bufferp[i] = i;
+  }
+
+  public int getChannelCount()
+  {
+	return this.channels;
+  }
+
+  public int getSampleFrequency()
+  {
+	  return this.frequency;
+  }
+
+  public float[] getBuffer()
+  {
+	return this.buffer;
+  }
+
+  public int getBufferLength()
+  {
+	  return bufferp[0];
+  }
+
+  /**
+   * Takes a 16 Bit PCM sample.
+   */
+  public void append(int channel, short value)
+  {
+	buffer[bufferp[channel]] = value;
+	bufferp[channel] += channels;
+  }
+
+	public void appendSamples(int channel, float[] f)
+	{
+		appendSamples(channel, f, 32);
+	}
+
+	public void appendSamples(int channel, float[] f, int count)
+	{
+	    int pos = bufferp[channel];
+
+	    for (int i=0; i<count; i++)
+	    {
+			buffer[pos] = f[i];
+			pos += channels;
+	    }
+
+		bufferp[channel] = pos;
+	}
+
+	/**
+	 * Clips a sample to 16 bits the same way <code>SampleBuffer</code> does.
+	 * Written with min/max so that loops over it can be vectorized.
+	 */
+	public static short clip(float sample)
+	{
+		return (short)Math.min(Math.max(sample, -32767.0f), 32767.0f);
+	}
+
+  public void write_buffer(int val)
+  {
+  }
+
+  public void close()
+  {}
+
+  /**
+   *
+   */
+  public void clear_buffer()
+  {
+	for (int i = 0; i < channels; ++i)
+		bufferp[i] = i;
+  }
+
+  /**
+   *
+   */
+  public void set_stop_flag()
+  {}
+}
@@ -0,0 +1,446 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.decoder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The <code>FrameIndex</code> class maps frame numbers of an MPEG audio
+ * stream to byte offsets, so playback can start anywhere in the stream
+ * without reading everything before it.
+ * <p>
+ * An index is built by <code>scan()</code>, which only looks at frame
+ * headers. Every frame is a seek point and seeking is exact. For a source
+ * that can't seek, where the whole file would have to be read just to
+ * count frames, a Xing or VBRI header that carries a frame count and a
+ * table of contents is used instead if the first frame has one. Those seek
+ * points are spaced out and approximate.
+ * <p>
+ * Frame numbers count frames the way <code>Bitstream</code> returns them,
+ * including a leading Xing or VBRI frame.
+ */
+public final class FrameIndex
+{
+	// sync, version, layer and sample rate must stay the same for the whole stream
+	private static final int	STREAM_MASK = 0xFFFE0C00;
+
+	private static final int	SCAN_BUFFER_SIZE = 64 * 1024;
+
+	private final int			frequency;
+	private final int			samplesPerFrame;
+	private final int			frameCount;
+
+	// byte offset of each seek point
+	private final long[]		offsets;
+	// frame number of each seek point, null when every frame is one
+	private final int[]			pointFrames;
+
+	private FrameIndex(int header, int frameCount, long[] offsets, int[] pointFrames)
+	{
+		this.frequency = frequency(header);
+		this.samplesPerFrame = samplesPerFrame(header);
+		this.frameCount = frameCount;
+		this.offsets = offsets;
+		this.pointFrames = pointFrames;
+	}
+
+	/**
+	 * Builds the index of an MPEG audio stream. Reads <code>source</code>
+	 * from its current position, which should be the start of the file,
+	 * and leaves it at an unspecified position.
+	 *
+	 * @return the index, or null if no MPEG audio frames were found or
+	 *		   the stream uses the free format bitrate.
+	 */
+	public static FrameIndex scan(Source source) throws IOException
+	{
+		Scanner in = new Scanner(source);
+
+		long pos = 0;
+		if (in.fill(0, 10) && in.byteAt(0)=='I' && in.byteAt(1)=='D' && in.byteAt(2)=='3')
+		{
+			pos = 10 + ((in.byteAt(6) & 0x7F) << 21 | (in.byteAt(7) & 0x7F) << 14
+					  | (in.byteAt(8) & 0x7F) << 7 | (in.byteAt(9) & 0x7F));
+			// footer present
+			if ((in.byteAt(5) & 0x10) != 0)
+				pos += 10;
+		}
+
+		pos = in.findFrame(pos, 0);
+		if (pos < 0)
+			return null;
+
+		int first = in.intAt(pos);
+		if (!source.isSeekable())
+		{
+			// a stream can't jump anyway, the frame count is all that's needed
+			FrameIndex toc = readToc(in, pos, first, source.length());
+			if (toc != null)
+				return toc;
+		}
+
+		long[] offsets = new long[1024];
+		int count = 0;
+		int mask = first & STREAM_MASK;
+		while (pos >= 0 && in.fill(pos, 4))
+		{
+			int size = frameSize(in.intAt(pos));
+			// a cut off last frame is never played
+			if (size <= 0 || !in.fill(pos, size))
+				break;
+
+			// like in Bitstream, a frame only counts if another one or the end of the stream follows.
+			// What follows is read along with the frame, so the search below still finds it in the window
+			long next = pos + size;
+			if (in.fill(pos, size + 1) && !(in.fill(pos, size + 4) && (in.intAt(next) & STREAM_MASK) == mask))
+			{
+				// ID3v1 or APE tag or garbage, look for more frames after it
+				pos = in.findFrame(pos + 1, mask);
+				continue;
+			}
+
+			if (count == offsets.length)
+				offsets = Arrays.copyOf(offsets, count * 2);
+			offsets[count++] = pos;
+			pos = next;
+		}
+		return new FrameIndex(first, count, Arrays.copyOf(offsets, count), null);
+	}
+
+	/**
+	 * Builds the index from the table of contents of a Xing or VBRI
+	 * header, if the first frame has one.
+	 */
+	private static FrameIndex readToc(Scanner in, long pos, int header, long length)
+		throws IOException
+	{
+		int version = (header >>> 19) & 1;
+		boolean mono = ((header >>> 6) & 3) == Header.SINGLE_CHANNEL;
+		// same offsets as Header.parseVBR()
+		long xing = pos + 4 + (version == Header.MPEG1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+		if (in.fill(xing, 120) && in.intAt(xing) == 0x58696E67)	// "Xing"
+		{
+			int flags = in.intAt(xing + 4);
+			long p = xing + 8;
+			int frames = -1;
+			long bytes = length < 0 ? -1 : length - pos;
+			if ((flags & 1) != 0)
+			{
+				frames = in.intAt(p);
+				p += 4;
+			}
+			if ((flags & 2) != 0)
+			{
+				bytes = in.intAt(p) & 0xFFFFFFFFL;
+				p += 4;
+			}
+			if ((flags & 4) == 0 || frames <= 0 || bytes <= 0)
+				return null;
+
+			long[] offsets = new long[101];
+			int[] pointFrames = new int[101];
+			offsets[0] = pos;
+			for (int i=0; i<100; i++)
+			{
+				offsets[i + 1] = pos + in.byteAt(p + i) * bytes / 256;
+				pointFrames[i + 1] = 1 + (int)((long)frames * i / 100);
+			}
+			return new FrameIndex(header, frames + 1, offsets, pointFrames);
+		}
+
+		long vbri = pos + 36;
+		if (in.fill(vbri, 26) && in.intAt(vbri) == 0x56425249)	// "VBRI"
+		{
+			int frames = in.intAt(vbri + 14);
+			int entries = in.shortAt(vbri + 18);
+			int scale = in.shortAt(vbri + 20);
+			int entrySize = in.shortAt(vbri + 22);
+			int framesPerEntry = in.shortAt(vbri + 24);
+			if (frames <= 0 || entries == 0 || entrySize < 1 || entrySize > 4
+				|| !in.fill(vbri, 26 + entries * entrySize))
+				return null;
+
+			long[] offsets = new long[entries + 1];
+			int[] pointFrames = new int[entries + 1];
+			offsets[0] = pos;
+			long p = vbri + 26;
+			for (int i=0; i<entries; i++)
+			{
+				long size = 0;
+				for (int b=0; b<entrySize; b++)
+					size = (size << 8) | in.byteAt(p++);
+				offsets[i + 1] = offsets[i] + size * scale;
+				pointFrames[i + 1] = Math.min(1 + (i + 1) * framesPerEntry, frames);
+			}
+			return new FrameIndex(header, frames + 1, offsets, pointFrames);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns true if the index has every frame as a seek point, false if
+	 * it was built from a table of contents.
+	 */
+	public boolean isExact()
+	{
+		return pointFrames == null;
+	}
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	public int getFrequency()
+	{
+		return frequency;
+	}
+
+	public int getSamplesPerFrame()
+	{
+		return samplesPerFrame;
+	}
+
+	/**
+	 * Position of the first sample of a frame, in samples per channel.
+	 */
+	public long getSamplePosition(int frame)
+	{
+		return (long)frame * samplesPerFrame;
+	}
+
+	public long getDurationMillis()
+	{
+		return millisAtFrame(frameCount);
+	}
+
+	public long millisAtFrame(int frame)
+	{
+		return getSamplePosition(frame) * 1000 / frequency;
+	}
+
+	/**
+	 * The frame playing at the given time, clamped to the stream.
+	 */
+	public int frameAtMillis(long millis)
+	{
+		long frame = Math.max(0, millis) * frequency / (1000L * samplesPerFrame);
+		return (int)Math.min(frame, frameCount);
+	}
+
+	/**
+	 * The last seek point at or before a frame.
+	 */
+	public int getSeekPoint(int frame)
+	{
+		if (pointFrames == null)
+			return Math.max(0, Math.min(frame, offsets.length - 1));
+
+		int point = Arrays.binarySearch(pointFrames, frame);
+		// not found gives -(insertion point) - 1
+		return point >= 0 ? point : Math.max(0, -point - 2);
+	}
+
+	public int getSeekPointFrame(int point)
+	{
+		return pointFrames == null ? point : pointFrames[point];
+	}
+
+	public long getSeekPointOffset(int point)
+	{
+		return offsets[point];
+	}
+
+	/**
+	 * Size of a frame in bytes including the header, or 0 if the header is
+	 * invalid or uses the free format.
+	 */
+	static int frameSize(int header)
+	{
+		if ((header & 0xFFE00000) != 0xFFE00000)
+			return 0;
+		int version = (header >>> 19) & 3;
+		int layer = 4 - ((header >>> 17) & 3);
+		int bitrate_index = (header >>> 12) & 0xF;
+		int sample_frequency = (header >>> 10) & 3;
+		int padding = (header >>> 9) & 1;
+		if (version == 1 || layer == 4 || bitrate_index == 0 || bitrate_index == 15
+			|| sample_frequency == 3)
+			return 0;
+
+		int v = headerVersion(header);
+		int bitrate = Header.bitrates[v][layer - 1][bitrate_index];
+		int frequency = Header.frequencies[v][sample_frequency];
+		if (layer == 1)
+			return ((12 * bitrate) / frequency + padding) << 2;
+
+		int size = (144 * bitrate) / frequency;
+		if (v != Header.MPEG1 && layer == 3)
+			size >>= 1;
+		return size + padding;
+	}
+
+	private static int headerVersion(int header)
+	{
+		switch ((header >>> 19) & 3)
+		{
+			case 0: return Header.MPEG25_LSF;
+			case 2: return Header.MPEG2_LSF;
+			default: return Header.MPEG1;
+		}
+	}
+
+	private static int frequency(int header)
+	{
+		return Header.frequencies[headerVersion(header)][(header >>> 10) & 3];
+	}
+
+	private static int samplesPerFrame(int header)
+	{
+		int layer = 4 - ((header >>> 17) & 3);
+		if (layer == 1)
+			return 384;
+		if (layer == 3 && headerVersion(header) != Header.MPEG1)
+			return 576;
+		return 1152;
+	}
+
+	/**
+	 * Reads a source forward through a window, the scan never needs to
+	 * look back further than one frame. Going back before the window
+	 * seeks, which only a seekable source can.
+	 */
+	private static final class Scanner
+	{
+		private final Source	source;
+		private final byte[]	buf = new byte[SCAN_BUFFER_SIZE];
+		private long			base;		// stream offset of buf[0]
+		private int				len;
+		private boolean			eof;
+
+		Scanner(Source source)
+		{
+			this.source = source;
+		}
+
+		/**
+		 * Makes the <code>n</code> bytes at <code>pos</code> available.
+		 *
+		 * @return false if the stream ends before that.
+		 */
+		boolean fill(long pos, int n) throws IOException
+		{
+			if (pos >= base && pos + n <= base + len)
+				return true;
+			if (n > buf.length)
+				return false;
+
+			long end = base + len;
+			if (pos < base)
+			{
+				// only a seekable source can go back
+				if (!source.isSeekable())
+					throw new IOException("can't go back to " + pos + " in a stream");
+				source.seek(pos);
+				eof = false;
+				len = 0;
+			}
+			else if (pos < end)
+			{
+				int keep = (int)(end - pos);
+				System.arraycopy(buf, (int)(pos - base), buf, 0, keep);
+				len = keep;
+			}
+			else
+			{
+				long gap = pos - end;
+				if (gap > 0 && source.isSeekable())
+				{
+					source.seek(pos);
+					gap = 0;
+				}
+				while (gap > 0 && !eof)
+				{
+					int read = source.read(buf, 0, (int)Math.min(gap, buf.length));
+					if (read < 0)
+						eof = true;
+					else
+						gap -= read;
+				}
+				len = 0;
+				if (gap > 0)
+				{
+					base = end;
+					return false;
+				}
+			}
+			base = pos;
+
+			while (len < n && !eof)
+			{
+				int read = source.read(buf, len, buf.length - len);
+				if (read < 0)
+					eof = true;
+				else
+					len += read;
+			}
+			return len >= n;
+		}
+
+		int byteAt(long pos)
+		{
+			return buf[(int)(pos - base)] & 0xFF;
+		}
+
+		int shortAt(long pos)
+		{
+			return byteAt(pos) << 8 | byteAt(pos + 1);
+		}
+
+		int intAt(long pos)
+		{
+			return shortAt(pos) << 16 | shortAt(pos + 2);
+		}
+
+		/**
+		 * Looks for the next frame header at or after <code>pos</code>
+		 * that is followed by another one, or by the end of the stream.
+		 *
+		 * @param mask	The stream bits the header must have, or 0 for any.
+		 * @return the offset of the frame, or -1 if there is none.
+		 */
+		long findFrame(long pos, int mask) throws IOException
+		{
+			for (; fill(pos, 4); pos++)
+			{
+				int header = intAt(pos);
+				int size = frameSize(header);
+				if (size <= 0 || (mask != 0 && (header & STREAM_MASK) != mask))
+					continue;
+
+				if (!fill(pos, size + 4))
+					return fill(pos, size) ? pos : -1;
+				if ((intAt(pos + size) & STREAM_MASK) == (header & STREAM_MASK))
+					return pos;
+			}
+			return -1;
+		}
+	}
+}
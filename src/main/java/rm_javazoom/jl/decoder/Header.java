@@ -87,6 +87,24 @@ public final class Header
 	Header()
 	{
 	}
+
+	/**
+	 * Forgets the stream read so far, the next header is synchronized
+	 * to as the first one of a stream.
+	 */
+	void reset()
+	{
+		syncmode = Bitstream.INITIAL_SYNC;
+		h_copyright = false;
+		h_original = false;
+		h_vbr = false;
+		h_vbr_frames = 0;
+		h_vbr_scale = 0;
+		h_vbr_bytes = 0;
+		h_vbr_toc = null;
+		_headerstring = -1;
+	}
+
 	public String toString()
 	{
 		StringBuffer buffer = new StringBuffer(200);
@@ -0,0 +1,276 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The <code>ID3v2Tag</code> class reads the title, artist and length
+ * from the ID3v2 tag at the start of an MP3 file.
+ * <p>
+ * Only the frames that hold those are read, everything else in the tag,
+ * such as embedded cover art, is skipped over, and reading stops as soon
+ * as all three have been found. ID3v2.2, 2.3 and 2.4 are understood.
+ */
+public final class ID3v2Tag
+{
+	// text frames longer than this are not what we're looking for
+	private static final int	MAX_TEXT_FRAME = 4096;
+
+	private String				title;
+	private String				artist;
+	private long				lengthMillis = -1;
+
+	private ID3v2Tag()
+	{
+	}
+
+	/**
+	 * Reads the tag from the start of a stream. The stream is left
+	 * somewhere inside the tag.
+	 *
+	 * @return the tag, or null if the stream doesn't start with one.
+	 */
+	public static ID3v2Tag read(InputStream in) throws IOException
+	{
+		byte[] header = new byte[10];
+		if (readFully(in, header, 10) < 10 || header[0]!='I' || header[1]!='D' || header[2]!='3')
+			return null;
+
+		int version = header[3];
+		int flags = header[5];
+		long remaining = syncsafe(header, 6);
+		boolean unsynchronised = (flags & 0x80) != 0;
+		if (version < 2 || version > 4)
+			return null;
+
+		ID3v2Tag tag = new ID3v2Tag();
+
+		if ((flags & 0x40) != 0 && version >= 3)
+		{
+			// extended header, its size includes itself only in 2.4
+			byte[] size = new byte[4];
+			if (readFully(in, size, 4) < 4)
+				return tag;
+			long skip = version == 4 ? syncsafe(size, 0) - 4 : int32(size, 0);
+			if (skip(in, skip) < skip)
+				return tag;
+			remaining -= 4 + skip;
+		}
+
+		int headerSize = version == 2 ? 6 : 10;
+		byte[] frame = new byte[headerSize];
+		while (remaining >= headerSize && !tag.isComplete())
+		{
+			if (readFully(in, frame, headerSize) < headerSize || frame[0] == 0)
+				break;	// end of stream or padding
+			remaining -= headerSize;
+
+			String id;
+			long size;
+			if (version == 2)
+			{
+				id = new String(frame, 0, 3, StandardCharsets.ISO_8859_1);
+				size = (frame[3] & 0xFF) << 16 | (frame[4] & 0xFF) << 8 | (frame[5] & 0xFF);
+			}
+			else
+			{
+				id = new String(frame, 0, 4, StandardCharsets.ISO_8859_1);
+				size = version == 4 ? syncsafe(frame, 4) : int32(frame, 4);
+			}
+			if (size > remaining)
+				break;
+			remaining -= size;
+
+			int field = field(id);
+			if (field < 0 || size > MAX_TEXT_FRAME)
+			{
+				if (skip(in, size) < size)
+					break;
+				continue;
+			}
+
+			byte[] data = new byte[(int)size];
+			if (readFully(in, data, data.length) < data.length)
+				break;
+			boolean frameUnsynchronised = unsynchronised;
+			if (version == 4)
+			{
+				// format flags of 2.4 frames
+				frameUnsynchronised |= (frame[9] & 0x02) != 0;
+				if ((frame[9] & 0x01) != 0 && data.length >= 4)
+					data = Arrays.copyOfRange(data, 4, data.length);	// data length indicator
+			}
+			String text = text(frameUnsynchronised ? resynchronise(data) : data);
+			switch (field)
+			{
+				case 0:
+					tag.title = text;
+					break;
+				case 1:
+					tag.artist = text;
+					break;
+				case 2:
+					try
+					{
+						tag.lengthMillis = Long.parseLong(text.trim());
+					}
+					catch (NumberFormatException ex)
+					{
+					}
+					break;
+			}
+		}
+		return tag;
+	}
+
+	/**
+	 * The title, or null if the tag has none.
+	 */
+	public String getTitle()
+	{
+		return title;
+	}
+
+	/**
+	 * The lead artist, or null if the tag has none.
+	 */
+	public String getArtist()
+	{
+		return artist;
+	}
+
+	/**
+	 * The length of the song in milliseconds as written by the encoder,
+	 * or -1 if the tag doesn't say.
+	 */
+	public long getLengthMillis()
+	{
+		return lengthMillis;
+	}
+
+	private boolean isComplete()
+	{
+		return title!=null && artist!=null && lengthMillis >= 0;
+	}
+
+	private static int field(String id)
+	{
+		switch (id)
+		{
+			case "TIT2":
+			case "TT2":
+				return 0;
+			case "TPE1":
+			case "TP1":
+				return 1;
+			case "TLEN":
+			case "TLE":
+				return 2;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Decodes a text frame, the first byte is the encoding. Of several
+	 * values only the first is returned.
+	 */
+	private static String text(byte[] data)
+	{
+		if (data.length == 0)
+			return "";
+
+		Charset charset;
+		switch (data[0])
+		{
+			case 1:  charset = StandardCharsets.UTF_16; break;
+			case 2:  charset = StandardCharsets.UTF_16BE; break;
+			case 3:  charset = StandardCharsets.UTF_8; break;
+			default: charset = StandardCharsets.ISO_8859_1; break;
+		}
+		String text = new String(data, 1, data.length - 1, charset);
+		int end = text.indexOf('\0');
+		return end < 0 ? text : text.substring(0, end);
+	}
+
+	/**
+	 * Undoes unsynchronisation, a 0x00 was inserted after every 0xFF.
+	 */
+	private static byte[] resynchronise(byte[] data)
+	{
+		int n = 0;
+		for (int i=0; i<data.length; i++)
+		{
+			data[n++] = data[i];
+			if (data[i] == (byte)0xFF && i + 1 < data.length && data[i + 1] == 0)
+				i++;
+		}
+		return n == data.length ? data : Arrays.copyOf(data, n);
+	}
+
+	private static long syncsafe(byte[] b, int offs)
+	{
+		return (b[offs] & 0x7F) << 21 | (b[offs+1] & 0x7F) << 14 | (b[offs+2] & 0x7F) << 7 | (b[offs+3] & 0x7F);
+	}
+
+	private static long int32(byte[] b, int offs)
+	{
+		return ((b[offs] & 0xFFL) << 24) | (b[offs+1] & 0xFF) << 16 | (b[offs+2] & 0xFF) << 8 | (b[offs+3] & 0xFF);
+	}
+
+	private static int readFully(InputStream in, byte[] b, int len) throws IOException
+	{
+		int total = 0;
+		while (total < len)
+		{
+			int read = in.read(b, total, len - total);
+			if (read < 0)
+				break;
+			total += read;
+		}
+		return total;
+	}
+
+	/**
+	 * @return the number of bytes skipped, less than <code>n</code> only
+	 *		   at the end of the stream.
+	 */
+	static long skip(InputStream in, long n) throws IOException
+	{
+		long skipped = 0;
+		while (skipped < n)
+		{
+			long s = in.skip(n - skipped);
+			if (s <= 0)
+			{
+				// skip() may stop short, only a read tells the end of the stream
+				if (in.read() < 0)
+					break;
+				s = 1;
+			}
+			skipped += s;
+		}
+		return skipped;
+	}
+}
@@ -39,7 +39,18 @@ class LayerIDecoder implements FrameDecoder
 	protected int					mode;
 	
 	protected int					num_subbands;
-	protected Subband[]				subbands;
+	protected Subband[]				subbands = new Subband[32];
+	
+	/**
+	 * Kinds of subband, by channel mode.
+	 */
+	protected static final int		SUBBAND_SINGLE = 0, SUBBAND_STEREO = 1, SUBBAND_INTENSITY_STEREO = 2;
+	
+	/**
+	 * Subbands of each kind, made the first time they are needed
+	 * and then reset for every frame instead of being made again.
+	 */
+	private final Subband[][]		subband_pool = new Subband[3][32];
 	protected Crc16					crc	= null;	// new Crc16[1] to enable CRC checking.
 	
 	public LayerIDecoder()
@@ -64,7 +75,6 @@ class LayerIDecoder implements FrameDecoder
 	{
 		
 		num_subbands = header.number_of_subbands();
-		subbands = new Subband[32];
 		mode = header.mode();
 		
 		createSubbands();
@@ -86,21 +96,48 @@ class LayerIDecoder implements FrameDecoder
 		int i;
 		if (mode == Header.SINGLE_CHANNEL)
   		  for (i = 0; i < num_subbands; ++i)
-  		    subbands[i] = new SubbandLayer1(i);
+  		    subbands[i] = subband(SUBBAND_SINGLE, i);
   		else if (mode == Header.JOINT_STEREO)
 		{
   		  for (i = 0; i < header.intensity_stereo_bound(); ++i)
-  		    subbands[i] = new SubbandLayer1Stereo(i);
+  		    subbands[i] = subband(SUBBAND_STEREO, i);
   		  for (; i < num_subbands; ++i)
-  		    subbands[i] = new SubbandLayer1IntensityStereo(i);
+  		    subbands[i] = subband(SUBBAND_INTENSITY_STEREO, i);
   		}
 		else
 		{
   		  for (i = 0; i < num_subbands; ++i)
-  		    subbands[i] = new SubbandLayer1Stereo(i);
+  		    subbands[i] = subband(SUBBAND_STEREO, i);
   	    }		
 	}
 	
+	/**
+	 * Returns the subband of a kind for this frame, reset to how it
+	 * was constructed.
+	 */
+	protected final Subband subband(int kind, int subbandnumber)
+	{
+		Subband subband = subband_pool[kind][subbandnumber];
+		if (subband == null)
+			subband = subband_pool[kind][subbandnumber] = newSubband(kind, subbandnumber);
+		else
+			subband.reset();
+		return subband;
+	}
+	
+	protected Subband newSubband(int kind, int subbandnumber)
+	{
+		switch (kind)
+		{
+			case SUBBAND_SINGLE:
+				return new SubbandLayer1(subbandnumber);
+			case SUBBAND_STEREO:
+				return new SubbandLayer1Stereo(subbandnumber);
+			default:
+				return new SubbandLayer1IntensityStereo(subbandnumber);
+		}
+	}
+	
 	protected void readAllocation() throws DecoderException
 	{
 		// start to read audio data:
@@ -125,6 +162,9 @@ class LayerIDecoder implements FrameDecoder
 		boolean read_ready = false;
 		boolean write_ready = false;
 		int mode = header.mode();
+		// a downmix takes both channels into the two filters, and synthesizes their average
+		boolean downmix = (which_channels == OutputChannels.DOWNMIX_CHANNELS) && (mode != Header.SINGLE_CHANNEL);
+		int channels = downmix ? OutputChannels.BOTH_CHANNELS : which_channels;
 		int i;
 		do
   		{
@@ -133,9 +173,12 @@ class LayerIDecoder implements FrameDecoder
   		  do
   		  {
   		  	for (i = 0; i < num_subbands; ++i)
-  		  		write_ready = subbands[i].put_next_sample(which_channels,filter1, filter2);
+  		  		write_ready = subbands[i].put_next_sample(channels,filter1, filter2);
 
-  		  	filter1.calculate_pcm_samples(buffer);
+  		  	if (downmix)
+  		  		filter1.calculate_pcm_samples_downmix(filter2, buffer);
+  		  	else
+  		  		filter1.calculate_pcm_samples(buffer);
   		  	if ((which_channels == OutputChannels.BOTH_CHANNELS) && (mode != Header.SINGLE_CHANNEL))
            		filter2.calculate_pcm_samples(buffer);
   		  } while (!write_ready);
@@ -174,6 +217,10 @@ class LayerIDecoder implements FrameDecoder
 	  0.00000190734863f, 0.00000151386361f, 0.00000120155435f, 0.00000000000000f /* illegal scalefactor */
 	  };
 
+	  /**
+	   * Puts the subband back the way it was constructed, for the next frame.
+	   */
+	  public abstract void reset();
 	  public abstract void read_allocation (Bitstream stream, Header header, Crc16 crc) throws DecoderException;
 	  public abstract void read_scalefactor (Bitstream stream, Header header);
 	  public abstract boolean read_sampledata (Bitstream stream);
@@ -224,6 +271,19 @@ class LayerIDecoder implements FrameDecoder
 	    samplenumber = 0;  
 	  }
 	  
+	  /**
+	   *
+	   */
+	  public void reset()
+	  {
+	    samplenumber = 0;
+	    allocation = 0;
+	    scalefactor = 0.0f;
+	    samplelength = 0;
+	    sample = 0.0f;
+	    factor = offset = 0.0f;
+	  }
+	  
 	  /**
 	   *
 	   */
@@ -299,6 +359,15 @@ class LayerIDecoder implements FrameDecoder
 	  {
 		super(subbandnumber);  
 	  }
+	  
+	  /**
+	   *
+	   */
+	  public void reset()
+	  {
+	    super.reset();
+	    channel2_scalefactor = 0.0f;
+	  }
 
 	  /**
 	   *
@@ -378,6 +447,19 @@ class LayerIDecoder implements FrameDecoder
 	    super(subbandnumber);
 	  }
 	  
+	  /**
+	   *
+	   */
+	  public void reset()
+	  {
+	    super.reset();
+	    channel2_allocation = 0;
+	    channel2_scalefactor = 0.0f;
+	    channel2_samplelength = 0;
+	    channel2_sample = 0.0f;
+	    channel2_factor = channel2_offset = 0.0f;
+	  }
+	  
 	  /**
 	   *
 	   */
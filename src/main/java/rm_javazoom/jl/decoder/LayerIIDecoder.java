@@ -40,25 +40,17 @@ class LayerIIDecoder extends LayerIDecoder implements FrameDecoder
 	}
 
 	
-	protected void createSubbands()
-	{		
-  		int i;
-		if (mode == Header.SINGLE_CHANNEL)
-  		  for (i = 0; i < num_subbands; ++i)
-  		    subbands[i] = new SubbandLayer2(i);
-  		else if (mode == Header.JOINT_STEREO)
-  		{
-  		  for (i = 0; i < header.intensity_stereo_bound(); ++i)
-  		      subbands[i] = new SubbandLayer2Stereo(i);
-  		  for (; i < num_subbands; ++i)
-  		      subbands[i] = new SubbandLayer2IntensityStereo(i);
-  		}
-		else
+	protected Subband newSubband(int kind, int subbandnumber)
+	{
+		switch (kind)
 		{
-  		  for (i = 0; i < num_subbands; ++i)
-  		      subbands[i] = new SubbandLayer2Stereo(i);
-        }
-		
+			case SUBBAND_SINGLE:
+				return new SubbandLayer2(subbandnumber);
+			case SUBBAND_STEREO:
+				return new SubbandLayer2Stereo(subbandnumber);
+			default:
+				return new SubbandLayer2IntensityStereo(subbandnumber);
+		}
 	}
 	
 	protected void readScaleFactorSelection()
@@ -501,6 +493,23 @@ class LayerIIDecoder extends LayerIDecoder implements FrameDecoder
 	    groupnumber = samplenumber = 0;  
 	  }
 	  
+	  /**
+	   *
+	   */
+	  public void reset()
+	  {
+	    groupnumber = samplenumber = 0;
+	    allocation = 0;
+	    scfsi = 0;
+	    scalefactor1 = scalefactor2 = scalefactor3 = 0.0f;
+	    codelength[0] = 0;
+	    groupingtable[0] = groupingtable[1] = null;
+	    factor[0] = 0.0f;
+	    samples[0] = samples[1] = samples[2] = 0.0f;
+	    c[0] = 0.0f;
+	    d[0] = 0.0f;
+	  }
+	  
 	  
 	  /**
 	   *
@@ -758,6 +767,16 @@ class LayerIIDecoder extends LayerIDecoder implements FrameDecoder
 	  {
 	 	super(subbandnumber);
 	  }
+	  
+	  /**
+	   *
+	   */
+	  public void reset()
+	  {
+	    super.reset();
+	    channel2_scfsi = 0;
+	    channel2_scalefactor1 = channel2_scalefactor2 = channel2_scalefactor3 = 0.0f;
+	  }
 
 	  /**
 	   *
@@ -913,6 +932,22 @@ class LayerIIDecoder extends LayerIDecoder implements FrameDecoder
 		channel2_samples = new float[3];
 	  }
 	  
+	  /**
+	   *
+	   */
+	  public void reset()
+	  {
+	    super.reset();
+	    channel2_allocation = 0;
+	    channel2_scfsi = 0;
+	    channel2_scalefactor1 = channel2_scalefactor2 = channel2_scalefactor3 = 0.0f;
+	    channel2_codelength[0] = 0;
+	    channel2_factor[0] = 0.0f;
+	    channel2_samples[0] = channel2_samples[1] = channel2_samples[2] = 0.0f;
+	    channel2_c[0] = 0.0f;
+	    channel2_d[0] = 0.0f;
+	  }
+	  
 	  /**
 	   *
 	   */
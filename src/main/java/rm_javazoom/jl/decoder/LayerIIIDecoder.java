@@ -41,16 +41,16 @@ package rm_javazoom.jl.decoder;
  */
 final class LayerIIIDecoder implements FrameDecoder
 {
-	final double d43 = (4.0/3.0);
-	
 	public int[]				scalefac_buffer;
 
 	// MDM: removed, as this wasn't being used.
 	//private float               CheckSumOut1d = 0.0f;
     private int                 CheckSumHuff = 0;
 	private int[] 				is_1d;
-    private float[][][]			ro;
-    private float[][][]			lr;
+    // ro, lr and prevblck hold one granule per channel as 576 consecutive
+    // lines, subband sb and sample ss at index sb*18 + ss
+    private float[][]			ro;
+    private float[][]			lr;
 	private float[]				out_1d;
     private float[][]		    prevblck;
     private float[][]			k;
@@ -87,8 +87,8 @@ final class LayerIIIDecoder implements FrameDecoder
 	{
         huffcodetab.inithuff();
 		is_1d = new int[SBLIMIT*SSLIMIT+4];
-		ro = new float[2][SBLIMIT][SSLIMIT];
-		lr = new float[2][SBLIMIT][SSLIMIT];
+		ro = new float[2][SBLIMIT*SSLIMIT];
+		lr = new float[2][SBLIMIT*SSLIMIT];
 		out_1d = new float[SBLIMIT*SSLIMIT];
 		prevblck = new float[2][SBLIMIT*SSLIMIT];
 		k = new float[2][SBLIMIT*SSLIMIT];
@@ -211,7 +211,19 @@ final class LayerIIIDecoder implements FrameDecoder
 	  for(int ch=0;ch<2;ch++)
 	  for (int j=0; j<576; j++)
    	   prevblck[ch][j] = 0.0f;
-   	  br = new BitReserve();
+   	  br.reset();
+   }
+
+   /**
+    * Starts decoding another stream of the same format, the
+    * decoder is left as it was after construction.
+	*/
+   void reset(Bitstream stream0, Header header0)
+   {
+	  stream = stream0;
+	  header = header0;
+	  seek_notify();
+	  nonzero[0] = nonzero[1] = 576;
    }
 
    public void decodeFrame()
@@ -262,8 +274,8 @@ final class LayerIIIDecoder implements FrameDecoder
 				br.rewindNbytes(4096);
 		 }
 
-		 for (; bytes_to_discard > 0; bytes_to_discard--)
-	    		br.hgetbits(8);
+		 if (bytes_to_discard > 0)
+	    		br.hskipbits(bytes_to_discard << 3);
 
 		 for (gr=0;gr<max_gr;gr++) {
 
@@ -783,8 +795,9 @@ final class LayerIIIDecoder implements FrameDecoder
 	   }
 
 	   index = 0;
-		// Read bigvalues area
-		for (int i=0; i<(si.ch[ch].gr[gr].big_values<<1); i+=2) {
+		// Read bigvalues area, no more than a granule holds even if damaged data says so
+		int big_values_end = Math.min(si.ch[ch].gr[gr].big_values<<1, 576);
+		for (int i=0; i<big_values_end; i+=2) {
 			if      (i<region1Start) h = huffcodetab.ht[si.ch[ch].gr[gr].table_select[0]];
 			else if (i<region2Start) h = huffcodetab.ht[si.ch[ch].gr[gr].table_select[1]];
 				  else                h = huffcodetab.ht[si.ch[ch].gr[gr].table_select[2]];
@@ -826,7 +839,7 @@ final class LayerIIIDecoder implements FrameDecoder
 
 		// Dismiss stuffing bits
 		if (num_bits < part2_3_end)
-	   	br.hgetbits(part2_3_end - num_bits);
+	   	br.hskipbits(part2_3_end - num_bits);
 
 		// Zero out rest
 
@@ -862,7 +875,7 @@ final class LayerIIIDecoder implements FrameDecoder
 	/**
 	 *
 	 */
-	private void dequantize_sample(float xr[][], int ch, int gr)
+	private void dequantize_sample(float xr[], int ch, int gr)
 	{
 		gr_info_s gr_info = (si.ch[ch].gr[gr]);
 		int  cb=0;
@@ -871,7 +884,6 @@ final class LayerIIIDecoder implements FrameDecoder
 		int cb_width = 0;
 		int  index=0, t_index, j;
 	   	float g_gain;
-	    float[][] xr_1d = xr;
 
 		// choose correct scalefactor band per block type, initalize boundary
 
@@ -889,42 +901,15 @@ final class LayerIIIDecoder implements FrameDecoder
 
 	   // Compute overall (global) scaling.
 
-		g_gain = (float) Math.pow(2.0 , (0.25 * (gr_info.global_gain - 210.0)));
-
-	  	for (j=0; j<nonzero[ch]; j++)
-	  	{
-	  	    // Modif E.B 02/22/99
-            int reste = j % SSLIMIT;
-            int quotien = (int) ((j-reste)/SSLIMIT);
-	    	if (is_1d[j] == 0) xr_1d[quotien][reste] = 0.0f;
-	        else
-	        {
-	         int abv = is_1d[j];
-	         // Pow Array fix (11/17/04)
-	         if (abv < t_43.length)
-	         {
-				if (is_1d[j] > 0) xr_1d[quotien][reste] = g_gain * t_43[abv];
-				else
-				{
-					if (-abv < t_43.length) xr_1d[quotien][reste] = -g_gain * t_43[-abv];
-					else xr_1d[quotien][reste] = -g_gain * (float)Math.pow(-abv, d43);	
-				} 
-	         }
-	         else
-	         {
-				if (is_1d[j] > 0) xr_1d[quotien][reste] = g_gain * (float)Math.pow(abv, d43);
-				else xr_1d[quotien][reste] = -g_gain * (float)Math.pow(-abv, d43);	         	
-	         }
-	        }
-	   }
+		g_gain = global_gain_pow[gr_info.global_gain];
+
+		// combined global gain and scalefactor multiplier, only recomputed when the scalefactor changes
+		int last_idx = -1;
+		float gain = 0.0f;
 
 	   // apply formula per block type
 	   for (j=0; j<nonzero[ch]; j++)
 	   {
-            // Modif E.B 02/22/99
-            int reste = j % SSLIMIT;
-            int quotien = (int) ((j-reste)/SSLIMIT);
-
 			if (index == next_cb_boundary)  { /* Adjust critical band boundary */
 	      	if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
 	         	if (gr_info.mixed_block_flag != 0)  {
@@ -990,7 +975,10 @@ final class LayerIIIDecoder implements FrameDecoder
 	           				 << gr_info.scalefac_scale;
 	         idx += (gr_info.subblock_gain[t_index] << 2);
 
-				xr_1d[quotien][reste] *= two_to_negative_half_pow[idx];
+				if (idx != last_idx) {
+					last_idx = idx;
+					gain = g_gain * two_to_negative_half_pow[idx];
+				}
 
 			} else {   // LONG block types 0,1,3 & 1st 2 subbands of switched blocks
 	/*				xr[sb][ss] *= pow(2.0, -0.5 * (1.0+gr_info.scalefac_scale)
@@ -1002,20 +990,22 @@ final class LayerIIIDecoder implements FrameDecoder
 			   	idx += pretab[cb];
 
 			   idx = idx << gr_info.scalefac_scale;
-	         xr_1d[quotien][reste] *= two_to_negative_half_pow[idx];
+				if (idx != last_idx) {
+					last_idx = idx;
+					gain = g_gain * two_to_negative_half_pow[idx];
+				}
 			}
+
+			// |is_1d| never exceeds 15 + (2^13 - 1), which t_43 covers
+			int abv = is_1d[j];
+			if (abv >= 0) xr[j] = t_43[abv] * gain;
+			else xr[j] = -(t_43[-abv] * gain);
+
 	      index++;
 		}
 
 	   for (j=nonzero[ch]; j<576; j++)
-	   {
-            // Modif E.B 02/22/99
-            int reste = j % SSLIMIT;
-            int quotien = (int) ((j-reste)/SSLIMIT);
-            if(reste < 0) reste = 0;
-            if(quotien < 0) quotien = 0;
-	     	xr_1d[quotien][reste] = 0.0f;
-	   }
+	     	xr[j] = 0.0f;
 
    	   return;
 	}
@@ -1023,88 +1013,34 @@ final class LayerIIIDecoder implements FrameDecoder
     /**
 	 *
 	 */
-	private void reorder(float xr[][], int ch, int gr)
+	private void reorder(float xr[], int ch, int gr)
 	{
 	   gr_info_s gr_info = (si.ch[ch].gr[gr]);
-	   int freq, freq3;
 	   int index;
-	   int sfb, sfb_start, sfb_lines;
-	   int src_line, des_line;
-	   float[][] xr_1d = xr;
 
 	   if ((gr_info.window_switching_flag !=0) && (gr_info.block_type == 2)) {
-
-	      for(index=0; index<576; index++)
-	         out_1d[index] = 0.0f;
+	      final int[] reorder = reorder_table[sfreq];
 
 			if (gr_info.mixed_block_flag !=0 ) {
 				// NO REORDER FOR LOW 2 SUBBANDS
-	            for (index = 0; index < 36; index++)
-	            {
-                    // Modif E.B 02/22/99
-                    int reste = index % SSLIMIT;
-                    int quotien = (int) ((index-reste)/SSLIMIT);
-	                out_1d[index] = xr_1d[quotien][reste];
-	            }
-				// REORDERING FOR REST SWITCHED SHORT
-				/*for( sfb=3,sfb_start=sfBandIndex[sfreq].s[3],
-					 sfb_lines=sfBandIndex[sfreq].s[4] - sfb_start;
-					 sfb < 13; sfb++,sfb_start = sfBandIndex[sfreq].s[sfb],
-					 sfb_lines = sfBandIndex[sfreq].s[sfb+1] - sfb_start )
-					 {*/						   
-		 		for( sfb=3; sfb < 13; sfb++)
-	            	 {						   
-							//System.out.println("sfreq="+sfreq+" sfb="+sfb+" sfBandIndex="+sfBandIndex.length+" sfBandIndex[sfreq].s="+sfBandIndex[sfreq].s.length);
-							sfb_start = sfBandIndex[sfreq].s[sfb];
-							sfb_lines = sfBandIndex[sfreq].s[sfb+1] - sfb_start;
-
-						   int sfb_start3 = (sfb_start << 2) - sfb_start;
-
-							for(freq=0, freq3=0; freq<sfb_lines;
-	                             freq++, freq3+=3) {
-
-								src_line = sfb_start3 + freq;
-								des_line = sfb_start3 + freq3;
-                                // Modif E.B 02/22/99
-                                int reste = src_line % SSLIMIT;
-                                int quotien = (int) ((src_line-reste)/SSLIMIT);
-
-								out_1d[des_line] = xr_1d[quotien][reste];
-								src_line += sfb_lines;
-								des_line++;
-
-								reste = src_line % SSLIMIT;
-								quotien = (int) ((src_line-reste)/SSLIMIT);
-
-								out_1d[des_line] = xr_1d[quotien][reste];
-								src_line += sfb_lines;
-								des_line++;
-
-								reste = src_line % SSLIMIT;
-								quotien = (int) ((src_line-reste)/SSLIMIT);
-
-								out_1d[des_line] = xr_1d[quotien][reste];
-						   }
-	            	  }
+				System.arraycopy(xr, 0, out_1d, 0, 36);
+
+				// REORDERING FOR REST SWITCHED SHORT, the short block
+				// lines below the first switched band stay empty
+				int start = sfBandIndex[sfreq].s[3];
+				start = (start << 2) - start;
+				for (index = 36; index < start; index++)
+					out_1d[index] = 0.0f;
+				for (index = start; index < 576; index++)
+					out_1d[index] = xr[reorder[index]];
 
 			} else {  // pure short
 	      	for(index=0;index<576;index++)
-	      	{
-                int j = reorder_table[sfreq][index];
-	            int reste = j % SSLIMIT;
-				int quotien = (int) ((j-reste)/SSLIMIT);
-	            out_1d[index] = xr_1d[quotien][reste];
-	        }
+	            out_1d[index] = xr[reorder[index]];
 			}
 		}
 		else {   // long blocks
-	      for(index=0; index<576; index++)
-	      {
-            // Modif E.B 02/22/99
-            int reste = index % SSLIMIT;
-            int quotien = (int) ((index-reste)/SSLIMIT);
-	      	out_1d[index] = xr_1d[quotien][reste];
-	      }
+	      System.arraycopy(xr, 0, out_1d, 0, 576);
 		}
 	}
 
@@ -1119,14 +1055,9 @@ final class LayerIIIDecoder implements FrameDecoder
 	{
 	  int sb, ss;
 
-		if  (channels == 1) { // mono , bypass xr[0][][] to lr[0][][]
+		if  (channels == 1) { // mono , bypass xr[0][] to lr[0][]
 
-			for(sb=0;sb<SBLIMIT;sb++)
-				for(ss=0;ss<SSLIMIT;ss+=3) {
-					lr[0][sb][ss]   = ro[0][sb][ss];
-	            lr[0][sb][ss+1] = ro[0][sb][ss+1];
-					lr[0][sb][ss+2] = ro[0][sb][ss+2];
-	         }
+			System.arraycopy(ro[0], 0, lr[0], 0, 576);
 
 	   } else {
 
@@ -1142,16 +1073,20 @@ final class LayerIIIDecoder implements FrameDecoder
 
 		int io_type = (gr_info.scalefac_compress & 1);
 
-	 	// initialization
+		final float[] ro0 = ro[0], ro1 = ro[1];
+		final float[] lr0 = lr[0], lr1 = lr[1];
+		final float[] k0 = k[0], k1 = k[1];
 
-	   for (i=0; i<576; i++)
-	   {
-	   		is_pos[i] = 7;
+		if (i_stereo) {
+		 	// initialization
 
-			is_ratio[i] = 0.0f;
-	   }
+		   for (i=0; i<576; i++)
+		   {
+		   		is_pos[i] = 7;
+
+				is_ratio[i] = 0.0f;
+		   }
 
-		if (i_stereo) {
 	   	if ((gr_info.window_switching_flag !=0 )&& (gr_info.block_type == 2)) {
 	      	if (gr_info.mixed_block_flag != 0) {
 
@@ -1166,10 +1101,7 @@ final class LayerIIIDecoder implements FrameDecoder
 	                  i = (i << 2) - i + (j+1) * lines - 1;
 
 							while (lines > 0) {
-	                  	if (ro[1][i/18][i%18] != 0.0f) {
-							// MDM: in java, array access is very slow.
-							// Is quicker to compute div and mod values.
-						//if (ro[1][ss_div[i]][ss_mod[i]] != 0.0f) {
+	                  	if (ro1[i] != 0.0f) {
 	                     	sfbcnt = sfb;
 									sfb = -10;
 									lines = -10;
@@ -1214,8 +1146,8 @@ final class LayerIIIDecoder implements FrameDecoder
 	               	is_pos[i] = is_pos[sfb];
 
 			            if (lsf) {
-			               k[0][i] = k[0][sfb];
-					         k[1][i] = k[1][sfb];
+			               k0[i] = k0[sfb];
+					         k1[i] = k1[sfb];
 			            } else {
 	     						is_ratio[i] = is_ratio[sfb];
 	                  }
@@ -1227,7 +1159,7 @@ final class LayerIIIDecoder implements FrameDecoder
 						 ss = 17;
 						 sb = -1;
 						 while (i >= 0) {
-	                	if (ro[1][i][ss] != 0.0f) {
+	                	if (ro1[(i<<4) + (i<<1) + ss] != 0.0f) {
 	                   	 sb = (i<<4) + (i<<1) + ss;
 								 i = -1;
 							} else {
@@ -1267,10 +1199,7 @@ final class LayerIIIDecoder implements FrameDecoder
 	                  i = (temp << 2) - temp + (j+1) * lines - 1;
 
 							while (lines > 0) {
-								if (ro[1][i/18][i%18] != 0.0f) {
-								// MDM: in java, array access is very slow.
-								// Is quicker to compute div and mod values.
-								//if (ro[1][ss_div[i]][ss_mod[i]] != 0.0f) {
+								if (ro1[i] != 0.0f) {
 	                     	sfbcnt = sfb;
 									sfb = -10;
 									lines = -10;
@@ -1308,8 +1237,8 @@ final class LayerIIIDecoder implements FrameDecoder
 	               	is_pos[i] = is_pos[sfb];
 
 			            if (lsf) {
-			               k[0][i] = k[0][sfb];
-					         k[1][i] = k[1][sfb];
+			               k0[i] = k0[sfb];
+					         k1[i] = k1[sfb];
 	      		      } else {
 	               		is_ratio[i] = is_ratio[sfb];
 	                  }
@@ -1322,7 +1251,7 @@ final class LayerIIIDecoder implements FrameDecoder
 				ss = 17;
 				sb = 0;
 				while (i >= 0) {
-	         	if (ro[1][i][ss] != 0.0f) {
+	         	if (ro1[(i<<4) + (i<<1) + ss] != 0.0f) {
 	            	sb = (i<<4) + (i<<1) + ss;
 						i = -1;
 					} else {
@@ -1357,8 +1286,8 @@ final class LayerIIIDecoder implements FrameDecoder
 	         	is_pos[i] = is_pos[sfb]; // error here : i >=576
 
 	            if (lsf) {
-	               k[0][i] = k[0][sfb];
-			         k[1][i] = k[1][sfb];
+	               k0[i] = k0[sfb];
+			         k1[i] = k1[sfb];
 	            } else {
 	  					is_ratio[i] = is_ratio[sfb];
 	            }
@@ -1367,33 +1296,37 @@ final class LayerIIIDecoder implements FrameDecoder
 			} // if (gr_info.window_switching_flag ...
 		} // if (i_stereo)
 
-	   	i = 0;
-			for(sb=0;sb<SBLIMIT;sb++)
-				for(ss=0;ss<SSLIMIT;ss++) {
-					if (is_pos[i] == 7) {
-						if (ms_stereo) {
-							lr[0][sb][ss] = (ro[0][sb][ss]+ro[1][sb][ss]) * 0.707106781f;
-							lr[1][sb][ss] = (ro[0][sb][ss]-ro[1][sb][ss]) * 0.707106781f;
-						} else {
-							lr[0][sb][ss] = ro[0][sb][ss];
-							lr[1][sb][ss] = ro[1][sb][ss];
-						}
-					}
-					else if (i_stereo) {
-
-	            	if (lsf) {
-	                  lr[0][sb][ss] = ro[0][sb][ss] * k[0][i];
-	                  lr[1][sb][ss] = ro[0][sb][ss] * k[1][i];
-	               } else {
-	               	lr[1][sb][ss] = ro[0][sb][ss] / (float) (1 + is_ratio[i]);
-		  				   lr[0][sb][ss] = lr[1][sb][ss] * is_ratio[i];
-	               }
+		if (!i_stereo) {
+			// no intensity stereo, every is_pos is 7
+			if (ms_stereo) {
+				for (i=0; i<576; i++) {
+					float l = ro0[i], r = ro1[i];
+					lr0[i] = (l+r) * 0.707106781f;
+					lr1[i] = (l-r) * 0.707106781f;
+				}
+			} else {
+				System.arraycopy(ro0, 0, lr0, 0, 576);
+				System.arraycopy(ro1, 0, lr1, 0, 576);
+			}
+		} else {
+			for (i=0; i<576; i++) {
+				if (is_pos[i] == 7) {
+					if (ms_stereo) {
+						lr0[i] = (ro0[i]+ro1[i]) * 0.707106781f;
+						lr1[i] = (ro0[i]-ro1[i]) * 0.707106781f;
+					} else {
+						lr0[i] = ro0[i];
+						lr1[i] = ro1[i];
 					}
-	/*				else {
-						System.out.println("Error in stereo processing\n");
-					} */
-	            i++;
+				} else if (lsf) {
+					lr0[i] = ro0[i] * k0[i];
+					lr1[i] = ro0[i] * k1[i];
+				} else {
+					lr1[i] = ro0[i] / (float) (1 + is_ratio[i]);
+					lr0[i] = lr1[i] * is_ratio[i];
 				}
+			}
+		}
 
     	} // channels == 2
 
@@ -1419,6 +1352,8 @@ final class LayerIIIDecoder implements FrameDecoder
 		} else {
 			sb18lim = 558;
 	   }
+	   // no further than the butterflies into the last subband that is synthesized
+	   sb18lim = Math.min(sb18lim, 576 / filter1.getQuality());
 
 	   for (sb18=0; sb18 < sb18lim; sb18+=18) {
 	      for (ss=0;ss<8;ss++) {
@@ -1436,9 +1371,8 @@ final class LayerIIIDecoder implements FrameDecoder
 	 *
 	 */
 
-	// MDM: tsOutCopy and rawout do not need initializing, so the arrays
+	// MDM: rawout does not need initializing, so the array
 	// can be reused.
-	float[] tsOutCopy = new float[18];
 	float[] rawout = new float[36];
 
 	private void hybrid(int ch, int gr)
@@ -1446,66 +1380,70 @@ final class LayerIIIDecoder implements FrameDecoder
 	   int bt;
 	   int sb18;
 	   gr_info_s gr_info = (si.ch[ch].gr[gr]);
-	   float[] tsOut;
+	   final float[] tsOut = out_1d;
+	   final float[] prvblk = prevblck[ch];
 
-	   float[][] prvblk;
+	   // subbands the synthesis filter drops at lower quality aren't transformed at all
+	   final int sb18lim = 576 / filter1.getQuality();
 
-	   for(sb18=0;sb18<576;sb18+=18)
+	   for(sb18=0;sb18<sb18lim;sb18+=18)
 	   {
 			bt = ((gr_info.window_switching_flag !=0 ) && (gr_info.mixed_block_flag !=0) &&
 					 (sb18 < 36)) ? 0 : gr_info.block_type;
 
-		   tsOut = out_1d;
-	       // Modif E.B 02/22/99
-	       for (int cc = 0;cc<18;cc++)
-			   tsOutCopy[cc] = tsOut[cc+sb18];
-
-		   inv_mdct(tsOutCopy, rawout, bt);
-
+		   // Subbands above the encoder's lowpass are all zero, and so is
+		   // their IMDCT output. Only the previous block's overlap remains.
+		   if (isZeroSubband(tsOut, sb18))
+		   {
+			   for (int cc = 0;cc<18;cc++)
+			   {
+				   tsOut[cc+sb18] = prvblk[sb18 + cc];
+				   prvblk[sb18 + cc] = 0.0f;
+			   }
+			   continue;
+		   }
 
-		   for (int cc = 0;cc<18;cc++)
-			   tsOut[cc+sb18] = tsOutCopy[cc];
-		   // Fin Modif
+		   // transforms in place, the input is overwritten by the overlap addition below
+		   inv_mdct(tsOut, sb18, rawout, bt);
 
 			// overlap addition
-		   prvblk = prevblck;
-
-		   tsOut[0 + sb18]   = rawout[0]  + prvblk[ch][sb18 + 0];
-		   prvblk[ch][sb18 + 0]  = rawout[18];
-		   tsOut[1 + sb18]   = rawout[1]  + prvblk[ch][sb18 + 1];
-		   prvblk[ch][sb18 + 1]  = rawout[19];
-		   tsOut[2 + sb18]   = rawout[2]  + prvblk[ch][sb18 + 2];
-		   prvblk[ch][sb18 + 2]  = rawout[20];
-		   tsOut[3 + sb18]   = rawout[3]  + prvblk[ch][sb18 + 3];
-		   prvblk[ch][sb18 + 3]  = rawout[21];
-		   tsOut[4 + sb18]   = rawout[4]  + prvblk[ch][sb18 + 4];
-		   prvblk[ch][sb18 + 4]  = rawout[22];
-		   tsOut[5 + sb18]   = rawout[5]  + prvblk[ch][sb18 + 5];
-		   prvblk[ch][sb18 + 5]  = rawout[23];
-		   tsOut[6 + sb18]   = rawout[6]  + prvblk[ch][sb18 + 6];
-		   prvblk[ch][sb18 + 6]  = rawout[24];
-		   tsOut[7 + sb18]   = rawout[7]  + prvblk[ch][sb18 + 7];
-		   prvblk[ch][sb18 + 7]  = rawout[25];
-		   tsOut[8 + sb18]   = rawout[8]  + prvblk[ch][sb18 + 8];
-		   prvblk[ch][sb18 + 8]  = rawout[26];
-		   tsOut[9 + sb18]   = rawout[9]  + prvblk[ch][sb18 + 9];
-		   prvblk[ch][sb18 + 9]  = rawout[27];
-	   	   tsOut[10 + sb18]  = rawout[10] + prvblk[ch][sb18 + 10];
-	   	   prvblk[ch][sb18 + 10] = rawout[28];
-	 	   tsOut[11 + sb18]  = rawout[11] + prvblk[ch][sb18 + 11];
-	 	   prvblk[ch][sb18 + 11] = rawout[29];
-	 	   tsOut[12 + sb18]  = rawout[12] + prvblk[ch][sb18 + 12];
-	 	   prvblk[ch][sb18 + 12] = rawout[30];
-	 	   tsOut[13 + sb18]  = rawout[13] + prvblk[ch][sb18 + 13];
-	 	   prvblk[ch][sb18 + 13] = rawout[31];
-	 	   tsOut[14 + sb18]  = rawout[14] + prvblk[ch][sb18 + 14];
-	 	   prvblk[ch][sb18 + 14] = rawout[32];
-	 	   tsOut[15 + sb18]  = rawout[15] + prvblk[ch][sb18 + 15];
-	 	   prvblk[ch][sb18 + 15] = rawout[33];
-	 	   tsOut[16 + sb18]  = rawout[16] + prvblk[ch][sb18 + 16];
-	 	   prvblk[ch][sb18 + 16] = rawout[34];
-	 	   tsOut[17 + sb18]  = rawout[17] + prvblk[ch][sb18 + 17];
-	 	   prvblk[ch][sb18 + 17] = rawout[35];
+
+		   tsOut[0 + sb18]   = rawout[0]  + prvblk[sb18 + 0];
+		   prvblk[sb18 + 0]  = rawout[18];
+		   tsOut[1 + sb18]   = rawout[1]  + prvblk[sb18 + 1];
+		   prvblk[sb18 + 1]  = rawout[19];
+		   tsOut[2 + sb18]   = rawout[2]  + prvblk[sb18 + 2];
+		   prvblk[sb18 + 2]  = rawout[20];
+		   tsOut[3 + sb18]   = rawout[3]  + prvblk[sb18 + 3];
+		   prvblk[sb18 + 3]  = rawout[21];
+		   tsOut[4 + sb18]   = rawout[4]  + prvblk[sb18 + 4];
+		   prvblk[sb18 + 4]  = rawout[22];
+		   tsOut[5 + sb18]   = rawout[5]  + prvblk[sb18 + 5];
+		   prvblk[sb18 + 5]  = rawout[23];
+		   tsOut[6 + sb18]   = rawout[6]  + prvblk[sb18 + 6];
+		   prvblk[sb18 + 6]  = rawout[24];
+		   tsOut[7 + sb18]   = rawout[7]  + prvblk[sb18 + 7];
+		   prvblk[sb18 + 7]  = rawout[25];
+		   tsOut[8 + sb18]   = rawout[8]  + prvblk[sb18 + 8];
+		   prvblk[sb18 + 8]  = rawout[26];
+		   tsOut[9 + sb18]   = rawout[9]  + prvblk[sb18 + 9];
+		   prvblk[sb18 + 9]  = rawout[27];
+	   	   tsOut[10 + sb18]  = rawout[10] + prvblk[sb18 + 10];
+	   	   prvblk[sb18 + 10] = rawout[28];
+	 	   tsOut[11 + sb18]  = rawout[11] + prvblk[sb18 + 11];
+	 	   prvblk[sb18 + 11] = rawout[29];
+	 	   tsOut[12 + sb18]  = rawout[12] + prvblk[sb18 + 12];
+	 	   prvblk[sb18 + 12] = rawout[30];
+	 	   tsOut[13 + sb18]  = rawout[13] + prvblk[sb18 + 13];
+	 	   prvblk[sb18 + 13] = rawout[31];
+	 	   tsOut[14 + sb18]  = rawout[14] + prvblk[sb18 + 14];
+	 	   prvblk[sb18 + 14] = rawout[32];
+	 	   tsOut[15 + sb18]  = rawout[15] + prvblk[sb18 + 15];
+	 	   prvblk[sb18 + 15] = rawout[33];
+	 	   tsOut[16 + sb18]  = rawout[16] + prvblk[sb18 + 16];
+	 	   prvblk[sb18 + 16] = rawout[34];
+	 	   tsOut[17 + sb18]  = rawout[17] + prvblk[sb18 + 17];
+	 	   prvblk[sb18 + 17] = rawout[35];
    	  }
 	}
 
@@ -1514,20 +1452,25 @@ final class LayerIIIDecoder implements FrameDecoder
 	 */
 	private void do_downmix()
 	{
-		for (int sb=0; sb<SSLIMIT; sb++) {
-	   	for (int ss=0; ss<SSLIMIT; ss+=3) {
-	      	lr[0][sb][ss]   = (lr[0][sb][ss]   + lr[1][sb][ss])   * 0.5f;
-	      	lr[0][sb][ss+1] = (lr[0][sb][ss+1] + lr[1][sb][ss+1]) * 0.5f;
-	      	lr[0][sb][ss+2] = (lr[0][sb][ss+2] + lr[1][sb][ss+2]) * 0.5f;
-	      }
-   		}
+		final float[] lr0 = lr[0], lr1 = lr[1];
+		for (int i=0; i<576; i++)
+	      	lr0[i] = (lr0[i] + lr1[i]) * 0.5f;
 	}
 
 	/**
 	 * Fast INV_MDCT.
 	 */
 
-	public void inv_mdct(float[] in, float[] out, int block_type)
+	private static boolean isZeroSubband(float[] in, int in_off)
+	{
+		for (int i = in_off; i < in_off + 18; i++)
+		{
+			if (in[i] != 0.0f) return false;
+		}
+		return true;
+	}
+
+	public void inv_mdct(float[] in, int in_off, float[] out, int block_type)
 	{
 		 float[] win_bt;
 	     int   i;
@@ -1598,27 +1541,27 @@ final class LayerIIIDecoder implements FrameDecoder
 	      		// 12 point IMDCT
 	       		// Begin 12 point IDCT
 	   			// Input aliasing for 12 pt IDCT
-		   		in[15+i] += in[12+i]; in[12+i] += in[9+i]; in[9+i]  +=  in[6+i];
-	   			in[6+i]  += in[3+i];  in[3+i]  += in[0+i];
+		   		in[in_off+15+i] += in[in_off+12+i]; in[in_off+12+i] += in[in_off+9+i]; in[in_off+9+i]  +=  in[in_off+6+i];
+	   			in[in_off+6+i]  += in[in_off+3+i];  in[in_off+3+i]  += in[in_off+0+i];
 
 		   		// Input aliasing on odd indices (for 6 point IDCT)
-	   			in[15+i] += in[9+i];  in[9+i]  += in[3+i];
+	   			in[in_off+15+i] += in[in_off+9+i];  in[in_off+9+i]  += in[in_off+3+i];
 
 		   		// 3 point IDCT on even indices
 		  		float 	pp1, pp2, sum;
-		    	pp2 = in[12+i] * 0.500000000f;
-		   		pp1 = in[ 6+i] * 0.866025403f;
-		   		sum = in[0+i] + pp2;
-		   		tmpf_1 = in[0+i] - in[12+i];
+		    	pp2 = in[in_off+12+i] * 0.500000000f;
+		   		pp1 = in[in_off+6+i] * 0.866025403f;
+		   		sum = in[in_off+0+i] + pp2;
+		   		tmpf_1 = in[in_off+0+i] - in[in_off+12+i];
 		   		tmpf_0 = sum + pp1;
 		   		tmpf_2 = sum - pp1;
 
 	      		// End 3 point IDCT on even indices
 		   		// 3 point IDCT on odd indices (for 6 point IDCT)
-		    	pp2 = in[15+i] * 0.500000000f;
-	   			pp1 = in[ 9+i] * 0.866025403f;
-		   		sum = in[ 3+i] + pp2;
-		   		tmpf_4 = in[3+i] - in[15+i];
+		    	pp2 = in[in_off+15+i] * 0.500000000f;
+	   			pp1 = in[in_off+9+i] * 0.866025403f;
+		   		sum = in[in_off+3+i] + pp2;
+		   		tmpf_4 = in[in_off+3+i] - in[in_off+15+i];
 		   		tmpf_5 = sum + pp1;
 		   		tmpf_3 = sum - pp1;
 	   	    	// End 3 point IDCT on odd indices
@@ -1689,16 +1632,16 @@ final class LayerIIIDecoder implements FrameDecoder
 		 {
 	   		// 36 point IDCT
 	   		// input aliasing for 36 point IDCT
-	   		in[17]+=in[16]; in[16]+=in[15]; in[15]+=in[14]; in[14]+=in[13];
-	   		in[13]+=in[12]; in[12]+=in[11]; in[11]+=in[10]; in[10]+=in[9];
-	   		in[9] +=in[8];  in[8] +=in[7];  in[7] +=in[6];  in[6] +=in[5];
-	   		in[5] +=in[4];  in[4] +=in[3];  in[3] +=in[2];  in[2] +=in[1];
-	   		in[1] +=in[0];
+	   		in[in_off+17]+=in[in_off+16]; in[in_off+16]+=in[in_off+15]; in[in_off+15]+=in[in_off+14]; in[in_off+14]+=in[in_off+13];
+	   		in[in_off+13]+=in[in_off+12]; in[in_off+12]+=in[in_off+11]; in[in_off+11]+=in[in_off+10]; in[in_off+10]+=in[in_off+9];
+	   		in[in_off+9] +=in[in_off+8];  in[in_off+8] +=in[in_off+7];  in[in_off+7] +=in[in_off+6];  in[in_off+6] +=in[in_off+5];
+	   		in[in_off+5] +=in[in_off+4];  in[in_off+4] +=in[in_off+3];  in[in_off+3] +=in[in_off+2];  in[in_off+2] +=in[in_off+1];
+	   		in[in_off+1] +=in[in_off+0];
 
 	   		// 18 point IDCT for odd indices
 	   		// input aliasing for 18 point IDCT
-	   		in[17]+=in[15]; in[15]+=in[13]; in[13]+=in[11]; in[11]+=in[9];
-	   		in[9] +=in[7];  in[7] +=in[5];  in[5] +=in[3];  in[3] +=in[1];
+	   		in[in_off+17]+=in[in_off+15]; in[in_off+15]+=in[in_off+13]; in[in_off+13]+=in[in_off+11]; in[in_off+11]+=in[in_off+9];
+	   		in[in_off+9] +=in[in_off+7];  in[in_off+7] +=in[in_off+5];  in[in_off+5] +=in[in_off+3];  in[in_off+3] +=in[in_off+1];
 
 	   		float tmp0,tmp1,tmp2,tmp3,tmp4,tmp0_,tmp1_,tmp2_,tmp3_;
 	   		float tmp0o,tmp1o,tmp2o,tmp3o,tmp4o,tmp0_o,tmp1_o,tmp2_o,tmp3_o;
@@ -1717,41 +1660,41 @@ final class LayerIIIDecoder implements FrameDecoder
 	   		// 9 point IDCT on even indices
 
 			// 5 points on odd indices (not realy an IDCT)
-	   		float i00 = in[0]+in[0];
-	   		float iip12 = i00 + in[12];
+	   		float i00 = in[in_off+0]+in[in_off+0];
+	   		float iip12 = i00 + in[in_off+12];
 
-	   		tmp0 = iip12 + in[4]*1.8793852415718f  + in[8]*1.532088886238f   + in[16]*0.34729635533386f;
-	   		tmp1 = i00    + in[4]                   - in[8] - in[12] - in[12] - in[16];
-	   		tmp2 = iip12 - in[4]*0.34729635533386f - in[8]*1.8793852415718f  + in[16]*1.532088886238f;
-	   		tmp3 = iip12 - in[4]*1.532088886238f   + in[8]*0.34729635533386f - in[16]*1.8793852415718f;
-	   		tmp4 = in[0] - in[4]                   + in[8] - in[12]          + in[16];
+	   		tmp0 = iip12 + in[in_off+4]*1.8793852415718f  + in[in_off+8]*1.532088886238f   + in[in_off+16]*0.34729635533386f;
+	   		tmp1 = i00    + in[in_off+4]                   - in[in_off+8] - in[in_off+12] - in[in_off+12] - in[in_off+16];
+	   		tmp2 = iip12 - in[in_off+4]*0.34729635533386f - in[in_off+8]*1.8793852415718f  + in[in_off+16]*1.532088886238f;
+	   		tmp3 = iip12 - in[in_off+4]*1.532088886238f   + in[in_off+8]*0.34729635533386f - in[in_off+16]*1.8793852415718f;
+	   		tmp4 = in[in_off+0] - in[in_off+4]                   + in[in_off+8] - in[in_off+12]          + in[in_off+16];
 
 			// 4 points on even indices
-	   		float i66_ = in[6]*1.732050808f;		// Sqrt[3]
+	   		float i66_ = in[in_off+6]*1.732050808f;		// Sqrt[3]
 
-	   		tmp0_ = in[2]*1.9696155060244f  + i66_ + in[10]*1.2855752193731f  + in[14]*0.68404028665134f;
-	   		tmp1_ = (in[2]                        - in[10]                   - in[14])*1.732050808f;
-	   		tmp2_ = in[2]*1.2855752193731f  - i66_ - in[10]*0.68404028665134f + in[14]*1.9696155060244f;
-	   		tmp3_ = in[2]*0.68404028665134f - i66_ + in[10]*1.9696155060244f  - in[14]*1.2855752193731f;
+	   		tmp0_ = in[in_off+2]*1.9696155060244f  + i66_ + in[in_off+10]*1.2855752193731f  + in[in_off+14]*0.68404028665134f;
+	   		tmp1_ = (in[in_off+2]                        - in[in_off+10]                   - in[in_off+14])*1.732050808f;
+	   		tmp2_ = in[in_off+2]*1.2855752193731f  - i66_ - in[in_off+10]*0.68404028665134f + in[in_off+14]*1.9696155060244f;
+	   		tmp3_ = in[in_off+2]*0.68404028665134f - i66_ + in[in_off+10]*1.9696155060244f  - in[in_off+14]*1.2855752193731f;
 
 	   		// 9 point IDCT on odd indices
 			// 5 points on odd indices (not realy an IDCT)
-	   		float i0 = in[0+1]+in[0+1];
-	   		float i0p12 = i0 + in[12+1];
+	   		float i0 = in[in_off+0+1]+in[in_off+0+1];
+	   		float i0p12 = i0 + in[in_off+12+1];
 
-	   		tmp0o = i0p12   + in[4+1]*1.8793852415718f  + in[8+1]*1.532088886238f       + in[16+1]*0.34729635533386f;
-	   		tmp1o = i0      + in[4+1]                   - in[8+1] - in[12+1] - in[12+1] - in[16+1];
-	   		tmp2o = i0p12   - in[4+1]*0.34729635533386f - in[8+1]*1.8793852415718f      + in[16+1]*1.532088886238f;
-	   		tmp3o = i0p12   - in[4+1]*1.532088886238f   + in[8+1]*0.34729635533386f     - in[16+1]*1.8793852415718f;
-	   		tmp4o = (in[0+1] - in[4+1]                   + in[8+1] - in[12+1]            + in[16+1])*0.707106781f; // Twiddled
+	   		tmp0o = i0p12   + in[in_off+4+1]*1.8793852415718f  + in[in_off+8+1]*1.532088886238f       + in[in_off+16+1]*0.34729635533386f;
+	   		tmp1o = i0      + in[in_off+4+1]                   - in[in_off+8+1] - in[in_off+12+1] - in[in_off+12+1] - in[in_off+16+1];
+	   		tmp2o = i0p12   - in[in_off+4+1]*0.34729635533386f - in[in_off+8+1]*1.8793852415718f      + in[in_off+16+1]*1.532088886238f;
+	   		tmp3o = i0p12   - in[in_off+4+1]*1.532088886238f   + in[in_off+8+1]*0.34729635533386f     - in[in_off+16+1]*1.8793852415718f;
+	   		tmp4o = (in[in_off+0+1] - in[in_off+4+1]                   + in[in_off+8+1] - in[in_off+12+1]            + in[in_off+16+1])*0.707106781f; // Twiddled
 
 			// 4 points on even indices
-	   		float i6_ = in[6+1]*1.732050808f;		// Sqrt[3]
+	   		float i6_ = in[in_off+6+1]*1.732050808f;		// Sqrt[3]
 
-	   		tmp0_o = in[2+1]*1.9696155060244f  + i6_ + in[10+1]*1.2855752193731f  + in[14+1]*0.68404028665134f;
-	   		tmp1_o = (in[2+1]                        - in[10+1]                   - in[14+1])*1.732050808f;
-	   		tmp2_o = in[2+1]*1.2855752193731f  - i6_ - in[10+1]*0.68404028665134f + in[14+1]*1.9696155060244f;
-	   		tmp3_o = in[2+1]*0.68404028665134f - i6_ + in[10+1]*1.9696155060244f  - in[14+1]*1.2855752193731f;
+	   		tmp0_o = in[in_off+2+1]*1.9696155060244f  + i6_ + in[in_off+10+1]*1.2855752193731f  + in[in_off+14+1]*0.68404028665134f;
+	   		tmp1_o = (in[in_off+2+1]                        - in[in_off+10+1]                   - in[in_off+14+1])*1.732050808f;
+	   		tmp2_o = in[in_off+2+1]*1.2855752193731f  - i6_ - in[in_off+10+1]*0.68404028665134f + in[in_off+14+1]*1.9696155060244f;
+	   		tmp3_o = in[in_off+2+1]*0.68404028665134f - i6_ + in[in_off+10+1]*1.9696155060244f  - in[in_off+14+1]*1.2855752193731f;
 
 	   		// Twiddle factors on odd indices
 	   		// and
@@ -1959,20 +1902,40 @@ final class LayerIIIDecoder implements FrameDecoder
 	};
 
 
+	/**
+	 * x^(4/3) for every quantized value the bitstream can carry: the
+	 * largest big_values entry is 15 plus 13 linbits.
+	 */
 	public static final float t_43[] = create_t_43();
 
 	static private float[] create_t_43()
 	{
-		float[] t43 = new float[8192];
+		float[] t43 = new float[15 + 8192];
 		final double d43 = (4.0/3.0);
 
-		for (int i=0; i<8192; i++)
+		for (int i=0; i<t43.length; i++)
 		{
 			t43[i] = (float)Math.pow(i, d43);
 		}
 		return t43;
 	}
 
+	/**
+	 * 2^(0.25 * (global_gain - 210)) for every 8-bit global_gain.
+	 */
+	static final float global_gain_pow[] = create_global_gain_pow();
+
+	static private float[] create_global_gain_pow()
+	{
+		float[] pow = new float[256];
+
+		for (int i=0; i<pow.length; i++)
+		{
+			pow[i] = (float)Math.pow(2.0 , (0.25 * (i - 210.0)));
+		}
+		return pow;
+	}
+
 	public static final float io[][] =
 	{
 	 { 1.0000000000E+00f, 8.4089641526E-01f, 7.0710678119E-01f, 5.9460355751E-01f,
@@ -2003,83 +1966,6 @@ final class LayerIIIDecoder implements FrameDecoder
 	 0.0f, 0.26794919f, 0.57735027f, 1.0f
 	};
 
-	// REVIEW: in java, the array lookup may well be slower than
-	// the actual calculation
-	// 576 / 18
-/*
-	private static final int ss_div[] =
-	{
-		 0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,  0,
-		 1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,  1,
-		 2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,  2,
-		 3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,  3,
-		 4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,  4,
-		 5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,  5,
-		 6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,  6,
-		 7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,  7,
-		 8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,  8,
-		 9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,  9,
-		10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10, 10,
-		11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11, 11,
-		12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12, 12,
-		13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13, 13,
-		14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14, 14,
-		15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15, 15,
-		16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16, 16,
-		17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17, 17,
-		18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18, 18,
-		19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19, 19,
-		20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20, 20,
-		21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21, 21,
-		22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22, 22,
-		23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23, 23,
-		24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24, 24,
-		25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25, 25,
-		26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26, 26,
-		27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27, 27,
-		28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28,
-		29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29, 29,
-		30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30,
-		31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31, 31
-	};
-
-	// 576 % 18
-	private static final int ss_mod[] =
-	{
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17,
-		 0,  1,  2,  3,  4,  5,  6,  7,  8,  9, 10, 11, 12, 13, 14, 15, 16, 17
-	};
-*/
 	private static /*final*/ int reorder_table[][]/* = loadReorderTable()*/;	// SZD: will be generated on demand
 
 	/**
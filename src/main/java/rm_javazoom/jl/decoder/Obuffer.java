@@ -51,9 +51,18 @@ public abstract class Obuffer
    * Accepts 32 new PCM samples. 
    */
 	public void appendSamples(int channel, float[] f)
+	{
+		appendSamples(channel, f, 32);
+	}
+
+  /**
+   * Accepts the first <code>count</code> of new PCM samples, fewer
+   * than 32 when the synthesis filter runs below full quality.
+   */
+	public void appendSamples(int channel, float[] f, int count)
 	{
 	    short s;
-	    for (int i=0; i<32;)
+	    for (int i=0; i<count;)
 	    {
 		  	s = clip(f[i++]);
 			append(channel, s); 
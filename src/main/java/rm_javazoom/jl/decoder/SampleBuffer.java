@@ -81,12 +81,17 @@ public class SampleBuffer extends Obuffer
   }
   
 	public void appendSamples(int channel, float[] f)
+	{
+		appendSamples(channel, f, 32);
+	}
+
+	public void appendSamples(int channel, float[] f, int count)
 	{
 	    int pos = bufferp[channel];
 		
 		short s;
 		float fs;
-	    for (int i=0; i<32;)
+	    for (int i=0; i<count;)
 	    {
 		  	fs = f[i++];
 			fs = (fs>32767.0f ? 32767.0f 
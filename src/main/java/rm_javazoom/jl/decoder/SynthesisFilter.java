@@ -47,21 +47,19 @@ final class SynthesisFilter
   private int				 channel;
   private float 			 scalefactor;
   private float[]			 eq;
+  private VectorSynthesis	 vector_synthesis;	// null unless USE_VECTOR_API
+  private float[][]			 window;			// d_rotated for the quality
 	
 	/**
-	 * Quality value for controlling CPU usage/quality tradeoff. 
+	 * Quality value for controlling CPU usage/quality tradeoff. Only
+	 * the lowest 32/quality subbands are synthesized, and every
+	 * quality-th sample is output, at 1/quality of the sample rate.
 	 */
-	/*
 	private int				quality;
 	
-	private int				v_inc;
-	
-	
-	
 	public static final int	HIGH_QUALITY = 1;
 	public static final int MEDIUM_QUALITY = 2;
 	public static final int LOW_QUALITY = 4;
-	*/
 	
   /**
    * Contructor.
@@ -82,7 +80,7 @@ final class SynthesisFilter
      channel = channelnumber;
 	 scalefactor = factor;
 	 setEQ(eq);	 
-	 //setQuality(HIGH_QUALITY);
+	 setQuality(HIGH_QUALITY);
 	 
      reset();
   }
@@ -103,27 +101,41 @@ final class SynthesisFilter
 	  
   }
   
-	/*
-	private void setQuality(int quality0)
+	/**
+	 * Sets the quality, one of HIGH_QUALITY, MEDIUM_QUALITY or
+	 * LOW_QUALITY. Below HIGH_QUALITY fewer than 32 samples are
+	 * output per call of calculate_pcm_samples(). Set it before
+	 * decoding, or reset the filter afterwards.
+	 */
+	public void setQuality(int quality0)
 	{
 	  	switch (quality0)
 	  	{		
 		case HIGH_QUALITY:
 		case MEDIUM_QUALITY:
 		case LOW_QUALITY:						  
-			v_inc = 16 * quality0;			
-			quality = quality0;
 			break;	
 		default :
 			throw new IllegalArgumentException("Unknown quality value");
 	  	}				
+		if (quality0==quality)
+			return;
+		quality = quality0;
+		
+		// the vector path needs a whole number of vectors per step
+		vector_synthesis = null;
+		window = null;
+		if (USE_VECTOR_API && VectorSynthesis.isSupported(32 / quality))
+		{
+			window = RotatedWindows.BY_QUALITY[quality];
+			vector_synthesis = new VectorSynthesis(32 / quality);
+		}
 	}
 	
 	public int getQuality()
 	{
 		return quality;	
 	}
-	*/
   
   /**
    * Reset the synthesis filter.
@@ -145,6 +157,9 @@ final class SynthesisFilter
 	 for (int p2=0;p2<32;p2++) 
 		 samples[p2] = 0.0f;
 
+     if (vector_synthesis!=null)
+		 vector_synthesis.reset();
+
      actual_v = v1;
      actual_write_pos = 15;
   }
@@ -1450,10 +1465,53 @@ final class SynthesisFilter
 			} // for
 		}
 	 	 	 	 
+  /**
+   * Computes every quality-th of the 32 samples into the start of
+   * _tmpOut. The subbands above 32/quality are zero, so what's left
+   * below the new Nyquist frequency doesn't alias.
+   */
+  private void compute_pcm_samples_decimated()
+  {
+	final float[] tmpOut = _tmpOut;
+	final int inc = quality;
+
+	if (vector_synthesis!=null)
+	{
+		vector_synthesis.compute_pcm_samples(v1, v2, actual_v, actual_write_pos,
+				window[actual_write_pos], scalefactor, tmpOut);
+		return;
+	}
+
+	final float[] vp = actual_v;
+	final int pos = actual_write_pos;
+	for (int i=0, n=0; i<32; i+=inc, n++)
+	{
+		final float[] dp = d16[i];
+		final int dvp = i << 4;
+		float pcm_sample = 0.0f;
+		for (int j=0; j<16; j++)
+			pcm_sample += vp[dvp + ((pos - j) & 15)] * dp[j];
+		tmpOut[n] = pcm_sample * scalefactor;
+	}
+  }
+
 private void compute_pcm_samples(Obuffer buffer)
 {
 	
-	switch (actual_write_pos)
+	if (quality!=HIGH_QUALITY)
+	{
+		compute_pcm_samples_decimated();
+		if (buffer!=null)
+			buffer.appendSamples(channel, _tmpOut, 32 / quality);
+		return;
+	}
+	
+	if (vector_synthesis!=null)
+	{
+		vector_synthesis.compute_pcm_samples(v1, v2, actual_v, actual_write_pos,
+				window[actual_write_pos], scalefactor, _tmpOut);
+	}
+	else switch (actual_write_pos)
 	{
 	case 0: 
 		compute_pcm_samples0(buffer);
@@ -1509,35 +1567,6 @@ private void compute_pcm_samples(Obuffer buffer)
 	{		
 		buffer.appendSamples(channel, _tmpOut);
 	}
-	 
-/*
-	 // MDM: I was considering putting in quality control for
-	 // low-spec CPUs, but the performance gain (about 10-15%) 
-	 // did not justify the considerable drop in audio quality.
-		switch (inc)
-		{
-		case 16:		 
-		    buffer.appendSamples(channel, tmpOut);
-		    break;
-		case 32:
-			for (int i=0; i<16; i++)
-			{
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]); 
-			}
-			break;			
-		case 64:
-			for (int i=0; i<8; i++)
-			{
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]);
-				buffer.append(channel, (short)tmpOut[i]); 
-			}
-			break;			
-	
-		}
-*/	 
   }
 
   /**
@@ -1546,6 +1575,11 @@ private void compute_pcm_samples(Obuffer buffer)
 	
   public void calculate_pcm_samples(Obuffer buffer)
   {
+	if (quality!=HIGH_QUALITY)
+	{
+		for (int p=32 / quality; p<32; p++)
+			samples[p] = 0.0f;
+	}
 	compute_new_v();	
 	compute_pcm_samples(buffer);
     
@@ -1561,6 +1595,24 @@ private void compute_pcm_samples(Obuffer buffer)
 	//for (int p=0;p<32;p++) 
 		//samples[p] = 0.0f;
   }
+
+  private float[] _downmix = new float[32];
+
+  /**
+   * Calculate PCM samples of the average of this filter's and
+   * another filter's subband samples, for mono output of a stereo
+   * stream. The subband samples of both filters are left as they were.
+   */
+  public void calculate_pcm_samples_downmix(SynthesisFilter other, Obuffer buffer)
+  {
+	final float[] left = samples, right = other.samples, mix = _downmix;
+	for (int p=0;p<32;p++)
+		mix[p] = (left[p] + right[p]) * 0.5f;
+
+	samples = mix;
+	calculate_pcm_samples(buffer);
+	samples = left;
+  }
   
   
   private static final double MY_PI = 3.14159265358979323846;
@@ -1608,6 +1660,74 @@ private void compute_pcm_samples(Obuffer buffer)
    * with constant offset. 
    **/
   private static float d16[][] = null;	
+
+  /**
+   * d16 rotated for each of the 16 write positions and transposed
+   * to match the layout of VectorSynthesis, by quality. A holder so
+   * the windows are only built for the Vector API path, and the class
+   * initialization publishes them safely to every decoder thread.
+   */
+  private static final class RotatedWindows
+  {
+	static final float[][][] BY_QUALITY = new float[LOW_QUALITY + 1][][];
+
+	static
+	{
+		float[][] d16 = splitArray(load_d(), 16);
+		BY_QUALITY[HIGH_QUALITY] = rotateWindow(d16, HIGH_QUALITY);
+		BY_QUALITY[MEDIUM_QUALITY] = rotateWindow(d16, MEDIUM_QUALITY);
+		BY_QUALITY[LOW_QUALITY] = rotateWindow(d16, LOW_QUALITY);
+	}
+  }
+
+  /**
+   * Set the system property <code>rm_javazoom.jl.decoder.scalarSynthesis</code>
+   * to force the scalar windowing even when the Vector API is available.
+   */
+  static final boolean USE_VECTOR_API = vectorApiAvailable();
+
+  /**
+   * The Vector API is only used when the game was started with
+   * <code>--add-modules jdk.incubator.vector</code> and the CPU has
+   * vectors of at least 4 floats.
+   */
+	static private boolean vectorApiAvailable()
+	{
+		if (Boolean.getBoolean("rm_javazoom.jl.decoder.scalarSynthesis"))
+			return false;
+		if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+			return false;
+		try
+		{
+			return VectorSynthesis.isSupported(32);
+		}
+		catch (LinkageError ex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Reorders the window for every write position w so that
+	 * <code>rotated[w][n*j + i] = d16[i*inc][(w - j) &amp; 15]</code>,
+	 * for the n = 32/inc samples output at a quality of inc.
+	 */
+	static private float[][] rotateWindow(final float[][] d16, final int inc)
+	{
+		final int n = 32 / inc;
+		float[][] rotated = new float[16][16 * n];
+		for (int w=0; w<16; w++)
+		{
+			for (int i=0; i<n; i++)
+			{
+				for (int j=0; j<16; j++)
+				{
+					rotated[w][n*j + i] = d16[i*inc][(w - j) & 15];
+				}
+			}
+		}
+		return rotated;
+	}
   
   /**
    * Loads the data for the d[] from the resource SFd.ser. 
@@ -60,6 +60,19 @@ final class huffcodetab
   private int[]   			 hlen=null;             /* pointer to array[xlen][ylen]		      */
   private int[][]			 val=null;		        /* decoder tree		    	              */
   private int 				 treelen;	            /* length of decoder tree  	              */
+  private int[]				 lookup=null;	        /* multi-bit lookup tables built from val */
+  private int				 lookupbits;	        /* number of bits indexing the root table */
+
+  /**
+   * Number of bits peeked for the first lookup. Most codewords are
+   * shorter than this and resolve in a single table hit.
+   */
+  private static final int	 ROOT_LOOKUP_BITS = 9;
+
+  /**
+   * Number of bits peeked for each sub-table lookup of a longer codeword.
+   */
+  private static final int	 SUB_LOOKUP_BITS = 5;
 
   private static int ValTab0[][] = {
 	{0,0}	// dummy
@@ -439,6 +452,91 @@ final class huffcodetab
     treelen = TREELEN;
   }
 
+  /**
+   * Steps one bit down the decoder tree, exactly as the bit-serial
+   * decoder walks it.
+   */
+  private static int walk(int[][] val, int point, int bit)
+  {
+	if (bit != 0)
+	{
+	   while (val[point][1] >= MXOFF) point += val[point][1];
+	   point += val[point][1];
+	}
+	else
+	{
+	   while (val[point][0] >= MXOFF) point += val[point][0];
+	   point += val[point][0];
+	}
+	return point;
+  }
+
+  /**
+   * Returns the number of bits needed to reach the deepest leaf below point.
+   */
+  private static int depth(int[][] val, int point)
+  {
+	if (val[point][0] == 0) return 0;
+	return 1 + Math.max(depth(val, walk(val, point, 0)), depth(val, walk(val, point, 1)));
+  }
+
+  /**
+   * Builds the lookup tables for the decoder tree. The root table is
+   * indexed by the next <code>lookupbits</code> bits of the reserve. An entry
+   * is either a leaf, stored as <code>(length << 8) | value</code>, or a
+   * link to a sub-table for a longer codeword, stored as
+   * <code>-((offset << 4) | bits)</code>.
+   */
+  private void buildLookup()
+  {
+	lookupbits = Math.min(ROOT_LOOKUP_BITS, depth(val, 0));
+	int[] tables = new int[1 << lookupbits];
+	int[] size = { tables.length };
+	lookup = fillLookup(val, 0, lookupbits, 0, tables, size);
+  }
+
+  private static int[] fillLookup(int[][] val, int root, int bits, int offset, int[] tables, int[] size)
+  {
+	for (int code = 0; code < (1 << bits); code++)
+	{
+	   int point = root;
+	   int len = 0;
+	   while (len < bits && val[point][0] != 0)
+	   {
+		  point = walk(val, point, (code >>> (bits - 1 - len)) & 1);
+		  len++;
+	   }
+
+	   if (val[point][0] == 0)
+	   {
+		  tables[offset + code] = (len << 8) | val[point][1];
+	   }
+	   else
+	   {
+		  // codeword continues past this table, chain a sub-table for the rest of it
+		  int subbits = Math.min(SUB_LOOKUP_BITS, depth(val, point));
+		  int suboffset = size[0];
+		  size[0] += 1 << subbits;
+		  if (size[0] > tables.length)
+		  {
+			 int[] grown = new int[Math.max(size[0], tables.length * 2)];
+			 System.arraycopy(tables, 0, grown, 0, tables.length);
+			 tables = grown;
+		  }
+		  tables[offset + code] = -((suboffset << 4) | subbits);
+		  tables = fillLookup(val, point, subbits, suboffset, tables, size);
+	   }
+	}
+
+	if (offset == 0 && tables.length != size[0])
+	{
+	   int[] trimmed = new int[size[0]];
+	   System.arraycopy(tables, 0, trimmed, 0, size[0]);
+	   tables = trimmed;
+	}
+	return tables;
+  }
+
   
   
   /**
@@ -452,12 +550,7 @@ final class huffcodetab
 	// 0..31 Huffman code table 0..31
 	// 32,33 count1-tables
 
-	int dmask = 1 << ((4 * 8) - 1);
-	int hs    = 4 * 8;
-  	int level;
-  	int point = 0;
   	int error = 1;
-  	level = dmask;
 
   	if (h.val == null) return 2;
 
@@ -470,50 +563,24 @@ final class huffcodetab
 
      /* Lookup in Huffman table. */
 
-	 /*int bitsAvailable = 0;	 
-	 int bitIndex = 0;
-	 
-	 int bits[] = bitbuf;*/
-   	 do 
+	 // Peek a block of bits and resolve as much of the codeword as the
+	 // table covers, following sub-table links for longer codes. Only
+	 // the bits of the codeword itself are consumed.
+	 int[] lookup = h.lookup;
+	 int bits = h.lookupbits;
+	 int entry = lookup[br.hpeekbits(bits)];
+	 while (entry < 0)
 	 {
-	    if (h.val[point][0]==0)
-		{   /*end of tree*/
-		   x[0] = h.val[point][1] >>> 4;
-		   y[0] = h.val[point][1] & 0xf;
-		   error = 0;
-		   break;
- 	    }
-	    
-		// hget1bit() is called thousands of times, and so needs to be
-		// ultra fast. 
-		/*
-		if (bitIndex==bitsAvailable)
-		{
-			bitsAvailable = br.readBits(bits, 32);			
-			bitIndex = 0;
-		}
-		*/
-		//if (bits[bitIndex++]!=0)
-		if (br.hget1bit()!=0)
-		{
-		   while (h.val[point][1] >= MXOFF) point += h.val[point][1];
-		   point += h.val[point][1];
-	    }
-	    else
-		{
-		   while (h.val[point][0] >= MXOFF) point += h.val[point][0];
-		   point += h.val[point][0];
-	    }
-	    level >>>= 1;
-		// MDM: ht[0] is always 0;
-	 } while ((level !=0 )  || (point < 0 /*ht[0].treelen*/) );
-		
-		// put back any bits not consumed
-	/*	
-	 int unread = (bitsAvailable-bitIndex);
-		if (unread>0)
-			br.rewindNbits(unread);
-	 */
+		br.hskipbits(bits);
+		entry = -entry;
+		bits = entry & 0xf;
+		entry = lookup[(entry >>> 4) + br.hpeekbits(bits)];
+	 }
+	 br.hskipbits(entry >>> 8);
+	 x[0] = (entry >>> 4) & 0xf;
+	 y[0] = entry & 0xf;
+	 error = 0;
+
   	  /* Process sign encodings for quadruples tables. */
       // System.out.println(h.tablename);
   	  if (h.tablename0 == '3' && (h.tablename1 == '2' || h.tablename1 == '3'))
@@ -596,5 +663,17 @@ final class huffcodetab
     ht[31] = new huffcodetab("31 ",16,16,13,8191,24,null,null,ValTab24,512);
     ht[32] = new huffcodetab("32 ",1,16,0,0,-1,null,null,ValTab32,31);
     ht[33] = new huffcodetab("33 ",1,16,0,0,-1,null,null,ValTab33,31);
+
+	// tables with linbits share the decoder tree of the table they reference
+	for (int i = 0; i < HTN; i++)
+	{
+	   if (ht[i].treelen == 0) continue;
+	   if (ht[i].ref >= 0)
+	   {
+		  ht[i].lookup = ht[ht[i].ref].lookup;
+		  ht[i].lookupbits = ht[ht[i].ref].lookupbits;
+	   }
+	   else ht[i].buildLookup();
+	}
   }
 }
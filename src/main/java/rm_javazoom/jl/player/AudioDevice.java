@@ -76,6 +76,17 @@ public interface AudioDevice
 	 * by the audio device. 
 	 */
 	public void write(short[] samples, int offs, int len) throws JavaLayerException;
+	
+	/**
+	 * Writes a number of float samples to this <code>AudioDevice</code>.
+	 * 
+	 * @param samples	The array of samples to write, on the 16-bit
+	 *					scale but not yet clipped, as kept by
+	 *					<code>FloatSampleBuffer</code>.
+	 * @param offs		The offset of the first sample.
+	 * @param len		The number of samples to write. 
+	 */
+	public void write(float[] samples, int offs, int len) throws JavaLayerException;
 		
 	
 	/**
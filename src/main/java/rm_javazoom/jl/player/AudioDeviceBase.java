@@ -21,6 +21,7 @@
 package rm_javazoom.jl.player;
 
 import rm_javazoom.jl.decoder.Decoder;
+import rm_javazoom.jl.decoder.FloatSampleBuffer;
 import rm_javazoom.jl.decoder.JavaLayerException;
 
 /**
@@ -46,6 +47,9 @@ public abstract class AudioDeviceBase implements AudioDevice
 	
 	private Decoder			decoder = null;
 	
+	// shared by the DecodeAheadAudioDevices writing to this device, see PcmMixer.of()
+	PcmMixer				outputMixer;
+	
 	/**
 	 * Opens this audio device. 
 	 * 
@@ -143,6 +147,42 @@ public abstract class AudioDeviceBase implements AudioDevice
 	{
 	}
 	
+	/**
+	 * Writes float audio data to this audio device. 
+	 * If the audio device is not open, this method does nothing. 
+	 */
+	public void write(float[] samples, int offs, int len) 
+		throws JavaLayerException
+	{
+		if (isOpen())
+		{
+			writeImpl(samples, offs, len);
+		}
+	}
+	
+	private short[] shortBuf = new short[0];
+	
+	/**
+	 * Template method to provide the implementation for writing
+	 * float samples. By default the samples are clipped to 16 bits
+	 * and passed on to <code>writeImpl(short[], int, int)</code>,
+	 * devices that can take floats more directly should override this.
+	 */
+	protected void writeImpl(float[] samples, int offs, int len) 
+		throws JavaLayerException
+	{
+		if (shortBuf.length < len)
+		{
+			shortBuf = new short[len];
+		}
+		final short[] s = shortBuf;
+		for (int i=0; i<len; i++)
+		{
+			s[i] = FloatSampleBuffer.clip(samples[offs+i]);
+		}
+		writeImpl(s, 0, len);
+	}
+	
 	/**
 	 * Waits for any buffered audio samples to be played by the
 	 * audio device. This method should only be called prior 
@@ -0,0 +1,476 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import rm_javazoom.jl.decoder.Decoder;
+import rm_javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * The <code>DecodeAheadAudioDevice</code> lets the decoder run ahead of
+ * playback. Samples written to it go into a <code>PcmRingBuffer</code>
+ * and a separate output thread drains the ring into the wrapped device,
+ * so a stall while decoding (file I/O, a GC pause on the decoding
+ * thread) is covered by the buffered lead instead of being heard.
+ * <p>
+ * The decoder should keep writing until <code>getMillisUntilRefill()</code>
+ * is above zero, which happens once the lead reaches the high watermark,
+ * and can then do something else until the buffer has drained down to the
+ * low watermark. Writes never block while there is room in the ring.
+ * <p>
+ * The output thread waits for the low watermark before it starts, and
+ * again after an underrun, so a slow decoder gives one longer gap instead
+ * of constant stutter.
+ * <p>
+ * Every <code>DecodeAheadAudioDevice</code> on the same device shares one
+ * output thread, which waits between songs. A device can also take over
+ * from another one, crossfading into it. Both are written to for the length
+ * of the crossfade, then <code>isFadedOut()</code> of the old one turns
+ * true and it can be closed.
+ * <p>
+ * With <code>setOutputFormat()</code> every song is resampled to one
+ * rate and channel count before it is buffered, then songs of any format
+ * can follow each other on the same device.
+ */
+public class DecodeAheadAudioDevice extends AudioDeviceBase
+{
+	private PcmMixer			mixer;
+	private final int			crossfadeMillis;
+	private final int			leadMillis;
+	private final int			lowWatermarkMillis;
+
+	// the format everything is converted to, 0 for that of the decoder
+	private int					outputFrequency = 0;
+	private int					outputChannels = 0;
+	private int					resampleQuality = Resampler.MEDIUM_QUALITY;
+
+	// the format of what's written, 0 for that of the decoder
+	private int					inputFrequency = 0;
+	private int					inputChannels = 0;
+	private int					inputBlockSize = 0;
+
+	// gets a copy of what's written, owned by the producer
+	private PcmCache.Writer		cacheWriter;
+
+	private PcmRingBuffer		ring;
+	private Resampler			resampler;			// null if nothing needs converting
+	private int					samplesPerSecond;
+	private int					highWatermark;		// in samples
+	private int					lowWatermark;		// in samples
+
+	private volatile Thread		producer;
+	private volatile boolean	closed = false;
+	private volatile boolean	ended = false;		// end() or flush() was called, play out what's left
+	private volatile boolean	drained = false;
+	private volatile boolean	fadedOut = false;
+
+	// owned by the producer
+	private boolean				refilling = true;
+	private float[]				floatBuf = new float[0];
+
+	// owned by the output thread
+	private boolean				prebuffering = true;
+
+	private volatile long		underruns = 0;
+
+	/**
+	 * @param device				The device the samples are finally written to.
+	 * @param leadMillis			How far the decoder may run ahead of playback,
+	 *								the high watermark.
+	 * @param lowWatermarkMillis	How far the lead may drop before the decoder
+	 *								should continue, and how much must be buffered
+	 *								before output (re)starts.
+	 */
+	public DecodeAheadAudioDevice(AudioDevice device, int leadMillis, int lowWatermarkMillis)
+	{
+		this(PcmMixer.of(device), 0, leadMillis, lowWatermarkMillis);
+	}
+
+	/**
+	 * Creates a device that takes over from <code>previous</code> once its
+	 * first samples are buffered, crossfading from it with equal power.
+	 * Both are mixed on the device of <code>previous</code>. If the two
+	 * don't have the same output format they can't be mixed, then the
+	 * first write throws. That can't happen when both convert to the
+	 * same format with <code>setOutputFormat()</code>.
+	 *
+	 * @param crossfadeMillis	Length of the crossfade.
+	 */
+	public DecodeAheadAudioDevice(DecodeAheadAudioDevice previous, int crossfadeMillis, int leadMillis, int lowWatermarkMillis)
+	{
+		this(previous.mixer, crossfadeMillis, leadMillis, lowWatermarkMillis);
+	}
+
+	private DecodeAheadAudioDevice(PcmMixer mixer, int crossfadeMillis, int leadMillis, int lowWatermarkMillis)
+	{
+		this.mixer = mixer;
+		this.crossfadeMillis = Math.max(0, crossfadeMillis);
+		this.leadMillis = Math.max(1, leadMillis);
+		this.lowWatermarkMillis = Math.max(0, Math.min(lowWatermarkMillis, this.leadMillis));
+	}
+
+	/**
+	 * The device this one writes to.
+	 */
+	public AudioDevice getDevice()
+	{
+		return mixer.getDevice();
+	}
+
+	/**
+	 * Converts the output of the decoder to <code>frequency</code> and
+	 * <code>channels</code>, so devices that take over from each other
+	 * always have the same format and can be mixed. Must be called
+	 * before the device is opened.
+	 *
+	 * @param quality	Taps per phase of the resampler, see the quality
+	 *					constants of <code>Resampler</code>.
+	 */
+	public void setOutputFormat(int frequency, int channels, int quality)
+	{
+		outputFrequency = frequency;
+		outputChannels = channels;
+		resampleQuality = quality;
+	}
+
+	/**
+	 * Sets the format of what is written, for samples that don't come
+	 * from the decoder the device is opened with, e.g. those of a
+	 * <code>PcmCache</code>. Must be called before the first write.
+	 *
+	 * @param blockSize	The most samples written at a time.
+	 */
+	public void setInputFormat(int frequency, int channels, int blockSize)
+	{
+		inputFrequency = frequency;
+		inputChannels = channels;
+		inputBlockSize = blockSize;
+	}
+
+	/**
+	 * Records what is written, as it was written, to be played from the
+	 * cache next time. The recording is added at <code>end()</code>, and
+	 * dropped if the device is closed first or another writer replaces
+	 * it, e.g. <code>null</code> after the decoder failed part way.
+	 */
+	public void setCacheWriter(PcmCache.Writer writer)
+	{
+		if (cacheWriter!=null)
+			cacheWriter.abort();
+		cacheWriter = writer;
+	}
+
+	public int getLeadMillis()
+	{
+		return leadMillis;
+	}
+
+	public int getLowWatermarkMillis()
+	{
+		return lowWatermarkMillis;
+	}
+
+	/**
+	 * Number of times the wrapped device ran dry because the
+	 * decoder had not kept up.
+	 */
+	public long getUnderruns()
+	{
+		return underruns;
+	}
+
+	/**
+	 * True once a device that took over from this one has finished its
+	 * crossfade, nothing more of this one is played.
+	 */
+	public boolean isFadedOut()
+	{
+		return fadedOut;
+	}
+
+	/**
+	 * Marks the end of the samples without waiting for them to play,
+	 * unlike <code>flush()</code>. <code>isPlayedOut()</code> turns true
+	 * once the device has played everything.
+	 */
+	public void end()
+	{
+		if (cacheWriter!=null)
+		{
+			cacheWriter.commit();
+			cacheWriter = null;
+		}
+		if (ring!=null && !ended)
+		{
+			if (resampler!=null)
+			{
+				// the last samples are still in the filter
+				writeRing(resampler.getBuffer(), 0, resampler.drain());
+			}
+			drained = false;
+			ended = true;
+			mixer.wakeOutput();
+		}
+	}
+
+	/**
+	 * True once everything up to <code>end()</code> has been played, or
+	 * the device has stopped.
+	 */
+	public boolean isPlayedOut()
+	{
+		return ring==null || drained || mixer.isStopped();
+	}
+
+	/**
+	 * Milliseconds of audio decoded but not yet handed to the device.
+	 */
+	public int getBufferedMillis()
+	{
+		PcmRingBuffer r = ring;
+		if (r==null || samplesPerSecond==0)
+			return 0;
+		return (int)(r.size() * 1000L / samplesPerSecond);
+	}
+
+	/**
+	 * Called by the decoding thread. Returns 0 while the lead is being
+	 * built up to the high watermark, otherwise roughly how long it may
+	 * wait before the lead drops to the low watermark.
+	 */
+	public int getMillisUntilRefill()
+	{
+		if (ring==null)
+			return 0;
+
+		int size = ring.size();
+		if (refilling)
+		{
+			if (size < highWatermark)
+				return 0;
+			refilling = false;
+		}
+
+		if (size <= lowWatermark)
+		{
+			refilling = true;
+			return 0;
+		}
+		return Math.max(1, (int)((size - lowWatermark) * 1000L / samplesPerSecond));
+	}
+
+	protected void openImpl() throws JavaLayerException
+	{
+		mixer.attach(getDecoder(), outputFrequency, outputChannels);
+	}
+
+	protected void writeImpl(short[] samples, int offs, int len)
+		throws JavaLayerException
+	{
+		if (floatBuf.length < len)
+		{
+			floatBuf = new float[len];
+		}
+		for (int i=0; i<len; i++)
+		{
+			floatBuf[i] = samples[offs+i];
+		}
+		writeImpl(floatBuf, 0, len);
+	}
+
+	protected void writeImpl(float[] samples, int offs, int len)
+		throws JavaLayerException
+	{
+		if (ring==null)
+			start();
+
+		JavaLayerException error = mixer.getOutputError();
+		if (error!=null)
+			throw error;
+
+		ended = false;
+		if (cacheWriter!=null)
+			cacheWriter.write(samples, offs, len);
+		if (resampler!=null)
+		{
+			len = resampler.process(samples, offs, len);
+			samples = resampler.getBuffer();
+			offs = 0;
+		}
+		writeRing(samples, offs, len);
+	}
+
+	private void writeRing(float[] samples, int offs, int len)
+	{
+		while (len > 0 && !closed && !mixer.isStopped())
+		{
+			int n = ring.write(samples, offs, len);
+			offs += n;
+			len -= n;
+			if (ring.size() >= lowWatermark)
+				mixer.wakeOutput();
+			if (n == 0)
+			{
+				// only when the caller ignores getMillisUntilRefill()
+				producer = Thread.currentThread();
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(5));
+				producer = null;
+			}
+		}
+	}
+
+	private void start() throws JavaLayerException
+	{
+		Decoder decoder = getDecoder();
+		int frequency = inputFrequency > 0 ? inputFrequency : decoder.getOutputFrequency();
+		int channels = inputFrequency > 0 ? inputChannels : decoder.getOutputChannels();
+		int blockSize = inputFrequency > 0 ? inputBlockSize : decoder.getOutputBlockSize();
+		if (cacheWriter!=null)
+			cacheWriter.setFormat(frequency, channels);
+		if (outputFrequency > 0)
+		{
+			resampler = new Resampler(frequency, channels, outputFrequency, outputChannels, resampleQuality);
+			if (resampler.isPassThrough())
+				resampler = null;
+			else
+				blockSize = resampler.getMaxOutput(blockSize);
+			frequency = outputFrequency;
+			channels = outputChannels;
+		}
+		samplesPerSecond = frequency * channels;
+
+		highWatermark = (int)((long)samplesPerSecond * leadMillis / 1000);
+		lowWatermark = (int)((long)samplesPerSecond * lowWatermarkMillis / 1000);
+		ring = new PcmRingBuffer(highWatermark + blockSize);
+
+		if (!mixer.start(this, frequency, channels, blockSize, crossfadeMillis))
+		{
+			// another sample rate or channel count can't go into the same line
+			throw new JavaLayerException("can't mix " + frequency + " Hz, " + channels
+				+ " channels into what the device is playing, use setOutputFormat()");
+		}
+	}
+
+	/*
+	 * Called by the output thread of the mixer.
+	 */
+
+	/**
+	 * True if the output may read from this device, false while it is
+	 * building up to the low watermark.
+	 */
+	boolean isReady()
+	{
+		if (prebuffering)
+		{
+			if (ring.size() < lowWatermark && !ended)
+				return false;
+			prebuffering = false;
+		}
+		return true;
+	}
+
+	int available()
+	{
+		return ring.size();
+	}
+
+	int read(float[] dst, int len)
+	{
+		int n = ring.read(dst, 0, len);
+		Thread p = producer;
+		if (p!=null)
+			LockSupport.unpark(p);
+		return n;
+	}
+
+	boolean isEnded()
+	{
+		return ended;
+	}
+
+	boolean isDrained()
+	{
+		return drained;
+	}
+
+	/**
+	 * True once everything written up to the end has been read.
+	 */
+	boolean isDone()
+	{
+		return ended && ring.size()==0;
+	}
+
+	void setDrained(boolean drained)
+	{
+		this.drained = drained;
+	}
+
+	void underrun()
+	{
+		// counted once until output restarts
+		if (!prebuffering)
+			underruns++;
+		prebuffering = true;
+	}
+
+	void setFadedOut()
+	{
+		fadedOut = true;
+		drained = true;
+	}
+
+	/**
+	 * Plays out everything buffered, including what the wrapped device
+	 * still has. During a crossfade the output carries on with the rest
+	 * and this returns right away.
+	 */
+	protected void flushImpl()
+	{
+		end();
+		if (mixer.isShared())
+			return;
+
+		while (!isPlayedOut())
+		{
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(2));
+		}
+	}
+
+	/**
+	 * Stops output, buffered samples are discarded after a fade of a
+	 * few milliseconds. Only the outgoing side of a crossfade still
+	 * plays out what it has.
+	 */
+	protected void closeImpl()
+	{
+		setCacheWriter(null);
+		closed = true;
+		ended = true;
+		mixer.detach();
+	}
+
+	public int getPosition()
+	{
+		return mixer.getDevice().getPosition();
+	}
+}
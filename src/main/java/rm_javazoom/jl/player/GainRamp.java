@@ -0,0 +1,140 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+/**
+ * A software gain stage for interleaved float samples. Any thread sets
+ * the target gain, the thread writing the samples moves toward it at a
+ * set rate, sample by sample, so the gain neither steps nor depends on
+ * how often the target is updated.
+ * <p>
+ * Gains are in decibels, like the <code>MASTER_GAIN</code> control this
+ * replaces. At or below <code>SILENT_GAIN</code> nothing is heard.
+ */
+public final class GainRamp
+{
+	public static final float	SILENT_GAIN = -80F;
+
+	/**
+	 * Rate used when none is given, fast enough to follow a volume
+	 * slider and slow enough not to click.
+	 */
+	public static final float	DEFAULT_RATE = 200F;
+
+	// target gain and rate packed together, so the writing thread never
+	// sees one without the other
+	private volatile long		target;
+
+	// gain reached so far, only touched by the writing thread,
+	// NaN until the first samples, which start out at the target
+	private float				current = Float.NaN;
+
+	public GainRamp()
+	{
+		setTarget(0F, DEFAULT_RATE);
+	}
+
+	/**
+	 * Sets the gain to move toward.
+	 *
+	 * @param gain			The gain, in decibels.
+	 * @param dbPerSecond	How fast to get there, infinite or 0 to jump.
+	 */
+	public void setTarget(float gain, float dbPerSecond)
+	{
+		if (Float.isNaN(gain))
+			throw new IllegalArgumentException("gain: "+gain);
+		if (!(dbPerSecond > 0))
+			dbPerSecond = Float.POSITIVE_INFINITY;
+
+		target = (long)Float.floatToRawIntBits(gain) << 32 | (Float.floatToRawIntBits(dbPerSecond) & 0xFFFFFFFFL);
+	}
+
+	public float getTarget()
+	{
+		return Float.intBitsToFloat((int)(target >>> 32));
+	}
+
+	public float getRate()
+	{
+		return Float.intBitsToFloat((int)target);
+	}
+
+	/**
+	 * Starts from the target again, without ramping, the next time
+	 * samples are processed.
+	 */
+	public void reset()
+	{
+		current = Float.NaN;
+	}
+
+	/**
+	 * Applies the gain to <code>len</code> interleaved samples of
+	 * <code>in</code>, storing them in <code>out</code>, which may be the
+	 * same array.
+	 *
+	 * @param channels		The number of interleaved channels.
+	 * @param sampleRate	Frames per second, the clock of the ramp.
+	 */
+	public void process(float[] in, int inOffs, float[] out, int outOffs, int len, int channels, float sampleRate)
+	{
+		long t = target;
+		float targetGain = Float.intBitsToFloat((int)(t >>> 32));
+		float rate = Float.intBitsToFloat((int)t);
+
+		if (Float.isNaN(current) || rate == Float.POSITIVE_INFINITY)
+			current = targetGain;
+
+		int frames = len / channels;
+		int f = 0;
+		if (current != targetGain)
+		{
+			// constant decibels per frame is a constant factor per frame
+			float perFrame = rate / sampleRate;
+			float distance = Math.abs(targetGain - current);
+			int rampFrames = (int)Math.min(frames, distance / perFrame);
+			float step = amplitude(targetGain > current ? perFrame : -perFrame);
+			// recomputed every call so the repeated multiplying can't drift
+			float a = amplitude(current);
+			for (; f<rampFrames; f++)
+			{
+				a *= step;
+				for (int c=0; c<channels; c++)
+					out[outOffs++] = in[inOffs++] * a;
+			}
+			if (rampFrames < frames)
+				current = targetGain;
+			else
+				current += targetGain > current ? rampFrames * perFrame : -rampFrames * perFrame;
+		}
+
+		if (f < frames)
+		{
+			float a = current <= SILENT_GAIN ? 0F : amplitude(current);
+			for (int i=(frames - f) * channels; i>0; i--)
+				out[outOffs++] = in[inOffs++] * a;
+		}
+	}
+
+	private static float amplitude(float gain)
+	{
+		return (float)Math.pow(10.0, gain / 20.0);
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Stands in for a sound engine pulling a <code>StreamAudioDevice</code>,
+ * to play through one without an audio device, e.g. in tests. Like a
+ * streaming source it keeps a few buffers queued, takes another each
+ * time one has played in real time, and attaches to each new stream the
+ * device opens once something has been written to it. What it takes is
+ * passed to <code>consume</code>.
+ */
+public class HeadlessStreamPlayer implements Runnable
+{
+	/**
+	 * Default number of buffers kept queued.
+	 */
+	public static final int		DEFAULT_QUEUED_BUFFERS = 4;
+
+	// how often to look for a new stream
+	private static final long	IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+	private final StreamAudioDevice	device;
+	private final int			queuedBuffers;
+	private final Thread		thread;
+
+	private volatile boolean	stopped = false;
+	private volatile long		bytesPlayed = 0;
+	private volatile long		streams = 0;
+
+	public HeadlessStreamPlayer(StreamAudioDevice device)
+	{
+		this(device, DEFAULT_QUEUED_BUFFERS);
+	}
+
+	public HeadlessStreamPlayer(StreamAudioDevice device, int queuedBuffers)
+	{
+		this.device = device;
+		this.queuedBuffers = Math.max(1, queuedBuffers);
+		thread = new Thread(this, "Headless stream player");
+		thread.setDaemon(true);
+	}
+
+	public void start()
+	{
+		thread.start();
+	}
+
+	/**
+	 * Stops playing and waits for the thread to end.
+	 */
+	public void stop() throws InterruptedException
+	{
+		stopped = true;
+		thread.join();
+	}
+
+	public void run()
+	{
+		while (!stopped)
+		{
+			PcmStream s = device.getStream();
+			if (s!=null && s.isStarted() && s.attach())
+			{
+				streams++;
+				play(s);
+				s.close();
+			}
+			else
+			{
+				LockSupport.parkNanos(this, IDLE_NANOS);
+			}
+		}
+	}
+
+	private void play(PcmStream s)
+	{
+		AudioFormat f = s.getFormat();
+		double nanosPerByte = 1e9 / (f.getSampleRate() * f.getFrameSize());
+		int bufferBytes = (int)(f.getSampleRate() * f.getFrameSize());
+
+		// when each queued buffer will have played
+		ArrayDeque<Long> queue = new ArrayDeque<Long>();
+		long playedUntil = System.nanoTime();
+		boolean ended = false;
+		while (!stopped)
+		{
+			while (!ended && queue.size() < queuedBuffers)
+			{
+				ByteBuffer b = s.read(bufferBytes);
+				if (b==null)
+				{
+					ended = true;
+					break;
+				}
+				int n = b.remaining();
+				consume(b);
+				bytesPlayed += n;
+				playedUntil = Math.max(playedUntil, System.nanoTime()) + (long)(n * nanosPerByte);
+				queue.add(playedUntil);
+			}
+			if (queue.isEmpty())
+				return;
+
+			long wait = queue.peek() - System.nanoTime();
+			if (wait > 0)
+				LockSupport.parkNanos(this, wait);
+			else
+				queue.poll();
+		}
+	}
+
+	/**
+	 * Called with each buffer taken from the stream, valid until this
+	 * returns. Does nothing by default.
+	 */
+	protected void consume(ByteBuffer buffer)
+	{
+	}
+
+	/**
+	 * Number of bytes taken from streams so far, including silence.
+	 */
+	public long getBytesPlayed()
+	{
+		return bytesPlayed;
+	}
+
+	/**
+	 * Number of streams attached to so far.
+	 */
+	public long getStreams()
+	{
+		return streams;
+	}
+}
@@ -24,16 +24,21 @@
 
 package rm_javazoom.jl.player;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
-import javax.sound.sampled.FloatControl;
 import javax.sound.sampled.Line;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
-import circuitlord.reactivemusic.PlayerThread;
 import rm_javazoom.jl.decoder.Decoder;
+import rm_javazoom.jl.decoder.FloatSampleBuffer;
 import rm_javazoom.jl.decoder.JavaLayerException;
 
 /**
@@ -43,13 +48,61 @@ import rm_javazoom.jl.decoder.JavaLayerException;
  * @since 0.0.8
  * @author Mat McGowan
  */
-public class JavaSoundAudioDevice extends AudioDeviceBase
+public class JavaSoundAudioDevice extends AudioDeviceBase implements PcmOutputDevice
 {
-	private SourceDataLine	source = null;
+	private volatile SourceDataLine	source = null;
 
 	private AudioFormat		fmt = null;
 
-	private byte[]			byteBuf = new byte[4096];
+	// the line was (re)started for the current open
+	private volatile boolean	sourceStarted = false;
+
+	// set by fadeOut(), writes are dropped until the line is started again
+	private volatile boolean	discarding = false;
+
+	// held around each write to the line and to pending, never while
+	// waiting for room
+	private final Object	writeLock = new Object();
+
+	// the last bytes written to the line, as many as it buffers, so what
+	// is still queued in it can be faded out
+	private byte[]			history;
+	private int				historyEnd = 0;
+	private int				historyFill = 0;
+
+	// keep the line open when the device is closed, for the next open
+	private boolean			keepLineOpen = false;
+
+	// microseconds the line had played when it was started for the current open
+	private long			positionBase = 0;
+
+	/**
+	 * Default number of bytes collected before they are written to the
+	 * line, four frames of 44.1kHz stereo.
+	 */
+	public static final int	DEFAULT_WRITE_CHUNK_BYTES = 4 * 4608;
+
+	private int				writeChunkBytes = DEFAULT_WRITE_CHUNK_BYTES;
+
+	// Samples waiting for the next line write. SourceDataLine only takes
+	// a byte[], so this is a heap buffer over byteBuf rather than a direct
+	// one, which would need another copy. pending is a little endian view.
+	private byte[]			byteBuf;
+	private ShortBuffer		pending;
+
+	private short[]			clipBuf = new short[0];
+	private float[]			gainBuf = new float[0];
+
+	// statistics, only written by the thread that writes to the device
+	private volatile long	writeCalls = 0;
+	private volatile long	bytesWritten = 0;
+	private volatile long	nanosBlocked = 0;
+
+	private volatile long	lineOpens = 0;
+	private volatile long	lineReuses = 0;
+	private volatile long	lastStartNanos = -1;
+
+	private final GainRamp	gain = new GainRamp();
 
 	protected void setAudioFormat(AudioFormat fmt0)
 	{
@@ -95,8 +148,31 @@ public class JavaSoundAudioDevice extends AudioDeviceBase
 
 
 	// createSource fix.
-	protected void createSource() throws JavaLayerException
+	protected synchronized void createSource() throws JavaLayerException
     {
+		// a write racing with close() must not start the line again
+		if (!isOpen())
+			return;
+
+		long start = System.nanoTime();
+		AudioFormat fmt = getAudioFormat();
+		if (source!=null)
+		{
+			if (source.isOpen() && source.getFormat().matches(fmt))
+			{
+				// anything left over from before is dropped, the line may
+				// have been written to after it was stopped
+				source.flush();
+				source.start();
+				startWriting();
+				positionBase = source.getMicrosecondPosition();
+				lineReuses++;
+				lastStartNanos = System.nanoTime() - start;
+				return;
+			}
+			closeLine();
+		}
+
         Throwable t = null;
         try
         {
@@ -113,7 +189,10 @@ public class JavaSoundAudioDevice extends AudioDeviceBase
                     c.setValue(c.getMaximum());
                 }*/
                 source.start();
-         		setGain(PlayerThread.realGain); // XXX ~Vazkii
+				startWriting();
+				positionBase = 0;
+				lineOpens++;
+				lastStartNanos = System.nanoTime() - start;
             }
         } catch (RuntimeException ex)
           {
@@ -130,56 +209,370 @@ public class JavaSoundAudioDevice extends AudioDeviceBase
 		if (source==null) throw new JavaLayerException("cannot obtain source audio line", t);
     }
 
+	private void startWriting()
+	{
+		if (history==null || history.length!=source.getBufferSize())
+			history = new byte[source.getBufferSize()];
+		historyEnd = 0;
+		historyFill = 0;
+		discarding = false;
+		sourceStarted = true;
+	}
+
 	public int millisecondsToBytes(AudioFormat fmt, int time)
 	{
 		return (int)(time*(fmt.getSampleRate()*fmt.getChannels()*fmt.getSampleSizeInBits())/8000.0);
 	}
 
 	protected void closeImpl()
+	{
+		synchronized (writeLock)
+		{
+			// what the writing thread collected isn't played, also not
+			// at the start of the next open
+			if (pending!=null)
+				pending.clear();
+
+			if (source!=null)
+			{
+				if (keepLineOpen)
+				{
+					// quicker to undo than closing
+					source.stop();
+					source.flush();
+				}
+				else
+				{
+					closeLine();
+				}
+			}
+			sourceStarted = false;
+		}
+		// the next open may be for another format, and starts at its gain
+		fmt = null;
+		gain.reset();
+	}
+
+	/**
+	 * Closes the line, also one kept open by
+	 * <code>setKeepLineOpen</code>.
+	 */
+	public synchronized void closeLine()
 	{
 		if (source!=null)
 		{
 			source.close();
+			source = null;
 		}
 	}
 
+	/**
+	 * Keeps the line open when this device is closed, so opening it again
+	 * for audio of the same format doesn't have to get and open a new line.
+	 * The line is only stopped and flushed until then, and replaced when
+	 * the format changes. <code>closeLine()</code> releases it.
+	 */
+	public void setKeepLineOpen(boolean keep)
+	{
+		keepLineOpen = keep;
+	}
+
+	public boolean isKeepLineOpen()
+	{
+		return keepLineOpen;
+	}
+
 	protected void writeImpl(short[] samples, int offs, int len)
 		throws JavaLayerException
 	{
-		if (source==null)
+		// through the float path, which applies the gain
+		float[] f = getGainBuf(len);
+		for (int i=0; i<len; i++)
+		{
+			f[i] = samples[offs+i];
+		}
+		writeImpl(f, 0, len);
+	}
+
+	protected void writeImpl(float[] samples, int offs, int len)
+		throws JavaLayerException
+	{
+		if (!sourceStarted)
+		{
 			createSource();
+			if (!sourceStarted)
+				return;
+		}
+
+		final float[] f = getGainBuf(len);
+		gain.process(samples, offs, f, 0, len, fmt.getChannels(), fmt.getSampleRate());
+
+		if (clipBuf.length < len)
+		{
+			clipBuf = new short[len];
+		}
+		final short[] s = clipBuf;
+		for (int i=0; i<len; i++)
+		{
+			s[i] = FloatSampleBuffer.clip(f[i]);
+		}
+		writeSamples(s, 0, len);
+	}
+
+	private void writeSamples(short[] samples, int offs, int len)
+	{
+		ShortBuffer p = getPending();
+		while (len > 0)
+		{
+			boolean full;
+			synchronized (writeLock)
+			{
+				int n = Math.min(len, p.remaining());
+				p.put(samples, offs, n);
+				offs += n;
+				len -= n;
+				full = !p.hasRemaining();
+			}
+			if (full)
+				writePending();
+		}
+	}
+
+	private float[] getGainBuf(int len)
+	{
+		if (gainBuf.length < len)
+		{
+			gainBuf = new float[len];
+		}
+		return gainBuf;
+	}
+
+	private ShortBuffer getPending()
+	{
+		if (pending==null)
+		{
+			byteBuf = new byte[writeChunkBytes];
+			pending = ByteBuffer.wrap(byteBuf).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+		}
+		return pending;
+	}
+
+	/**
+	 * Writes the collected samples to the line, waiting while
+	 * the line's buffer is full.
+	 * <p>
+	 * The wait is outside of <code>SourceDataLine.write</code>, which
+	 * is only called once there is room, so <code>fadeOut()</code> can
+	 * always get in between two writes.
+	 */
+	protected void writePending()
+	{
+		int n;
+		synchronized (writeLock)
+		{
+			if (pending==null || pending.position()==0)
+				return;
+			n = pending.position() * 2;
+		}
+
+		int offs = 0;
+		long start = System.nanoTime();
+		while (offs < n)
+		{
+			long waitNanos;
+			synchronized (writeLock)
+			{
+				SourceDataLine line = source;
+				if (line==null || !sourceStarted || discarding)
+				{
+					// closed or faded out under the writing thread
+					break;
+				}
 
-		byte[] b = toByteArray(samples, offs, len);
-		source.write(b, 0, len*2);
+				int frameSize = line.getFormat().getFrameSize();
+				int room = line.available();
+				room -= room % frameSize;
+				int want = Math.min(n - offs, line.getBufferSize() / 2);
+				if (room >= want && room > 0)
+				{
+					int written = line.write(byteBuf, offs, Math.min(room, n - offs));
+					remember(byteBuf, offs, written);
+					offs += written;
+					writeCalls++;
+					bytesWritten += written;
+					continue;
+				}
+				AudioFormat f = line.getFormat();
+				waitNanos = (long)((want - room) * 1e9 / (f.getFrameRate() * frameSize));
+			}
+			LockSupport.parkNanos(this, Math.max(waitNanos, 500000));
+		}
+		nanosBlocked += System.nanoTime() - start;
+		synchronized (writeLock)
+		{
+			pending.clear();
+		}
 	}
 
-	protected byte[] getByteArray(int length)
+	private void remember(byte[] b, int offs, int len)
 	{
-		if (byteBuf.length < length)
+		byte[] h = history;
+		while (len > 0)
 		{
-			byteBuf = new byte[length+1024];
+			int n = Math.min(len, h.length - historyEnd);
+			System.arraycopy(b, offs, h, historyEnd, n);
+			offs += n;
+			len -= n;
+			historyEnd = (historyEnd + n) % h.length;
+			historyFill = Math.min(historyFill + n, h.length);
 		}
-		return byteBuf;
 	}
 
-	protected byte[] toByteArray(short[] samples, int offs, int len)
+	/**
+	 * Fades out what the line is playing right now over
+	 * <code>millis</code> and drops the rest of what was written to it,
+	 * instead of playing it all out or cutting it off with a click.
+	 * Writes are ignored from then until the device is opened again.
+	 * <p>
+	 * Returns once the fade has played, or at most a few milliseconds
+	 * after it should have.
+	 */
+	public void fadeOut(int millis)
 	{
-		byte[] b = getByteArray(len*2);
-		int idx = 0;
-		short s;
-		while (len-- > 0)
+		SourceDataLine line;
+		synchronized (writeLock)
 		{
-			s = samples[offs++];
-			b[idx++] = (byte)s;
-			b[idx++] = (byte)(s>>>8);
+			discarding = true;
+			line = source;
+			if (line==null || !sourceStarted)
+				return;
+
+			AudioFormat f = line.getFormat();
+			int frameSize = f.getFrameSize();
+			int queued = Math.min(line.getBufferSize() - line.available(), historyFill);
+			queued -= queued % frameSize;
+			int fade = Math.min(queued, millisecondsToBytes(f, millis));
+			fade -= fade % frameSize;
+
+			line.flush();
+			if (fade > 0)
+			{
+				// the front of what was queued is what's playing now
+				byte[] b = new byte[fade];
+				int from = (historyEnd - queued + history.length) % history.length;
+				int n = Math.min(fade, history.length - from);
+				System.arraycopy(history, from, b, 0, n);
+				System.arraycopy(history, 0, b, n, fade - n);
+				ramp(b, fade / frameSize, f.getChannels());
+				line.write(b, 0, fade);
+			}
+		}
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis + 5);
+		while (line.available() < line.getBufferSize() && System.nanoTime() < deadline)
+		{
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
 		}
-		return b;
+	}
+
+	/**
+	 * Scales 16-bit little endian frames down to silence with a raised
+	 * cosine.
+	 */
+	private static void ramp(byte[] b, int frames, int channels)
+	{
+		for (int i=0, p=0; i<frames; i++)
+		{
+			float g = 0.5F * (1F + (float)Math.cos(Math.PI * (i + 1) / frames));
+			for (int c=0; c<channels; c++, p+=2)
+			{
+				int s = Math.round(((short)((b[p] & 0xFF) | (b[p+1] << 8))) * g);
+				b[p] = (byte)s;
+				b[p+1] = (byte)(s >> 8);
+			}
+		}
+	}
+
+	/**
+	 * Sets how many bytes are collected before each write to the line.
+	 * Fewer, larger writes cost less per sample but the line is fed in
+	 * coarser steps. Rounded down to whole 16-bit stereo frames.
+	 */
+	public void setWriteChunkBytes(int bytes)
+	{
+		bytes = Math.max(4, bytes & ~3);
+		if (bytes != writeChunkBytes)
+		{
+			if (sourceStarted)
+				writePending();
+			writeChunkBytes = bytes;
+			pending = null;
+		}
+	}
+
+	public int getWriteChunkBytes()
+	{
+		return writeChunkBytes;
+	}
+
+	/**
+	 * Number of <code>SourceDataLine.write</code> calls so far.
+	 */
+	public long getWriteCalls()
+	{
+		return writeCalls;
+	}
+
+	/**
+	 * Number of bytes written to the line so far.
+	 */
+	public long getBytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	/**
+	 * Number of lines opened by this device. With
+	 * <code>setKeepLineOpen</code> that's once per format change.
+	 */
+	public long getLineOpens()
+	{
+		return lineOpens;
+	}
+
+	/**
+	 * Number of times a kept line was started again instead of opening
+	 * a new one.
+	 */
+	public long getLineReuses()
+	{
+		return lineReuses;
+	}
+
+	/**
+	 * Time the last (re)start of the line took, from the first write to
+	 * the line being ready for samples, in nanoseconds, or -1 if it
+	 * hasn't been started yet.
+	 */
+	public long getLastStartNanos()
+	{
+		return lastStartNanos;
+	}
+
+	/**
+	 * Time spent inside <code>SourceDataLine.write</code>, mostly
+	 * waiting for room in the line's buffer, in nanoseconds.
+	 */
+	public long getNanosBlocked()
+	{
+		return nanosBlocked;
 	}
 
 	protected void flushImpl()
 	{
-		if (source!=null)
+		if (sourceStarted)
 		{
+			writePending();
 			source.drain();
 		}
 	}
@@ -187,9 +580,9 @@ public class JavaSoundAudioDevice extends AudioDeviceBase
 	public int getPosition()
 	{
 		int pos = 0;
-		if (source!=null)
+		if (sourceStarted)
 		{
-			pos = (int)(source.getMicrosecondPosition()/1000);
+			pos = (int)((source.getMicrosecondPosition() - positionBase)/1000);
 		}
 		return pos;
 	}
@@ -222,27 +615,29 @@ public class JavaSoundAudioDevice extends AudioDeviceBase
 	 * ====================================================================================
 	 */
 	
-	// From http://stackoverflow.com/a/2324408
+	/**
+	 * Sets the gain in decibels, reached after a short ramp. The gain is
+	 * applied to the samples rather than through the line's
+	 * <code>MASTER_GAIN</code> control, which not every mixer has and which
+	 * steps straight to each new value. Can be called from any thread.
+	 */
 	public void setGain(float gain)
 	{
-	    if (source != null)
-	    {
-	        FloatControl volControl = (FloatControl) source.getControl(FloatControl.Type.MASTER_GAIN);
-	        float newGain = gain;
+		setGain(gain, GainRamp.DEFAULT_RATE);
+	}
 
-	        volControl.setValue(newGain);
-	    }
+	/**
+	 * Sets the gain in decibels, moved toward at <code>dbPerSecond</code>
+	 * of played audio, whether or not it is set again in between.
+	 */
+	public void setGain(float gain, float dbPerSecond)
+	{
+		this.gain.setTarget(gain, dbPerSecond);
 	}
-	
+
 	public float getGain()
 	{
-	    if (source != null)
-	    {
-	        FloatControl volControl = (FloatControl) source.getControl(FloatControl.Type.MASTER_GAIN);
-	        return volControl.getValue();
-	    }
-	    
-	    return 0F;
+		return gain.getTarget();
 	}
-	
+
 }
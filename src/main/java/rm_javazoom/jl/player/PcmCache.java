@@ -0,0 +1,508 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import rm_javazoom.jl.decoder.FloatSampleBuffer;
+
+/**
+ * Decoded audio of whole songs, kept so a song that comes up again can
+ * be played without decoding it. The samples are stored as 16-bit, at
+ * the rate and channel count the decoder put out, in direct buffers
+ * outside the heap, and songs are evicted least recently played first
+ * to stay within a budget of bytes.
+ * <p>
+ * A song is recorded by a <code>Writer</code> while it is decoded and
+ * only added once it was decoded to the end. <code>Reader</code>s play
+ * it back, an entry isn't evicted while one is open.
+ * <p>
+ * The buffers are allocated in chunks that are reused for new songs
+ * rather than freed, the garbage collector only gets back the ones
+ * dropped when the budget is lowered.
+ */
+public final class PcmCache
+{
+	/**
+	 * Size of the chunks the samples are stored in.
+	 */
+	public static final int		CHUNK_BYTES = 256 * 1024;
+
+	/**
+	 * Frames a <code>Reader</code> reads at most at a time, as many as
+	 * a Layer III frame has.
+	 */
+	public static final int		BLOCK_FRAMES = 1152;
+
+	// most recently played last
+	private final LinkedHashMap<String, Entry>	entries = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+	private final ArrayDeque<ByteBuffer>	free = new ArrayDeque<ByteBuffer>();
+
+	private long				budgetBytes;
+	private long				allocatedBytes = 0;
+	private long				usedBytes = 0;
+
+	private volatile long		hits = 0;
+	private volatile long		misses = 0;
+	private volatile long		evictions = 0;
+	private volatile long		bytesRead = 0;
+
+	/**
+	 * @param budgetBytes	The most the cache may allocate, 0 to disable it.
+	 */
+	public PcmCache(long budgetBytes)
+	{
+		this.budgetBytes = Math.max(0, budgetBytes);
+	}
+
+	/**
+	 * Changes the budget, evicting songs until the cache is within it.
+	 * 0 disables the cache and drops everything that isn't being played.
+	 */
+	public synchronized void setBudget(long bytes)
+	{
+		budgetBytes = Math.max(0, bytes);
+		trim();
+	}
+
+	public synchronized long getBudget()
+	{
+		return budgetBytes;
+	}
+
+	public synchronized boolean isEnabled()
+	{
+		return budgetBytes > 0;
+	}
+
+	/**
+	 * Opens a cached song.
+	 *
+	 * @param variant	What the song was decoded with, e.g. a quality
+	 *					setting, or -1 for any.
+	 * @return	A reader at the start of the song, or <code>null</code> if
+	 *			it isn't cached.
+	 */
+	public synchronized Reader open(String key, int variant)
+	{
+		if (budgetBytes <= 0)
+			return null;
+
+		Entry e = entries.get(key);
+		if (e==null || (variant >= 0 && e.variant!=variant))
+		{
+			misses++;
+			return null;
+		}
+		hits++;
+		e.readers++;
+		return new Reader(e);
+	}
+
+	/**
+	 * Starts recording a song, which is added once it's complete.
+	 *
+	 * @param variant	What the song is decoded with, e.g. a quality
+	 *					setting.
+	 * @return	The writer, or <code>null</code> while the cache is disabled.
+	 */
+	public synchronized Writer record(String key, int variant)
+	{
+		if (budgetBytes <= 0)
+			return null;
+		return new Writer(key, variant);
+	}
+
+	/**
+	 * Drops every song that isn't being played.
+	 */
+	public synchronized void clear()
+	{
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+		{
+			Entry e = it.next();
+			if (e.readers==0)
+			{
+				it.remove();
+				release(e);
+			}
+		}
+	}
+
+	public synchronized int getEntries()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Bytes of audio in the cached songs.
+	 */
+	public synchronized long getUsedBytes()
+	{
+		return usedBytes;
+	}
+
+	/**
+	 * Bytes of direct buffers held, in songs, in recordings and free.
+	 */
+	public synchronized long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Number of songs dropped to make room for others.
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Bytes played from the cache so far.
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * A chunk for a recording, evicting songs if the budget is used up.
+	 *
+	 * @return	The chunk, or <code>null</code> if there's no room.
+	 */
+	private synchronized ByteBuffer acquire(long held)
+	{
+		// a song that won't fit anyway shouldn't evict anything
+		if (held + CHUNK_BYTES > budgetBytes)
+			return null;
+
+		while (free.isEmpty() && allocatedBytes + CHUNK_BYTES > budgetBytes)
+		{
+			if (!evictOldest())
+				return null;
+		}
+		ByteBuffer c = free.poll();
+		if (c==null)
+		{
+			c = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+			allocatedBytes += CHUNK_BYTES;
+		}
+		return c;
+	}
+
+	private boolean evictOldest()
+	{
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+		{
+			Entry e = it.next();
+			if (e.readers==0)
+			{
+				it.remove();
+				release(e);
+				evictions++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized void add(Writer w)
+	{
+		Entry old = entries.remove(w.key);
+		if (old!=null && old.readers==0)
+			release(old);
+		else if (old!=null)
+			old.replaced = true;
+
+		Entry e = new Entry(w.variant, w.frequency, w.channels, w.chunks.toArray(new ByteBuffer[0]), w.bytes);
+		entries.put(w.key, e);
+		usedBytes += e.bytes;
+		trim();
+	}
+
+	private synchronized void closeReader(Entry e)
+	{
+		e.readers--;
+		if (e.readers==0 && e.replaced)
+			release(e);
+		else
+			trim();
+	}
+
+	private void release(Entry e)
+	{
+		usedBytes -= e.bytes;
+		for (ByteBuffer c : e.chunks)
+		{
+			release(c);
+		}
+	}
+
+	private synchronized void release(ByteBuffer c)
+	{
+		if (allocatedBytes > budgetBytes)
+		{
+			// left to the garbage collector
+			allocatedBytes -= CHUNK_BYTES;
+		}
+		else
+		{
+			free.add(c.clear());
+		}
+	}
+
+	private void trim()
+	{
+		while (allocatedBytes > budgetBytes && !free.isEmpty())
+		{
+			free.poll();
+			allocatedBytes -= CHUNK_BYTES;
+		}
+		while (allocatedBytes > budgetBytes && evictOldest())
+		{
+		}
+	}
+
+	private static final class Entry
+	{
+		final int			variant;
+		final int			frequency;
+		final int			channels;
+		final ByteBuffer[]	chunks;
+		final long			bytes;
+
+		// guarded by the cache
+		int					readers = 0;
+		boolean				replaced = false;
+
+		Entry(int variant, int frequency, int channels, ByteBuffer[] chunks, long bytes)
+		{
+			this.variant = variant;
+			this.frequency = frequency;
+			this.channels = channels;
+			this.chunks = chunks;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Records a song as it's decoded. Recording stops quietly if the song
+	 * doesn't fit, nothing is added then.
+	 */
+	public final class Writer
+	{
+		private final String		key;
+		private final int			variant;
+		private int					frequency = 0;
+		private int					channels = 0;
+		private final List<ByteBuffer>	chunks = new ArrayList<ByteBuffer>();
+		private ByteBuffer			chunk;
+		private long				bytes = 0;
+		private boolean				done = false;
+
+		private Writer(String key, int variant)
+		{
+			this.key = key;
+			this.variant = variant;
+		}
+
+		/**
+		 * Sets the format of the samples, before the first write.
+		 */
+		public void setFormat(int frequency, int channels)
+		{
+			if (this.frequency!=0 && (frequency!=this.frequency || channels!=this.channels))
+			{
+				// a stream that changes format midway isn't cached
+				abort();
+			}
+			this.frequency = frequency;
+			this.channels = channels;
+		}
+
+		/**
+		 * Adds samples on the 16-bit scale, as written to an
+		 * <code>AudioDevice</code>.
+		 */
+		public void write(float[] samples, int offs, int len)
+		{
+			while (len > 0 && !done)
+			{
+				if (chunk==null || !chunk.hasRemaining())
+				{
+					chunk = acquire((long)chunks.size() * CHUNK_BYTES);
+					if (chunk==null)
+					{
+						abort();
+						return;
+					}
+					chunks.add(chunk);
+				}
+				int n = Math.min(len, chunk.remaining() / 2);
+				for (int i=0; i<n; i++)
+				{
+					chunk.putShort(FloatSampleBuffer.clip(samples[offs+i]));
+				}
+				offs += n;
+				len -= n;
+				bytes += n * 2;
+			}
+		}
+
+		/**
+		 * Adds the song to the cache, replacing an older recording of it.
+		 */
+		public void commit()
+		{
+			if (done)
+				return;
+			done = true;
+			if (bytes==0 || frequency==0)
+			{
+				releaseChunks();
+				return;
+			}
+			add(this);
+		}
+
+		/**
+		 * Drops what was recorded.
+		 */
+		public void abort()
+		{
+			if (!done)
+			{
+				done = true;
+				releaseChunks();
+			}
+		}
+
+		private void releaseChunks()
+		{
+			for (ByteBuffer c : chunks)
+			{
+				release(c);
+			}
+			chunks.clear();
+			chunk = null;
+		}
+	}
+
+	/**
+	 * Plays back a cached song. Readers of the same song don't affect
+	 * each other.
+	 */
+	public final class Reader
+	{
+		private final Entry		e;
+		private long			pos = 0;	// in bytes
+		private boolean			closed = false;
+
+		private Reader(Entry e)
+		{
+			this.e = e;
+		}
+
+		public int getFrequency()
+		{
+			return e.frequency;
+		}
+
+		public int getChannels()
+		{
+			return e.channels;
+		}
+
+		/**
+		 * The most samples one <code>read</code> returns.
+		 */
+		public int getBlockSize()
+		{
+			return BLOCK_FRAMES * e.channels;
+		}
+
+		/**
+		 * Length of the song in milliseconds.
+		 */
+		public long getDurationMillis()
+		{
+			return e.bytes / 2 / e.channels * 1000 / e.frequency;
+		}
+
+		/**
+		 * Reads the next block of samples on the 16-bit scale.
+		 *
+		 * @return	The number of samples, at most
+		 *			<code>getBlockSize()</code>, or 0 at the end.
+		 */
+		public int read(float[] dst)
+		{
+			if (closed)
+				return 0;
+
+			int n = (int)Math.min(Math.min(dst.length, getBlockSize()), (e.bytes - pos) / 2);
+			n -= n % e.channels;
+			for (int i=0; i<n; i++, pos+=2)
+			{
+				ByteBuffer c = e.chunks[(int)(pos / CHUNK_BYTES)];
+				dst[i] = c.getShort((int)(pos % CHUNK_BYTES));
+			}
+			bytesRead += n * 2;
+			return n;
+		}
+
+		/**
+		 * Moves to the sample frame playing at the given time.
+		 */
+		public void seekMillis(long millis)
+		{
+			long frame = Math.max(0, millis) * e.frequency / 1000;
+			pos = Math.min(frame * e.channels * 2, e.bytes);
+		}
+
+		/**
+		 * Lets the song be evicted again.
+		 */
+		public void close()
+		{
+			if (!closed)
+			{
+				closed = true;
+				closeReader(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,527 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+import rm_javazoom.jl.decoder.Decoder;
+import rm_javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * The output side of <code>DecodeAheadAudioDevice</code>. One output
+ * thread drains the ring of the playing input into a single device, and
+ * while a new input crossfades in, mixes the rings of both with an
+ * equal-power curve.
+ * <p>
+ * Inputs attach when they are opened and detach when they are closed,
+ * the device is closed with the last one. There is one mixer per device
+ * (see <code>of()</code>), so songs that follow each other on it reuse
+ * the same output thread. Between songs it parks until the next input
+ * starts, and ends after waiting <code>IDLE_EXIT_MILLIS</code> for one.
+ */
+final class PcmMixer
+{
+	private static final float	HALF_PI = (float)(Math.PI / 2);
+
+	// how long what's still playing is faded out for when output stops
+	// before the end, rather than being cut off
+	static final int			STOP_FADE_MILLIS = 10;
+
+	// how long the output thread waits for the next song before it ends,
+	// so a device that isn't used anymore doesn't keep a thread
+	static final int			IDLE_EXIT_MILLIS = 60000;
+
+	// how long close() waits for the output thread to let go of the device
+	private static final int	CLOSE_WAIT_MILLIS = 100;
+
+	private final AudioDevice	device;
+	private int					attached = 0;
+
+	// a session lasts from the first input attaching to the last one
+	// detaching, bumped when it ends so the output thread leaves it
+	private volatile int		session = 0;
+
+	// format of the device, set by the first input that starts in a session
+	private int					frequency;
+	private int					channels;
+	private int					samplesPerSecond;
+	private int					chunkSize;
+
+	private volatile Thread		output;
+	private volatile boolean	stopped = false;
+	private volatile JavaLayerException	outputError;
+
+	// the session the output thread plays, -1 while it waits for one
+	private int					playing = -1;
+
+	// the next input to play, picked up by the output thread
+	private final AtomicReference<Start>	pending = new AtomicReference<>();
+
+	// owned by the output thread
+	private DecodeAheadAudioDevice	current;
+	private DecodeAheadAudioDevice	outgoing;
+	private int					crossfadeFrames;
+	private int					crossfadePos;
+	private boolean				crossfadeStarted;
+
+	private static final class Start
+	{
+		final DecodeAheadAudioDevice	input;
+		final int						crossfadeFrames;
+
+		Start(DecodeAheadAudioDevice input, int crossfadeFrames)
+		{
+			this.input = input;
+			this.crossfadeFrames = crossfadeFrames;
+		}
+	}
+
+	PcmMixer(AudioDevice device)
+	{
+		if (device==null)
+			throw new NullPointerException("device");
+
+		this.device = device;
+	}
+
+	/**
+	 * The mixer of <code>device</code>, the same one every time for
+	 * devices based on <code>AudioDeviceBase</code>.
+	 */
+	static PcmMixer of(AudioDevice device)
+	{
+		if (!(device instanceof AudioDeviceBase))
+			return new PcmMixer(device);
+
+		AudioDeviceBase base = (AudioDeviceBase)device;
+		synchronized (base)
+		{
+			if (base.outputMixer==null)
+				base.outputMixer = new PcmMixer(device);
+			return base.outputMixer;
+		}
+	}
+
+	AudioDevice getDevice()
+	{
+		return device;
+	}
+
+	/**
+	 * Opens the device for the first input, later ones share it.
+	 *
+	 * @param frequency	The format the inputs write, 0 for that of the
+	 *					decoder.
+	 */
+	synchronized void attach(Decoder decoder, int frequency, int channels) throws JavaLayerException
+	{
+		if (attached==0)
+		{
+			// a new session, nothing of the last one carries over
+			this.frequency = 0;
+			stopped = false;
+			outputError = null;
+		}
+		if (frequency > 0 && device instanceof PcmOutputDevice)
+			((PcmOutputDevice)device).open(new AudioFormat(frequency, 16, channels, true, false));
+		else
+			device.open(decoder);
+		attached++;
+	}
+
+	/**
+	 * When the last input detaches, output stops right away and the
+	 * device is closed.
+	 */
+	void detach()
+	{
+		synchronized (this)
+		{
+			if (--attached > 0)
+				return;
+		}
+		close();
+	}
+
+	/**
+	 * True while more than one input is attached, i.e. during a crossfade.
+	 */
+	synchronized boolean isShared()
+	{
+		return attached > 1;
+	}
+
+	boolean isStopped()
+	{
+		return stopped;
+	}
+
+	JavaLayerException getOutputError()
+	{
+		return outputError;
+	}
+
+	/**
+	 * Called by an input before its first samples. The input takes over
+	 * from the one playing now, crossfading from it over
+	 * <code>crossfadeMillis</code>.
+	 *
+	 * @param blockSize	Most samples the input writes at a time.
+	 * @return false if the device plays another format, then the input
+	 *		   can't be mixed in.
+	 */
+	synchronized boolean start(DecodeAheadAudioDevice input, int freq, int chans, int blockSize, int crossfadeMillis)
+	{
+		if (frequency==0)
+		{
+			// the first input of the session, there's nothing to crossfade from
+			frequency = freq;
+			channels = chans;
+			samplesPerSecond = freq * chans;
+			chunkSize = blockSize * 2;
+			crossfadeMillis = 0;
+		}
+		else if (freq!=frequency || chans!=channels)
+			return false;
+
+		Start replaced = pending.getAndSet(new Start(input, (int)((long)crossfadeMillis * frequency / 1000)));
+		if (replaced!=null)
+			replaced.input.setFadedOut();
+
+		if (output==null)
+		{
+			output = new Thread(this::runOutput, "DecodeAhead Output");
+			output.setDaemon(true);
+			output.start();
+		}
+		else
+			wakeOutput();
+		return true;
+	}
+
+	/**
+	 * Stops output for the rest of the session, every input still
+	 * playing counts as faded out. The device stays open until the last
+	 * input detaches.
+	 */
+	void cut()
+	{
+		stopped = true;
+		wakeOutput();
+	}
+
+	void wakeOutput()
+	{
+		Thread t = output;
+		if (t!=null)
+			LockSupport.unpark(t);
+	}
+
+	private void runOutput()
+	{
+		float[] chunk = new float[0];
+		float[] mix = new float[0];
+
+		while (awaitInput())
+		{
+			if (chunk.length < chunkSize)
+			{
+				chunk = new float[chunkSize];
+				mix = new float[chunkSize];
+			}
+			play(playing, chunk, mix, chunkSize);
+		}
+	}
+
+	/**
+	 * Parks until an input starts.
+	 *
+	 * @return false if none did for <code>IDLE_EXIT_MILLIS</code>, then
+	 *		   the thread ends and the next input starts another one.
+	 */
+	private boolean awaitInput()
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_EXIT_MILLIS);
+		while (true)
+		{
+			synchronized (this)
+			{
+				if (!stopped && pending.get()!=null)
+				{
+					playing = session;
+					return true;
+				}
+				if (System.nanoTime() - deadline >= 0)
+				{
+					output = null;
+					return false;
+				}
+			}
+			LockSupport.parkNanos(this, deadline - System.nanoTime());
+		}
+	}
+
+	private void play(int playing, float[] chunk, float[] mix, int chunkSize)
+	{
+		JavaLayerException error = null;
+		long handed = 0;
+
+		try
+		{
+			while (!stopped && session==playing)
+			{
+				takePending();
+
+				DecodeAheadAudioDevice in = current;
+				if (in==null)
+				{
+					// the session ended before its first input was picked up
+					break;
+				}
+				if (outgoing!=null && !crossfadeStarted && !in.isReady())
+				{
+					// nothing of the new input yet, the old one plays on alone until it's there
+					in = outgoing;
+					if (in.isDone())
+					{
+						finishCrossfade();
+						continue;
+					}
+				}
+				else if (!in.isReady())
+				{
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(5));
+					continue;
+				}
+
+				boolean mixing = in==current && outgoing!=null;
+				int len = chunkSize;
+				if (mixing && !outgoing.isEnded())
+				{
+					// no further ahead than the outgoing input has, or it would fall behind
+					len = Math.min(len, outgoing.available() / channels * channels);
+				}
+
+				int n = len > 0 ? in.read(chunk, len) : 0;
+				if (n > 0)
+				{
+					if (mixing)
+						mixOutgoing(chunk, mix, n);
+					in.setDrained(false);
+					device.write(chunk, 0, n);
+					handed += n;
+				}
+				else if (in.isEnded() && len > 0)
+				{
+					if (!in.isDrained() && in==current && outgoing==null && pending.get()==null)
+					{
+						// the end of the last input, play out what the device still has
+						device.flush();
+					}
+					in.setDrained(true);
+					if (in==current && outgoing!=null)
+					{
+						finishCrossfade();
+						continue;
+					}
+					// nothing left to play until the next input starts or the session ends
+					LockSupport.park(this);
+				}
+				else if (mixing && len==0)
+				{
+					// the outgoing input has nothing to mix in, it's the one
+					// that ran short, the current one keeps what it has
+					if (device.getPosition() >= handedMillis(handed))
+						outgoing.underrun();
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+				}
+				else if (device.getPosition() >= handedMillis(handed))
+				{
+					// the device has played everything it was given
+					in.underrun();
+				}
+				else
+				{
+					// the device still has some buffered, keep feeding it as soon as there's more
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+		}
+		catch (JavaLayerException ex)
+		{
+			error = ex;
+		}
+		catch (RuntimeException ex)
+		{
+			error = new JavaLayerException("audio output failed", ex);
+		}
+
+		synchronized (this)
+		{
+			if (session==playing)
+			{
+				// output failed, which ends it for the rest of the session
+				if (error!=null)
+					outputError = error;
+				stopped = true;
+				Start start = pending.getAndSet(null);
+				if (start!=null)
+					start.input.setFadedOut();
+			}
+			if (outgoing!=null)
+				outgoing.setFadedOut();
+			if (current!=null)
+				current.setFadedOut();
+			outgoing = null;
+			current = null;
+			crossfadePos = 0;
+
+			this.playing = -1;
+			notifyAll();
+		}
+	}
+
+	private void takePending()
+	{
+		Start start = pending.get();
+		if (start==null)
+			return;
+		if (outgoing!=null && start.crossfadeFrames > 0)
+		{
+			// the next crossfade waits for this one to finish, dropping
+			// the outgoing input part way would click
+			return;
+		}
+		if (!pending.compareAndSet(start, null))
+			return;
+
+		if (outgoing!=null)
+		{
+			outgoing.setFadedOut();
+			outgoing = null;
+			crossfadePos = 0;
+		}
+		if (current!=null && start.crossfadeFrames > 0)
+		{
+			outgoing = current;
+			crossfadeFrames = start.crossfadeFrames;
+			crossfadePos = 0;
+			crossfadeStarted = false;
+		}
+		else if (current!=null)
+		{
+			current.setFadedOut();
+		}
+		current = start.input;
+	}
+
+	/**
+	 * Mixes the outgoing input into <code>n</code> samples of the
+	 * current one, sin and cos of the same angle so the summed power
+	 * stays even.
+	 */
+	private void mixOutgoing(float[] chunk, float[] mix, int n)
+	{
+		crossfadeStarted = true;
+		int m = outgoing.read(mix, n);
+		for (int i=m; i<n; i++)
+			mix[i] = 0F;
+
+		int frames = n / channels;
+		int fadeFrames = Math.min(frames, crossfadeFrames - crossfadePos);
+
+		// the angle advances by the same step every frame, so rotate
+		// instead of calling sin and cos for each
+		float step = HALF_PI / crossfadeFrames;
+		float stepCos = (float)Math.cos(step);
+		float stepSin = (float)Math.sin(step);
+		float angle = step * crossfadePos;
+		float in = (float)Math.sin(angle);
+		float out = (float)Math.cos(angle);
+
+		int i = 0;
+		for (int f=0; f<fadeFrames; f++)
+		{
+			for (int c=0; c<channels; c++, i++)
+				chunk[i] = chunk[i] * in + mix[i] * out;
+			float nextIn = in * stepCos + out * stepSin;
+			out = out * stepCos - in * stepSin;
+			in = nextIn;
+		}
+
+		crossfadePos += fadeFrames;
+		if (crossfadePos >= crossfadeFrames)
+			finishCrossfade();
+	}
+
+	private void finishCrossfade()
+	{
+		outgoing.setFadedOut();
+		outgoing = null;
+		crossfadePos = 0;
+	}
+
+	private long handedMillis(long samples)
+	{
+		return samples * 1000 / samplesPerSecond;
+	}
+
+	private void close()
+	{
+		int ended;
+		synchronized (this)
+		{
+			stopped = true;
+			ended = session++;
+
+			Start start = pending.getAndSet(null);
+			if (start!=null)
+				start.input.setFadedOut();
+		}
+
+		// also stops the output thread writing to the device
+		if (device instanceof PcmOutputDevice)
+			((PcmOutputDevice)device).fadeOut(STOP_FADE_MILLIS);
+		device.close();
+		wakeOutput();
+
+		// the thread stays for the next session, but should be done with this one
+		synchronized (this)
+		{
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_WAIT_MILLIS);
+			long left;
+			while (playing==ended && (left = deadline - System.nanoTime()) > 0)
+			{
+				try
+				{
+					TimeUnit.NANOSECONDS.timedWait(this, left);
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import javax.sound.sampled.AudioFormat;
+
+import rm_javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * An <code>AudioDevice</code> that <code>DecodeAheadAudioDevice</code>
+ * can open in a format of its choosing, that applies the gain to the
+ * samples itself, and that can fade out what it's playing when output
+ * stops early.
+ */
+public interface PcmOutputDevice extends AudioDevice
+{
+	/**
+	 * Opens the device for 16-bit signed samples of the given rate and
+	 * channel count, instead of those of a decoder.
+	 */
+	public void open(AudioFormat fmt) throws JavaLayerException;
+
+	/**
+	 * Sets the gain in decibels, moved toward at <code>dbPerSecond</code>
+	 * of played audio. Can be called from any thread.
+	 */
+	public void setGain(float gain, float dbPerSecond);
+
+	public float getGain();
+
+	/**
+	 * Fades out what is playing over <code>millis</code> and drops the
+	 * rest of what was written, ignoring writes until the device is
+	 * opened again.
+	 */
+	public void fadeOut(int millis);
+}
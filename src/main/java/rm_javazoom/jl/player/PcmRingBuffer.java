@@ -0,0 +1,112 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free ring of interleaved float samples for exactly one
+ * producer thread and one consumer thread. Neither side ever blocks,
+ * <code>write</code> and <code>read</code> just move as many samples
+ * as currently fit.
+ */
+public final class PcmRingBuffer
+{
+	private final float[]		buffer;
+	private final int			mask;
+
+	// total number of samples ever written and read, each only
+	// advanced by its own side
+	private final AtomicLong	writePos = new AtomicLong();
+	private final AtomicLong	readPos = new AtomicLong();
+
+	/**
+	 * @param minCapacity	The number of samples the ring must hold,
+	 *						rounded up to a power of two.
+	 */
+	public PcmRingBuffer(int minCapacity)
+	{
+		int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+		buffer = new float[capacity];
+		mask = capacity - 1;
+	}
+
+	public int capacity()
+	{
+		return buffer.length;
+	}
+
+	/**
+	 * Number of samples that can be read right now.
+	 */
+	public int size()
+	{
+		return (int)(writePos.getAcquire() - readPos.getAcquire());
+	}
+
+	/**
+	 * Producer side. Copies up to <code>len</code> samples into the ring.
+	 *
+	 * @return the number of samples copied, 0 if the ring is full.
+	 */
+	public int write(float[] src, int offs, int len)
+	{
+		long w = writePos.getPlain();
+		int n = (int)Math.min(len, buffer.length - (w - readPos.getAcquire()));
+		if (n <= 0)
+			return 0;
+
+		int start = (int)w & mask;
+		int first = Math.min(n, buffer.length - start);
+		System.arraycopy(src, offs, buffer, start, first);
+		System.arraycopy(src, offs + first, buffer, 0, n - first);
+
+		writePos.setRelease(w + n);
+		return n;
+	}
+
+	/**
+	 * Consumer side. Copies up to <code>len</code> samples out of the ring.
+	 *
+	 * @return the number of samples copied, 0 if the ring is empty.
+	 */
+	public int read(float[] dst, int offs, int len)
+	{
+		long r = readPos.getPlain();
+		int n = (int)Math.min(len, writePos.getAcquire() - r);
+		if (n <= 0)
+			return 0;
+
+		int start = (int)r & mask;
+		int first = Math.min(n, buffer.length - start);
+		System.arraycopy(buffer, start, dst, offs, first);
+		System.arraycopy(buffer, 0, dst, offs + first, n - first);
+
+		readPos.setRelease(r + n);
+		return n;
+	}
+
+	/**
+	 * Consumer side. Drops everything that has been written so far.
+	 */
+	public void clear()
+	{
+		readPos.setRelease(writePos.getAcquire());
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The audio a <code>StreamAudioDevice</code> plays, for whatever pulls
+ * it, like the streaming source of a sound engine. It's handed over in
+ * direct buffers of 16-bit samples in native byte order, which are
+ * reused rather than copied: a buffer returned by <code>read</code>
+ * stays valid until the next call.
+ * <p>
+ * One consumer at a time attaches to the stream, reads it and closes
+ * it when it's done. Another one can attach after that and carry on
+ * where the last one stopped, the device waits for it in between.
+ */
+public final class PcmStream
+{
+	// how long read waits for a buffer before handing out silence
+	private static final long	READ_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+	// how long a blocked write waits before checking again
+	private static final long	WRITE_WAIT_MILLIS = 5;
+
+	private final AudioFormat	format;
+	private final int			frameSize;
+	private final ByteBuffer	silence;
+
+	// guarded by this
+	private final ArrayDeque<ByteBuffer>	ready = new ArrayDeque<ByteBuffer>();
+	private final ArrayDeque<ByteBuffer>	free = new ArrayDeque<ByteBuffer>();
+	private boolean				attached = false;
+	private boolean				started = false;
+	private boolean				ending = false;
+
+	// owned by the writer
+	private ByteBuffer			filling;
+
+	// owned by the consumer
+	private ByteBuffer			reading;
+
+	private volatile long		bytesRead = 0;
+	private volatile long		underruns = 0;
+
+	/**
+	 * @param frequency		The sample rate.
+	 * @param channels		The number of channels.
+	 * @param bufferBytes	The size of each buffer, rounded down to
+	 *						whole frames.
+	 * @param buffers		The number of buffers, one being written, one
+	 *						being read and the rest queued in between.
+	 */
+	PcmStream(float frequency, int channels, int bufferBytes, int buffers)
+	{
+		format = new AudioFormat(frequency, 16, channels, true,
+								 ByteOrder.nativeOrder()==ByteOrder.BIG_ENDIAN);
+		frameSize = channels * 2;
+		bufferBytes = Math.max(frameSize, bufferBytes - bufferBytes % frameSize);
+		for (int i=0; i<Math.max(3, buffers); i++)
+		{
+			free.add(ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.nativeOrder()));
+		}
+		silence = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.nativeOrder());
+	}
+
+	public AudioFormat getFormat()
+	{
+		return format;
+	}
+
+	/**
+	 * Attaches a consumer to the stream.
+	 *
+	 * @return <code>false</code> if there already is one, or the stream
+	 *			has ended.
+	 */
+	public synchronized boolean attach()
+	{
+		if (attached || isEnded())
+			return false;
+		attached = true;
+		notifyAll();
+		return true;
+	}
+
+	public synchronized boolean isAttached()
+	{
+		return attached;
+	}
+
+	/**
+	 * Whether anything has been queued for the consumer yet. One that
+	 * attaches sooner reads silence until then.
+	 */
+	public synchronized boolean isStarted()
+	{
+		return started;
+	}
+
+	/**
+	 * Detaches the consumer. What it hadn't read yet is kept for the
+	 * next one.
+	 */
+	public synchronized void close()
+	{
+		if (reading!=null && !reading.hasRemaining())
+		{
+			free.add(reading.clear());
+			notifyAll();
+		}
+		else if (reading!=null)
+		{
+			ready.addFirst(reading.compact().flip());
+		}
+		reading = null;
+		attached = false;
+	}
+
+	/**
+	 * Whether everything written has been read and nothing more will be.
+	 */
+	public synchronized boolean isEnded()
+	{
+		return ending && ready.isEmpty() && (reading==null || !reading.hasRemaining());
+	}
+
+	/**
+	 * Takes the next buffer of at most <code>maxBytes</code>. When nothing
+	 * has been written in time, returns silence instead, so a source
+	 * that stops once it runs dry keeps going.
+	 *
+	 * @return	The buffer, or <code>null</code> once the stream has ended.
+	 */
+	public ByteBuffer read(int maxBytes)
+	{
+		maxBytes -= maxBytes % frameSize;
+		if (maxBytes <= 0)
+			return ByteBuffer.allocate(0);
+
+		synchronized (this)
+		{
+			if (reading!=null && !reading.hasRemaining())
+			{
+				free.add(reading.clear());
+				reading = null;
+				notifyAll();
+			}
+
+			long deadline = System.nanoTime() + READ_WAIT_NANOS;
+			while (reading==null)
+			{
+				reading = ready.poll();
+				if (reading!=null)
+					break;
+				if (ending)
+					return null;
+
+				long wait = deadline - System.nanoTime();
+				if (wait <= 0)
+				{
+					underruns++;
+					return silence.duplicate().limit(Math.min(maxBytes, silence.capacity()));
+				}
+				try
+				{
+					TimeUnit.NANOSECONDS.timedWait(this, wait);
+				}
+				catch (InterruptedException ex)
+				{
+					Thread.currentThread().interrupt();
+					return null;
+				}
+			}
+		}
+
+		int n = Math.min(reading.remaining(), maxBytes);
+		ByteBuffer b = reading.slice(reading.position(), n).order(reading.order());
+		reading.position(reading.position() + n);
+		bytesRead += n;
+		return b;
+	}
+
+	/**
+	 * Number of bytes handed to consumers so far, not counting silence.
+	 */
+	public long getBytesRead()
+	{
+		return bytesRead;
+	}
+
+	/**
+	 * Number of times a consumer was given silence because nothing had
+	 * been written in time.
+	 */
+	public long getUnderruns()
+	{
+		return underruns;
+	}
+
+	/**
+	 * Writes samples, waiting while all buffers are queued.
+	 *
+	 * @return <code>false</code> if the stream is ending, and the samples
+	 *			were dropped.
+	 */
+	boolean write(short[] samples, int offs, int len)
+	{
+		while (len > 0)
+		{
+			if (filling==null)
+			{
+				filling = takeFree();
+				if (filling==null)
+					return false;
+			}
+			int n = Math.min(len, filling.remaining() / 2);
+			for (int i=0; i<n; i++)
+			{
+				filling.putShort(samples[offs+i]);
+			}
+			offs += n;
+			len -= n;
+			if (!filling.hasRemaining())
+				queueFilling();
+		}
+		return true;
+	}
+
+	private synchronized ByteBuffer takeFree()
+	{
+		while (!ending)
+		{
+			ByteBuffer b = free.poll();
+			if (b!=null)
+				return b;
+			try
+			{
+				wait(WRITE_WAIT_MILLIS);
+			}
+			catch (InterruptedException ex)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private synchronized void queueFilling()
+	{
+		ByteBuffer b = filling;
+		filling = null;
+		if (ending)
+		{
+			free.add(b.clear());
+			return;
+		}
+		ready.add(b.flip());
+		started = true;
+		notifyAll();
+	}
+
+	/**
+	 * Queues what has been written so far, without waiting for the
+	 * buffer to fill up. Only called by the writer.
+	 */
+	void flush()
+	{
+		if (filling!=null && filling.position() > 0)
+			queueFilling();
+	}
+
+	/**
+	 * Whether the consumer has taken everything that was queued.
+	 */
+	synchronized boolean isDrained()
+	{
+		return ready.isEmpty();
+	}
+
+	/**
+	 * Ends the stream after what has been queued, anything written since
+	 * the last <code>flush</code> is dropped. Can be called from any
+	 * thread.
+	 */
+	synchronized void end()
+	{
+		ending = true;
+		notifyAll();
+	}
+
+	/**
+	 * Ends the stream with a raised cosine fade over the first
+	 * <code>frames</code> of what the consumer hasn't taken yet, the rest
+	 * is dropped. Can be called from any thread, a write in progress
+	 * returns without queuing anything more.
+	 */
+	synchronized void fadeOut(int frames)
+	{
+		ending = true;
+
+		int total = 0;
+		for (ByteBuffer b : ready)
+		{
+			total += b.remaining() / frameSize;
+		}
+		frames = Math.min(frames, total);
+
+		int channels = format.getChannels();
+		ArrayDeque<ByteBuffer> faded = new ArrayDeque<ByteBuffer>();
+		for (int i=0; i<frames; )
+		{
+			ByteBuffer b = ready.poll();
+			int n = Math.min(frames - i, b.remaining() / frameSize);
+			for (int f=0, p=b.position(); f<n; f++, i++)
+			{
+				float g = 0.5F * (1F + (float)Math.cos(Math.PI * (i + 1) / frames));
+				for (int c=0; c<channels; c++, p+=2)
+				{
+					b.putShort(p, (short)Math.round(b.getShort(p) * g));
+				}
+			}
+			b.limit(b.position() + n * frameSize);
+			faded.add(b);
+		}
+		while (!ready.isEmpty())
+		{
+			free.add(ready.poll().clear());
+		}
+		ready.addAll(faded);
+		notifyAll();
+	}
+}
@@ -0,0 +1,338 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+/**
+ * The <code>Resampler</code> converts a stream of interleaved float
+ * samples to another sample rate and channel count, block by block.
+ * <p>
+ * The rate is changed by a polyphase windowed-sinc filter, for a ratio
+ * of <code>up/down</code> in lowest terms there are <code>up</code>
+ * phases of <code>taps</code> coefficients each, and every output sample
+ * takes one phase over the last <code>taps</code> input samples. More
+ * taps give a steeper cutoff and less aliasing for more CPU time.
+ * Channels are mapped after resampling, mono is copied to both sides and
+ * stereo is averaged down to mono.
+ */
+public final class Resampler
+{
+	/** Taps per phase for each quality. */
+	public static final int		LOW_QUALITY = 8;
+	public static final int		MEDIUM_QUALITY = 16;
+	public static final int		HIGH_QUALITY = 32;
+
+	private final int			inChannels;
+	private final int			outChannels;
+	private final int			up;
+	private final int			down;
+	private final int			taps;
+
+	// coefficients of each phase, in the order of the input samples
+	// they are multiplied with, oldest first
+	private final float[]		phases;
+
+	// input frames not yet fully used, in input channels
+	private float[]				history;
+	private int					historyFrames;
+	// newest input frame of the next output frame, and its phase
+	private int					next;
+	private int					phase;
+
+	private float[]				resampled = new float[0];
+	private float[]				buffer = new float[0];
+
+	/**
+	 * @param taps	Taps per phase, at least 2, see the quality constants.
+	 */
+	public Resampler(int inFrequency, int inChannels, int outFrequency, int outChannels, int taps)
+	{
+		if (inFrequency<=0 || outFrequency<=0)
+			throw new IllegalArgumentException("frequency: "+inFrequency+" -> "+outFrequency);
+		if (inChannels<1 || inChannels>2 || outChannels<1 || outChannels>2)
+			throw new IllegalArgumentException("channels: "+inChannels+" -> "+outChannels);
+
+		int gcd = gcd(inFrequency, outFrequency);
+		this.up = outFrequency / gcd;
+		this.down = inFrequency / gcd;
+		this.inChannels = inChannels;
+		this.outChannels = outChannels;
+
+		if (up==down)
+		{
+			// same rate, only the channels are mapped
+			this.taps = 1;
+			this.phases = new float[] { 1F };
+		}
+		else
+		{
+			this.taps = Math.max(2, taps & ~1);
+			this.phases = design(up, down, this.taps);
+		}
+		reset();
+	}
+
+	/**
+	 * True if nothing needs converting.
+	 */
+	public boolean isPassThrough()
+	{
+		return up==down && inChannels==outChannels;
+	}
+
+	/**
+	 * Forgets the input so far, for a new stream.
+	 */
+	public void reset()
+	{
+		history = new float[(taps + 1152) * inChannels];
+		historyFrames = taps - 1;	// silence before the first sample
+		next = taps - 1;
+		phase = 0;
+	}
+
+	/**
+	 * Converts <code>len</code> interleaved input samples, whole frames
+	 * only.
+	 *
+	 * @return the number of output samples, which are in
+	 *		   <code>getBuffer()</code> until the next call.
+	 */
+	public int process(float[] in, int offs, int len)
+	{
+		int frames = len / inChannels;
+		append(in, offs, frames);
+
+		// output frames this input completes
+		int outFrames = 0;
+		long pos = (long)next * up + phase;
+		long end = (long)historyFrames * up;
+		if (pos < end)
+			outFrames = (int)((end - pos + down - 1) / down);
+
+		int outLen = outFrames * inChannels;
+		if (resampled.length < outLen)
+			resampled = new float[outLen];
+
+		if (taps==1)
+			System.arraycopy(history, next * inChannels, resampled, 0, outLen);
+		else if (inChannels==2)
+			filterStereo(outFrames);
+		else
+			filterMono(outFrames);
+
+		next += (int)(((long)phase + (long)outFrames * down) / up);
+		phase = (int)(((long)phase + (long)outFrames * down) % up);
+		discard();
+
+		return map(outFrames);
+	}
+
+	/**
+	 * Pushes the input still held back by the filter through, at the end
+	 * of the stream.
+	 *
+	 * @return the number of output samples, as for <code>process</code>.
+	 */
+	public int drain()
+	{
+		float[] silence = new float[taps / 2 * inChannels];
+		return process(silence, 0, silence.length);
+	}
+
+	/**
+	 * The output of the last <code>process</code> call.
+	 */
+	public float[] getBuffer()
+	{
+		return inChannels==outChannels ? resampled : buffer;
+	}
+
+	/**
+	 * Largest number of output samples <code>len</code> input samples
+	 * can give.
+	 */
+	public int getMaxOutput(int len)
+	{
+		return (int)(((long)len / inChannels * up + down - 1) / down + 1) * outChannels;
+	}
+
+	private void filterStereo(int outFrames)
+	{
+		final float[] h = history;
+		final float[] c = phases;
+		final int t = taps;
+		int n = next;
+		int p = phase;
+		for (int o=0, i=0; o<outFrames; o++)
+		{
+			int cb = p * t;
+			int xb = (n - t + 1) * 2;
+			float l = 0F, r = 0F;
+			for (int k=0; k<t; k++, xb+=2)
+			{
+				float w = c[cb + k];
+				l += w * h[xb];
+				r += w * h[xb + 1];
+			}
+			resampled[i++] = l;
+			resampled[i++] = r;
+
+			p += down;
+			n += p / up;
+			p %= up;
+		}
+	}
+
+	private void filterMono(int outFrames)
+	{
+		final float[] h = history;
+		final float[] c = phases;
+		final int t = taps;
+		int n = next;
+		int p = phase;
+		for (int o=0; o<outFrames; o++)
+		{
+			int cb = p * t;
+			int xb = n - t + 1;
+			float s = 0F;
+			for (int k=0; k<t; k++)
+				s += c[cb + k] * h[xb + k];
+			resampled[o] = s;
+
+			p += down;
+			n += p / up;
+			p %= up;
+		}
+	}
+
+	private int map(int frames)
+	{
+		if (inChannels==outChannels)
+			return frames * outChannels;
+
+		int len = frames * outChannels;
+		if (buffer.length < len)
+			buffer = new float[len];
+
+		if (outChannels==2)
+		{
+			for (int i=0, o=0; i<frames; i++)
+			{
+				float s = resampled[i];
+				buffer[o++] = s;
+				buffer[o++] = s;
+			}
+		}
+		else
+		{
+			for (int i=0; i<frames; i++)
+				buffer[i] = (resampled[2*i] + resampled[2*i + 1]) * 0.5F;
+		}
+		return len;
+	}
+
+	private void append(float[] in, int offs, int frames)
+	{
+		int need = (historyFrames + frames) * inChannels;
+		if (history.length < need)
+		{
+			float[] h = new float[need];
+			System.arraycopy(history, 0, h, 0, historyFrames * inChannels);
+			history = h;
+		}
+		System.arraycopy(in, offs, history, historyFrames * inChannels, frames * inChannels);
+		historyFrames += frames;
+	}
+
+	/**
+	 * Drops the frames no later output needs.
+	 */
+	private void discard()
+	{
+		int drop = Math.min(next - (taps - 1), historyFrames);
+		if (drop <= 0)
+			return;
+
+		System.arraycopy(history, drop * inChannels, history, 0, (historyFrames - drop) * inChannels);
+		historyFrames -= drop;
+		next -= drop;
+	}
+
+	/**
+	 * Splits a Kaiser windowed sinc lowpass into its phases. The cutoff
+	 * is a little below the lower of the two Nyquist frequencies, closer
+	 * to it the more taps there are to make the transition.
+	 */
+	private static float[] design(int up, int down, int taps)
+	{
+		int n = up * taps;
+		double rolloff = taps >= 32 ? 0.94 : taps >= 16 ? 0.9 : 0.8;
+		double beta = taps >= 32 ? 9.0 : taps >= 16 ? 7.0 : 5.0;
+		double cutoff = 0.5 / Math.max(up, down) * rolloff;	// per upsampled sample
+		double center = (n - 1) / 2.0;
+		double i0Beta = besselI0(beta);
+
+		float[] phases = new float[n];
+		for (int p=0; p<up; p++)
+		{
+			double sum = 0;
+			double[] c = new double[taps];
+			for (int k=0; k<taps; k++)
+			{
+				// tap k of the phase goes with the k-th oldest input sample,
+				// which is taps-1-k samples back
+				int j = p + (taps - 1 - k) * up;
+				double x = j - center;
+				double sinc = x==0 ? 1 : Math.sin(2 * Math.PI * cutoff * x) / (2 * Math.PI * cutoff * x);
+				double r = 2 * x / (n - 1);
+				double window = besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+				c[k] = sinc * window;
+				sum += c[k];
+			}
+			// every phase passes DC unchanged
+			for (int k=0; k<taps; k++)
+				phases[p * taps + k] = (float)(c[k] / sum);
+		}
+		return phases;
+	}
+
+	private static double besselI0(double x)
+	{
+		double sum = 1, term = 1;
+		for (int k=1; k<50; k++)
+		{
+			term *= (x / (2 * k)) * (x / (2 * k));
+			sum += term;
+			if (term < 1e-12 * sum)
+				break;
+		}
+		return sum;
+	}
+
+	private static int gcd(int a, int b)
+	{
+		while (b!=0)
+		{
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+}
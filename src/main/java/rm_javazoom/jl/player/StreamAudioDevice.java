@@ -0,0 +1,240 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+
+package rm_javazoom.jl.player;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.sampled.AudioFormat;
+
+import rm_javazoom.jl.decoder.Decoder;
+import rm_javazoom.jl.decoder.FloatSampleBuffer;
+import rm_javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * An <code>AudioDevice</code> that doesn't play anything itself, but
+ * hands the samples to whatever pulls them from its
+ * <code>PcmStream</code>, like a sound engine that plays streams.
+ * Writes wait while the stream's buffers are all queued, so the
+ * consumer sets the pace. Each open starts a new stream.
+ * <p>
+ * The gain is applied to the samples as with
+ * <code>JavaSoundAudioDevice</code>.
+ */
+public class StreamAudioDevice extends AudioDeviceBase implements PcmOutputDevice
+{
+	/**
+	 * Default length of each buffer handed to the consumer.
+	 */
+	public static final int	DEFAULT_BUFFER_MILLIS = 100;
+
+	/**
+	 * Default number of buffers written ahead of what the consumer has
+	 * taken.
+	 */
+	public static final int	DEFAULT_QUEUED_BUFFERS = 2;
+
+	private final int		bufferMillis;
+	private final int		queuedBuffers;
+
+	private AudioFormat		fmt = null;
+	private volatile PcmStream	stream = null;
+
+	// something was written to the stream of the current open
+	private boolean			started = false;
+
+	private short[]			clipBuf = new short[0];
+	private float[]			gainBuf = new float[0];
+
+	private final GainRamp	gain = new GainRamp();
+
+	public StreamAudioDevice()
+	{
+		this(DEFAULT_BUFFER_MILLIS, DEFAULT_QUEUED_BUFFERS);
+	}
+
+	public StreamAudioDevice(int bufferMillis, int queuedBuffers)
+	{
+		this.bufferMillis = Math.max(1, bufferMillis);
+		this.queuedBuffers = Math.max(1, queuedBuffers);
+	}
+
+	public synchronized void open(AudioFormat fmt) throws JavaLayerException
+	{
+		if (!isOpen())
+		{
+			this.fmt = fmt;
+			openImpl();
+			setOpen(true);
+		}
+	}
+
+	protected void openImpl()
+		throws JavaLayerException
+	{
+		if (fmt==null)
+		{
+			Decoder decoder = getDecoder();
+			fmt = new AudioFormat(decoder.getOutputFrequency(), 16, decoder.getOutputChannels(), true, false);
+		}
+		int frameSize = fmt.getChannels() * 2;
+		int bytes = (int)(fmt.getSampleRate() * bufferMillis / 1000) * frameSize;
+		started = false;
+		stream = new PcmStream(fmt.getSampleRate(), fmt.getChannels(), bytes, queuedBuffers + 2);
+	}
+
+	/**
+	 * Called with the first samples written after the device is opened,
+	 * before they go to the stream, for connecting a consumer to it.
+	 * A consumer that attaches any sooner just reads silence until then.
+	 */
+	protected void streamStarted(PcmStream stream)
+		throws JavaLayerException
+	{
+	}
+
+	/**
+	 * The stream of the current open, or <code>null</code> while the
+	 * device is closed.
+	 */
+	public PcmStream getStream()
+	{
+		return stream;
+	}
+
+	protected void closeImpl()
+	{
+		PcmStream s = stream;
+		if (s!=null)
+		{
+			// the consumer still plays out what was flushed to it
+			s.end();
+			stream = null;
+		}
+		// the next open may be for another format, and starts at its gain
+		fmt = null;
+		gain.reset();
+	}
+
+	protected void writeImpl(short[] samples, int offs, int len)
+		throws JavaLayerException
+	{
+		// through the float path, which applies the gain
+		float[] f = getGainBuf(len);
+		for (int i=0; i<len; i++)
+		{
+			f[i] = samples[offs+i];
+		}
+		writeImpl(f, 0, len);
+	}
+
+	protected void writeImpl(float[] samples, int offs, int len)
+		throws JavaLayerException
+	{
+		PcmStream s = stream;
+		if (s==null)
+			return;
+
+		if (!started)
+		{
+			started = true;
+			streamStarted(s);
+		}
+
+		AudioFormat f = s.getFormat();
+		final float[] g = getGainBuf(len);
+		gain.process(samples, offs, g, 0, len, f.getChannels(), f.getSampleRate());
+
+		if (clipBuf.length < len)
+		{
+			clipBuf = new short[len];
+		}
+		final short[] c = clipBuf;
+		for (int i=0; i<len; i++)
+		{
+			c[i] = FloatSampleBuffer.clip(g[i]);
+		}
+		s.write(c, 0, len);
+	}
+
+	private float[] getGainBuf(int len)
+	{
+		if (gainBuf.length < len)
+		{
+			gainBuf = new float[len];
+		}
+		return gainBuf;
+	}
+
+	/**
+	 * Queues what was written and waits until the consumer has taken it
+	 * all, or returns right away when there's no consumer to wait for.
+	 */
+	protected void flushImpl()
+	{
+		PcmStream s = stream;
+		if (s==null)
+			return;
+
+		s.flush();
+		while (!s.isDrained() && s.isAttached() && !s.isEnded())
+		{
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(2));
+		}
+	}
+
+	/**
+	 * Fades out the start of what the consumer hasn't taken yet over
+	 * <code>millis</code> and ends the stream there. What the consumer
+	 * already took, and perhaps queued on its side, still plays.
+	 * Returns right away.
+	 */
+	public void fadeOut(int millis)
+	{
+		PcmStream s = stream;
+		if (s!=null)
+		{
+			s.fadeOut((int)(s.getFormat().getSampleRate() * millis / 1000));
+		}
+	}
+
+	/**
+	 * Milliseconds of audio the consumer has taken since the device was
+	 * opened.
+	 */
+	public int getPosition()
+	{
+		PcmStream s = stream;
+		if (s==null)
+			return 0;
+
+		AudioFormat f = s.getFormat();
+		return (int)(s.getBytesRead() * 1000 / ((long)f.getSampleRate() * f.getFrameSize()));
+	}
+
+	public void setGain(float gain, float dbPerSecond)
+	{
+		this.gain.setTarget(gain, dbPerSecond);
+	}
+
+	public float getGain()
+	{
+		return gain.getTarget();
+	}
+}
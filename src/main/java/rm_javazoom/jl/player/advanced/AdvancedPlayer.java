@@ -26,9 +26,12 @@ import rm_javazoom.jl.decoder.BitstreamException;
 import rm_javazoom.jl.decoder.Decoder;
 import rm_javazoom.jl.decoder.Header;
 import rm_javazoom.jl.decoder.JavaLayerException;
-import rm_javazoom.jl.decoder.SampleBuffer;
+import rm_javazoom.jl.decoder.OutputChannels;
+import rm_javazoom.jl.decoder.FloatSampleBuffer;
+import rm_javazoom.jl.decoder.Source;
 import rm_javazoom.jl.player.AudioDevice;
 import rm_javazoom.jl.player.FactoryRegistry;
+import rm_javazoom.jl.player.PcmCache;
 
 /**
  * a hybrid of javazoom.jl.player.Player tweeked to include <code>play(startFrame, endFrame)</code>
@@ -36,6 +39,14 @@ import rm_javazoom.jl.player.FactoryRegistry;
  */
 public class AdvancedPlayer
 {
+	/**
+	 * Frames decoded without output before the target of a seek. Layer III
+	 * frames reach back up to 511 bytes into earlier frames for their data,
+	 * and the IMDCT and synthesis filter overlap with the frame before, so
+	 * the first frames after a jump would not decode cleanly.
+	 */
+	private static final int SEEK_WARMUP_FRAMES = 3;
+
 	/** The MPEG audio bitstream.*/
 	private Bitstream bitstream;
 	/** The MPEG audio decoder. */
@@ -49,6 +60,14 @@ public class AdvancedPlayer
 	private int lastPosition = 0;
 	/** Listener for the playback process */
 	private PlaybackListener listener;
+	/** Time spent in the decoder, and the playing time of what it decoded. */
+	private long decodeNanos = 0;
+	private long decodedMicros = 0;
+	/** Flush and close the device after the last frame. */
+	private boolean closeAtEnd = true;
+	/** Decoded audio played instead of the bitstream, if any. */
+	private PcmCache.Reader pcm;
+	private float[] pcmBuf = new float[0];
 
 
 	public boolean queuedToStop = false;
@@ -63,11 +82,88 @@ public class AdvancedPlayer
 
 	public AdvancedPlayer(InputStream stream, AudioDevice device) throws JavaLayerException
 	{
-		bitstream = new Bitstream(stream);
+		this(new Bitstream(stream), device);
+	}
+
+	/**
+	 * Creates a player reading from a <code>Source</code>.
+	 */
+	public AdvancedPlayer(Source source, AudioDevice device) throws JavaLayerException
+	{
+		this(new Bitstream(source), device);
+	}
+
+	/**
+	 * Creates a player for a song from a <code>PcmCache</code>, which is
+	 * played without decoding anything. Its blocks count as frames. The
+	 * device has to be told the format of the samples, it is opened with
+	 * a decoder that isn't used.
+	 */
+	public AdvancedPlayer(PcmCache.Reader pcm, AudioDevice device) throws JavaLayerException
+	{
+		this((Bitstream)null, device);
+		this.pcm = pcm;
+	}
+
+	private AdvancedPlayer(Bitstream bitstream, AudioDevice device) throws JavaLayerException
+	{
+		this.bitstream = bitstream;
 
+		// float output, so the pcm path stays in float up to the device
+		Decoder.Params params = Decoder.getDefaultParams();
+		params.setFloatOutput(true);
+		decoder = new Decoder(params);
+		openDevice(device);
+	}
+
+	private void openDevice(AudioDevice device) throws JavaLayerException
+	{
 		if (device!=null) audio = device;
 		else audio = FactoryRegistry.systemRegistry().createAudioDevice();
-		audio.open(decoder = new Decoder());
+		audio.open(decoder);
+	}
+
+	/**
+	 * Starts playing another stream, this player is closed first if it
+	 * is still playing. The bitstream and decoder are reset and used
+	 * again, so switching songs this way allocates next to nothing.
+	 */
+	public synchronized void reset(Source source, AudioDevice device) throws JavaLayerException
+	{
+		close();
+
+		if (bitstream==null)
+			bitstream = new Bitstream(source);
+		else
+			bitstream.reset(source);
+		decoder.reset();
+		pcm = null;
+		resetState();
+		openDevice(device);
+	}
+
+	/**
+	 * Starts playing a song from a <code>PcmCache</code>, like
+	 * <code>reset(Source, AudioDevice)</code>.
+	 */
+	public synchronized void reset(PcmCache.Reader pcm, AudioDevice device) throws JavaLayerException
+	{
+		close();
+
+		this.pcm = pcm;
+		resetState();
+		openDevice(device);
+	}
+
+	private void resetState()
+	{
+		closed = false;
+		complete = false;
+		lastPosition = 0;
+		queuedToStop = false;
+		frames = 0;
+		decodeNanos = 0;
+		decodedMicros = 0;
 	}
 
 	public void play() throws JavaLayerException
@@ -97,7 +193,7 @@ public class AdvancedPlayer
 
 
 
-//		if (!ret)
+		if (!ret && closeAtEnd)
 		{
 			// last frame, ensure all data flushed to the audio device.
 			AudioDevice out = audio;
@@ -117,6 +213,17 @@ public class AdvancedPlayer
 		return ret;
 	}
 
+	/**
+	 * If false, <code>play()</code> returns after the last frame without
+	 * waiting for it to be heard, the device stays open until the player
+	 * is closed. The caller can then play out what's buffered without
+	 * being blocked. True by default.
+	 */
+	public void setCloseAtEnd(boolean close)
+	{
+		closeAtEnd = close;
+	}
+
 	/**
 	 * Cloases this player. Any audio currently playing is stopped
 	 * immediately.
@@ -132,6 +239,11 @@ public class AdvancedPlayer
 			// calling this method.
 			out.close();
 			lastPosition = out.getPosition();
+			if (pcm!=null)
+			{
+				pcm.close();
+				return;
+			}
 			try
 			{
 				bitstream.close();
@@ -159,12 +271,17 @@ public class AdvancedPlayer
 			AudioDevice out = audio;
 			if (out == null) return false;
 
+			if (pcm != null) return readBlock();
+
 			Header h = bitstream.readFrame();
 			if (h == null) return false;
 			frames++; // XXX ~Vazkii
 			
 			// sample buffer set when decoder constructed
-			SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+			long start = System.nanoTime();
+			FloatSampleBuffer output = (FloatSampleBuffer) decoder.decodeFrame(h, bitstream);
+			decodeNanos += System.nanoTime() - start;
+			decodedMicros += output.getBufferLength() * 1000000L / (output.getChannelCount() * output.getSampleFrequency());
 
 			synchronized (this)
 			{
@@ -184,16 +301,39 @@ public class AdvancedPlayer
 		return true;
 	}
 
+	/**
+	 * Plays the next block of a cached song.
+	 *
+	 * @return false at the end of the song.
+	 */
+	private boolean readBlock() throws JavaLayerException
+	{
+		if (pcmBuf.length < pcm.getBlockSize())
+			pcmBuf = new float[pcm.getBlockSize()];
+
+		int n = pcm.read(pcmBuf);
+		if (n == 0) return false;
+		frames++;
+		decodedMicros += n * 1000000L / (pcm.getChannels() * pcm.getFrequency());
+
+		synchronized (this)
+		{
+			AudioDevice out = audio;
+			if (out != null)
+			{
+				out.write(pcmBuf, 0, n);
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * skips over a single frame
 	 * @return false	if there are no more frames to decode, true otherwise.
 	 */
 	protected boolean skipFrame() throws JavaLayerException
 	{
-		Header h = bitstream.readFrame();
-		if (h == null) return false;
-		bitstream.closeFrame();
-		return true;
+		return bitstream.skipFrame();
 	}
 
 	/**
@@ -204,13 +344,59 @@ public class AdvancedPlayer
 	 */
 	public boolean play(final int start, final int end) throws JavaLayerException
 	{
-		boolean ret = true;
-		int offset = start;
-		frames = start; // XXX ~Vazkii
-		while (offset-- > 0 && ret) ret = skipFrame();
+		seekFrame(start);
 		return play(end - start);
 	}
 
+	/**
+	 * Moves playback forward to a frame. Frames are skipped from the
+	 * current position by their headers, only the last few before the
+	 * target are decoded.
+	 *
+	 * @return the frame playback continues at.
+	 */
+	public int seekFrame(int frame) throws JavaLayerException
+	{
+		if (pcm!=null)
+		{
+			pcm.seekMillis((long)frame * PcmCache.BLOCK_FRAMES * 1000 / pcm.getFrequency());
+			frames = frame;
+			return frame;
+		}
+
+		if (frame < frames)
+			throw new JavaLayerException("can't seek backwards in this stream");
+		if (frame == frames)
+			return frames;
+
+		// skipped frames are not decoded at all, only the last few before the target
+		int current = frames;
+		while (current < frame - SEEK_WARMUP_FRAMES && skipFrame())
+			current++;
+		if (current > frames)
+			decoder.seekNotify();
+
+		// decode up to the target without output, to fill the bit reservoir and filters
+		try
+		{
+			while (current < frame)
+			{
+				Header h = bitstream.readFrame();
+				if (h == null) break;
+				decoder.decodeFrame(h, bitstream);
+				bitstream.closeFrame();
+				current++;
+			}
+		}
+		catch (RuntimeException ex)
+		{
+			throw new JavaLayerException("Exception decoding audio frame", ex);
+		}
+
+		frames = current;
+		return current;
+	}
+
 	/**
 	 * Constructs a <code>PlaybackEvent</code>
 	 */
@@ -264,6 +450,36 @@ public class AdvancedPlayer
 		return audio;
 	}
 
+	/**
+	 * Changes the output channels and synthesis quality of the decoder
+	 * for the next stream, see <code>Decoder.setParams()</code>. The
+	 * audio device plays whatever format the decoder puts out.
+	 */
+	public void setDecoderParams(OutputChannels channels, int quality)
+	{
+		Decoder.Params params = Decoder.getDefaultParams();
+		params.setFloatOutput(true);
+		params.setOutputChannels(channels);
+		params.setQuality(quality);
+		decoder.setParams(params);
+	}
+
+	/**
+	 * Time spent decoding the frames played so far, in nanoseconds.
+	 */
+	public long getDecodeNanos()
+	{
+		return decodeNanos;
+	}
+
+	/**
+	 * Playing time of the frames played so far, in microseconds.
+	 */
+	public long getDecodedMicros()
+	{
+		return decodedMicros;
+	}
+
 
 	int frames = 0;
 	public int getFrames() {
@@ -274,5 +490,12 @@ public class AdvancedPlayer
 		return decoder;
 	}
 
+	/**
+	 * The bitstream being decoded, or null while playing from a cache.
+	 */
+	public Bitstream getBitstream() {
+		return pcm == null ? bitstream : null;
+	}
+
 	public boolean getComplete() { return complete; }
 }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package rm_javazoom.jl.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class BitstreamTest
+{
+	/**
+	 * Random bytes with a header that looks valid every so often, but
+	 * not right at the start. The frames they announce aren't followed
+	 * by another header.
+	 */
+	static byte[] junk(int length, Random random)
+	{
+		byte[] junk = new byte[length];
+		random.nextBytes(junk);
+		for (int i=1+random.nextInt(50); i+4<=length; i+=50+random.nextInt(200))
+		{
+			junk[i] = (byte)0xFF;
+			junk[i+1] = (byte)0xFB;
+			junk[i+2] = (byte)0x90;
+			junk[i+3] = (byte)0x64;
+		}
+		return junk;
+	}
+
+	static byte[] insert(byte[] data, int at, byte[] junk)
+	{
+		byte[] result = new byte[data.length + junk.length];
+		System.arraycopy(data, 0, result, 0, at);
+		System.arraycopy(junk, 0, result, at, junk.length);
+		System.arraycopy(data, at, result, at + junk.length, data.length - at);
+		return result;
+	}
+
+	static Bitstream bitstream(byte[] data)
+	{
+		return new Bitstream(new ByteArrayInputStream(data));
+	}
+
+	/**
+	 * Decodes every frame left in <code>bitstream</code>.
+	 *
+	 * @return the number of frames.
+	 */
+	static int decode(Bitstream bitstream) throws Exception
+	{
+		Decoder decoder = new Decoder();
+		int frames = 0;
+		Header header;
+		while ((header = bitstream.readFrame()) != null)
+		{
+			decoder.decodeFrame(header, bitstream);
+			bitstream.closeFrame();
+			frames++;
+		}
+		return frames;
+	}
+
+	@Test
+	void resyncsOverJunkBeforeTheFirstFrame() throws Exception
+	{
+		byte[] data = FrameIndexTest.song("Myth");
+		int first = (int)FrameIndexTest.scan(data).getSeekPointOffset(0);
+		byte[] junk = junk(64 * 1024, new Random(15));
+
+		Bitstream bitstream = bitstream(insert(data, first, junk));
+		assertEquals(DecoderTest.decode(bitstream(data), new Decoder()), DecoderTest.decode(bitstream, new Decoder()));
+		assertEquals(1, bitstream.getResyncs());
+		assertEquals(junk.length, bitstream.getSkippedBytes());
+	}
+
+	/**
+	 * The frame before the junk isn't followed by a header, so it's
+	 * passed over with the junk. The next frames then find the bit
+	 * reservoir short, that mustn't stop decoding.
+	 */
+	@Test
+	void resyncsOverJunkBetweenFrames() throws Exception
+	{
+		byte[] data = FrameIndexTest.song("Myth");
+		FrameIndex index = FrameIndexTest.scan(data);
+		Random random = new Random(16);
+		byte[] damaged = data;
+		long skipped = 0;
+		// from the back, so the offsets of the frames before stay valid
+		for (int frame=4000; frame>0; frame-=1000)
+		{
+			byte[] junk = junk(1 + random.nextInt(5000), random);
+			damaged = insert(damaged, (int)index.getSeekPointOffset(frame), junk);
+			// the search for the next header starts after that of the dropped frame
+			skipped += junk.length + index.getSeekPointOffset(frame) - index.getSeekPointOffset(frame - 1) - 4;
+		}
+
+		Bitstream bitstream = bitstream(damaged);
+		assertEquals(decode(bitstream(data)) - 4, decode(bitstream));
+		assertEquals(4, bitstream.getResyncs());
+		assertEquals(skipped, bitstream.getSkippedBytes());
+	}
+
+	/**
+	 * Damaged frame data used to make the Huffman decoder write past
+	 * the end of a granule.
+	 */
+	@Test
+	void decodesDamagedFrames() throws Exception
+	{
+		byte[] data = FrameIndexTest.song("Myth");
+		Random random = new Random(17);
+		for (int i=0; i<100; i++)
+		{
+			byte[] junk = junk(1 + random.nextInt(2000), random);
+			System.arraycopy(junk, 0, data, random.nextInt(data.length - junk.length), junk.length);
+		}
+
+		Bitstream bitstream = bitstream(data);
+		assertTrue(decode(bitstream) > 0);
+		assertTrue(bitstream.getResyncs() > 0);
+	}
+
+	@Test
+	void endsAtTagsAfterTheLastFrame() throws Exception
+	{
+		byte[] data = FrameIndexTest.song("Myth");
+		byte[] tag = junk(128, new Random(18));
+		tag[0] = 'T';
+		tag[1] = 'A';
+		tag[2] = 'G';
+
+		Bitstream bitstream = bitstream(insert(data, data.length, tag));
+		assertEquals(DecoderTest.decode(bitstream(data), new Decoder()), DecoderTest.decode(bitstream, new Decoder()));
+		assertEquals(0, bitstream.getResyncs());
+		assertEquals(0, bitstream.getSkippedBytes());
+	}
+
+	@Test
+	void findsNoFramesInJunk() throws Exception
+	{
+		Bitstream bitstream = bitstream(junk(64 * 1024, new Random(19)));
+		assertNull(bitstream.readFrame());
+		assertTrue(bitstream.getResyncs() <= 1);
+	}
+}
@@ -0,0 +1,146 @@
+package rm_javazoom.jl.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.Test;
+
+class DecoderTest
+{
+	/**
+	 * MD5 of the 16 bit little-endian PCM of every frame left in
+	 * <code>bitstream</code>.
+	 */
+	static String decode(Bitstream bitstream, Decoder decoder) throws Exception
+	{
+		return decode(bitstream, decoder, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * MD5 of the PCM of at most <code>frames</code> frames.
+	 */
+	static String decode(Bitstream bitstream, Decoder decoder, int frames) throws Exception
+	{
+		MessageDigest md5 = MessageDigest.getInstance("MD5");
+		byte[] bytes = new byte[0];
+		Header header;
+		for (int f=0; f<frames && (header = bitstream.readFrame()) != null; f++)
+		{
+			SampleBuffer output = (SampleBuffer)decoder.decodeFrame(header, bitstream);
+			short[] samples = output.getBuffer();
+			int n = output.getBufferLength();
+			if (bytes.length < 2 * n)
+				bytes = new byte[2 * n];
+			for (int i=0; i<n; i++)
+			{
+				bytes[2*i] = (byte)samples[i];
+				bytes[2*i + 1] = (byte)(samples[i] >> 8);
+			}
+			md5.update(bytes, 0, 2 * n);
+			bitstream.closeFrame();
+		}
+		return HexFormat.of().formatHex(md5.digest());
+	}
+
+	static String decode(String name) throws Exception
+	{
+		return decode(new Bitstream(new ByteArrayInputStream(FrameIndexTest.song(name))), new Decoder());
+	}
+
+	/**
+	 * Pins the output of the whole Layer III path, Huffman tables, bit
+	 * reservoir, dequantization, IMDCT and synthesis. The hashes were
+	 * taken once every sample was checked to be within 1 LSB of the
+	 * original JLayer decoder, which is as close as regrouped float math
+	 * gets. Any change here needs that check again.
+	 */
+	@Test
+	void decodesBundledSongsBitExact() throws Exception
+	{
+		String[][] songs = {
+			// name, vector synthesis, scalar synthesis
+			{ "Storm", "17a63c72e36d04ea832a7aa6ebaca356", "65209687c25ed9bdc4a97768fce4059c" },
+			{ "Myth", "74bed3f2f56d46a73db0796442dc70c5", "c9270573c87afa1382239ce5d3e27e32" },
+			{ "Clarity", "79a815cc3d6fc89f4f620af62fed2bc1", "186e592d50eb3d7b03d107308678208c" },
+		};
+		for (String[] song : songs)
+			assertEquals(SynthesisFilter.USE_VECTOR_API ? song[1] : song[2], decode(song[0]), song[0]);
+	}
+
+	/**
+	 * Songs of another sample rate in between, so the decoder switches
+	 * between the components it keeps for each format.
+	 */
+	private static final String[] SWITCHED_SONGS = { "Storm", "WandererP2", "Myth", "Storm", "Clarity", "WandererP2" };
+
+	static ByteBufferSource source(byte[] data)
+	{
+		return new ByteBufferSource(ByteBuffer.wrap(data));
+	}
+
+	@Test
+	void decodesTheSameAfterReset() throws Exception
+	{
+		Bitstream bitstream = null;
+		Decoder decoder = new Decoder();
+		for (String name : SWITCHED_SONGS)
+		{
+			byte[] data = FrameIndexTest.song(name);
+			if (bitstream == null)
+				bitstream = new Bitstream(source(data));
+			else
+				bitstream.reset(source(data));
+			decoder.reset();
+
+			String fresh = decode(new Bitstream(source(data)), new Decoder(), 500);
+			assertEquals(fresh, decode(bitstream, decoder, 500), name);
+		}
+	}
+
+	/**
+	 * Everything the decoder needs is kept across songs, a switch
+	 * allocated about 68 KB before.
+	 */
+	@Test
+	void switchesSongsWithoutAllocating() throws Exception
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		byte[][] songs = new byte[SWITCHED_SONGS.length][];
+		for (int i=0; i<songs.length; i++)
+			songs[i] = FrameIndexTest.song(SWITCHED_SONGS[i]);
+
+		int rounds = 20;
+		ByteBufferSource[] sources = new ByteBufferSource[rounds * songs.length];
+		for (int i=0; i<sources.length; i++)
+			sources[i] = source(songs[i % songs.length]);
+
+		Bitstream bitstream = new Bitstream(source(songs[0]));
+		Decoder decoder = new Decoder();
+		long allocated = 0;
+		for (int i=0; i<sources.length; i++)
+		{
+			// the first round allocates what is kept
+			if (i == songs.length)
+				allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+			bitstream.reset(sources[i]);
+			decoder.reset();
+			Header header;
+			for (int f=0; f<10 && (header = bitstream.readFrame()) != null; f++)
+			{
+				decoder.decodeFrame(header, bitstream);
+				bitstream.closeFrame();
+			}
+		}
+		allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+
+		long perSwitch = allocated / (sources.length - songs.length);
+		assertTrue(perSwitch < 4096, perSwitch + " bytes per switch");
+	}
+}
@@ -0,0 +1,92 @@
+package rm_javazoom.jl.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FrameIndexTest
+{
+	static byte[] song(String name) throws IOException
+	{
+		try (InputStream in = FrameIndexTest.class.getResourceAsStream("/musicpack/music/" + name + ".mp3"))
+		{
+			assertNotNull(in, name);
+			return in.readAllBytes();
+		}
+	}
+
+	static FrameIndex scan(byte[] data) throws IOException
+	{
+		return FrameIndex.scan(new ByteBufferSource(ByteBuffer.wrap(data)));
+	}
+
+	@Test
+	void indexesEveryFrameBitstreamReads() throws Exception
+	{
+		byte[] data = song("Storm");
+		FrameIndex index = scan(data);
+		assertNotNull(index);
+		assertTrue(index.isExact());
+
+		Bitstream bitstream = new Bitstream(new ByteArrayInputStream(data));
+		int frames = 0;
+		while (bitstream.readFrame() != null)
+		{
+			bitstream.closeFrame();
+			frames++;
+		}
+		assertEquals(frames, index.getFrameCount());
+		assertEquals(index.getFrameCount() * 1152L * 1000 / index.getFrequency(), index.getDurationMillis());
+	}
+
+	/**
+	 * Songs cut off part way with garbage after them, the garbage used to
+	 * slide the scan window past the frame the search went back to.
+	 */
+	@Test
+	void scansTruncatedSongsWithJunk() throws Exception
+	{
+		for (String name : new String[] { "Storm", "Myth" })
+		{
+			byte[] data = song(name);
+			FrameIndex full = scan(data);
+			Random random = new Random(1);
+			for (int cut = 4; cut < full.getFrameCount(); cut += 3)
+			{
+				int end = (int)full.getSeekPointOffset(cut);
+				byte[] cutData = new byte[end + 1 + random.nextInt(3000)];
+				System.arraycopy(data, 0, cutData, 0, end);
+				byte[] junk = new byte[cutData.length - end];
+				random.nextBytes(junk);
+				System.arraycopy(junk, 0, cutData, end, junk.length);
+
+				FrameIndex index = scan(cutData);
+				assertNotNull(index, name + " cut at " + cut);
+				// the last whole frame isn't followed by another one, so it may be dropped
+				int frames = index.getFrameCount();
+				assertTrue(frames == cut || frames == cut - 1, name + " cut at " + cut + " has " + frames + " frames");
+				for (int i=0; i<frames; i++)
+					assertEquals(full.getSeekPointOffset(i), index.getSeekPointOffset(i));
+			}
+		}
+	}
+
+	@Test
+	void seeksByMillis() throws Exception
+	{
+		FrameIndex index = scan(song("Myth"));
+		int frame = index.frameAtMillis(60000);
+		assertTrue(index.millisAtFrame(frame) <= 60000 && index.millisAtFrame(frame + 1) > 60000);
+		assertEquals(frame, index.getSeekPoint(frame));
+		assertEquals(index.getFrameCount(), index.frameAtMillis(Long.MAX_VALUE / 1000000));
+		assertEquals(0, index.frameAtMillis(-5));
+	}
+}
@@ -0,0 +1,202 @@
+package rm_javazoom.jl.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Layer I and II, which LayerIIDecoder extends. There's no such music
+ * bundled, so the frames are made up: valid headers and side info with
+ * random samples.
+ */
+class LayerIDecoderTest
+{
+	// MPEG-1, 48 kHz, no CRC
+	private static final int LAYER1_384K = 0xFFFFC400;		// 384 bytes a frame
+	private static final int LAYER2_384K = 0xFFFDE400;		// 1152 bytes a frame
+	private static final int LAYER2_192K = 0xFFFDA400;		// 576 bytes a frame
+
+	private static final int STEREO = 0x00;
+	private static final int MONO = 0xC0;
+
+	/**
+	 * Writes a frame MSB first.
+	 */
+	static final class BitWriter
+	{
+		private final byte[] frame;
+		private int pos = 0;
+
+		BitWriter(int size)
+		{
+			frame = new byte[size];
+		}
+
+		void write(int value, int bits)
+		{
+			for (int i=bits-1; i>=0; i--, pos++)
+			{
+				if (((value >>> i) & 1) != 0)
+					frame[pos >> 3] |= (byte)(0x80 >>> (pos & 7));
+			}
+		}
+	}
+
+	/**
+	 * Layer I frames with allocations small enough that the samples fit
+	 * the frame, and valid scalefactors.
+	 */
+	static byte[] layer1(int mode, int frames, Random random)
+	{
+		int channels = mode == MONO ? 1 : 2;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int f=0; f<frames; f++)
+		{
+			BitWriter frame = new BitWriter(384);
+			frame.write(LAYER1_384K | mode, 32);
+			int[] allocation = new int[32 * channels];
+			for (int i=0; i<allocation.length; i++)
+			{
+				allocation[i] = random.nextInt(3);
+				frame.write(allocation[i], 4);
+			}
+			for (int i=0; i<allocation.length; i++)
+			{
+				if (allocation[i] != 0)
+					frame.write(random.nextInt(63), 6);
+			}
+			for (int s=0; s<12; s++)
+			{
+				for (int i=0; i<allocation.length; i++)
+				{
+					if (allocation[i] != 0)
+						frame.write(random.nextInt(), allocation[i] + 1);
+				}
+			}
+			out.writeBytes(frame.frame);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Layer II frames of random data, for mono at 192 kb/s that is
+	 * always valid.
+	 */
+	static byte[] layer2Mono(int frames, Random random)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int f=0; f<frames; f++)
+		{
+			byte[] frame = new byte[576];
+			random.nextBytes(frame);
+			frame[0] = (byte)(LAYER2_192K >>> 24);
+			frame[1] = (byte)(LAYER2_192K >>> 16);
+			frame[2] = (byte)(LAYER2_192K >>> 8);
+			frame[3] = (byte)MONO;
+			out.writeBytes(frame);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Layer II stereo frames with nothing allocated, silence.
+	 */
+	static byte[] layer2Silence(int frames)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int f=0; f<frames; f++)
+		{
+			BitWriter frame = new BitWriter(1152);
+			frame.write(LAYER2_384K | STEREO, 32);
+			out.writeBytes(frame.frame);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes all frames of <code>data</code>, and measures what the
+	 * last <code>measured</code> of them allocate.
+	 *
+	 * @return bytes allocated per measured frame.
+	 */
+	static long allocatedPerFrame(byte[] data, int frames, int measured) throws Exception
+	{
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long id = Thread.currentThread().getId();
+		Bitstream bitstream = new Bitstream(new ByteArrayInputStream(data));
+		Decoder decoder = new Decoder();
+		long allocated = 0;
+		int decoded = 0;
+		Header header;
+		while ((header = bitstream.readFrame()) != null)
+		{
+			if (decoded == frames - measured)
+				allocated = threads.getThreadAllocatedBytes(id);
+			decoder.decodeFrame(header, bitstream);
+			bitstream.closeFrame();
+			decoded++;
+		}
+		allocated = threads.getThreadAllocatedBytes(id) - allocated;
+		assertEquals(frames, decoded);
+		return allocated / measured;
+	}
+
+	static byte[][] streams()
+	{
+		Random random = new Random(17);
+		return new byte[][] {
+			layer1(STEREO, 500, random),
+			layer1(MONO, 500, random),
+			layer2Mono(500, random),
+			layer2Silence(500),
+		};
+	}
+
+	/**
+	 * Hashes taken with the decoder that created the subbands for every
+	 * frame.
+	 */
+	@Test
+	void decodesLikeBefore() throws Exception
+	{
+		String[][] expected = {
+			// vector synthesis, scalar synthesis
+			{ "6140d739964a549060605da70754b3d5", "7b3f5623354fc99e43904d439aedf389" },
+			{ "cfb5ae4add1fa1599ea02ceb8342135c", "8bf54aaca2be00d3a2366eb15c45783f" },
+			{ "d18aff075df64dac8eea9890a0707e81", "382480aa300c09675d0543cd47c7dc2d" },
+			{ "eb0145f2ea18e860146c84b97e9f25dd", "eb0145f2ea18e860146c84b97e9f25dd" },
+		};
+		byte[][] streams = streams();
+		for (int i=0; i<streams.length; i++)
+		{
+			String md5 = DecoderTest.decode(new Bitstream(new ByteArrayInputStream(streams[i])), new Decoder());
+			assertEquals(expected[i][SynthesisFilter.USE_VECTOR_API ? 0 : 1], md5, "stream " + i);
+		}
+	}
+
+	/**
+	 * The subbands used to be created again for every frame, 7-8 KB a
+	 * Layer II frame.
+	 */
+	@Test
+	void decodesWithoutAllocating() throws Exception
+	{
+		byte[][] streams = streams();
+
+		// until the decoder is compiled, some of it allocates where it won't later
+		for (byte[] stream : streams)
+			allocatedPerFrame(stream, 500, 400);
+
+		for (int i=0; i<streams.length; i++)
+		{
+			long perFrame = allocatedPerFrame(streams[i], 500, 400);
+			assertTrue(perFrame < 64, "stream " + i + " allocates " + perFrame + " bytes a frame");
+		}
+	}
+}
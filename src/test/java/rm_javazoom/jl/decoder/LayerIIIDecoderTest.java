@@ -0,0 +1,52 @@
+package rm_javazoom.jl.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LayerIIIDecoderTest
+{
+	/**
+	 * The largest value a big_values pair can carry is 15 plus 13
+	 * linbits, there's no Math.pow fallback past the table anymore.
+	 */
+	@Test
+	void t43CoversEveryQuantizedValue()
+	{
+		assertEquals(15 + (1 << 13), LayerIIIDecoder.t_43.length);
+		for (int i=0; i<LayerIIIDecoder.t_43.length; i++)
+			assertEquals((float)Math.pow(i, 4.0 / 3.0), LayerIIIDecoder.t_43[i], "t_43[" + i + "]");
+	}
+
+	/**
+	 * dequantize_sample multiplies by one combined gain instead of
+	 * applying the global gain and the scalefactor one after the other,
+	 * that may only move the result by rounding.
+	 */
+	@Test
+	void dequantizesLikeSeparateGains()
+	{
+		float[] t43 = LayerIIIDecoder.t_43;
+		float[] scalefactors = LayerIIIDecoder.two_to_negative_half_pow;
+		int worst = 0;
+		for (int globalGain=0; globalGain<256; globalGain++)
+		{
+			float globalGainPow = (float)Math.pow(2.0, (0.25 * (globalGain - 210.0)));
+			assertEquals(globalGainPow, LayerIIIDecoder.global_gain_pow[globalGain]);
+
+			for (int idx=0; idx<scalefactors.length; idx++)
+			{
+				float gain = LayerIIIDecoder.global_gain_pow[globalGain] * scalefactors[idx];
+				for (int abv=1; abv<t43.length; abv+=37)
+				{
+					float separate = globalGainPow * t43[abv] * scalefactors[idx];
+					float combined = t43[abv] * gain;
+					int ulps = Math.abs(Float.floatToIntBits(combined) - Float.floatToIntBits(separate));
+					worst = Math.max(worst, ulps);
+				}
+			}
+		}
+		assertTrue(worst <= 1, "off by " + worst + " ulps");
+	}
+}
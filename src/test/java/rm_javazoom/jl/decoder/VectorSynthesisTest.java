@@ -0,0 +1,72 @@
+package rm_javazoom.jl.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class VectorSynthesisTest
+{
+	/**
+	 * Every lane runs the same chain of fused multiply-adds as a scalar
+	 * loop would, so the samples match exactly, for every width the
+	 * platform's vectors fit.
+	 */
+	@Test
+	void matchesScalarDotProducts()
+	{
+		// VectorSynthesis can't be loaded without the module
+		if (!SynthesisFilter.USE_VECTOR_API)
+			return;
+
+		Random random = new Random(6);
+		for (int width=32; width>=8; width/=2)
+		{
+			if (!VectorSynthesis.isSupported(width))
+				continue;
+
+			int inc = 32 / width;
+			VectorSynthesis synthesis = new VectorSynthesis(width);
+			float[] v1 = new float[512];
+			float[] v2 = new float[512];
+			float[] dw = new float[16 * width];
+			float[] t1 = new float[16 * width];
+			float[] t2 = new float[16 * width];
+			float[] out = new float[width];
+			float[] expected = new float[width];
+
+			for (int step=0; step<48; step++)
+			{
+				int pos = step & 15;
+				for (int k=0; k<512; k++)
+				{
+					v1[k] = random.nextFloat() * 2 - 1;
+					v2[k] = random.nextFloat() * 2 - 1;
+				}
+				for (int k=0; k<dw.length; k++)
+					dw[k] = random.nextFloat() * 2 - 1;
+				float scalefactor = 32767.0f * random.nextFloat();
+
+				// only the column at pos is taken from the V vectors each step
+				for (int i=0; i<width; i++)
+				{
+					t1[width*pos + i] = v1[16*inc*i + pos];
+					t2[width*pos + i] = v2[16*inc*i + pos];
+				}
+				boolean first = (step & 1) == 0;
+				float[] t = first ? t1 : t2;
+				for (int i=0; i<width; i++)
+				{
+					float acc = t[i] * dw[i];
+					for (int j=1; j<16; j++)
+						acc = Math.fma(t[width*j + i], dw[width*j + i], acc);
+					expected[i] = acc * scalefactor;
+				}
+
+				synthesis.compute_pcm_samples(v1, v2, first ? v1 : v2, pos, dw, scalefactor, out);
+				assertArrayEquals(expected, out, "width " + width + " step " + step);
+			}
+		}
+	}
+}
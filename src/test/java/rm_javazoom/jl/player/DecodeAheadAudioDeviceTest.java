@@ -0,0 +1,89 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import rm_javazoom.jl.decoder.Decoder;
+
+class DecodeAheadAudioDeviceTest
+{
+	private static final int FREQUENCY = 44100;
+	private static final int BLOCK = 2304;
+	// the output thread takes two blocks at a time
+	private static final int CHUNK = 2 * BLOCK;
+
+	static DecodeAheadAudioDevice open(GatedAudioDevice device, int leadMillis, int lowWatermarkMillis) throws Exception
+	{
+		DecodeAheadAudioDevice ahead = new DecodeAheadAudioDevice(device, leadMillis, lowWatermarkMillis);
+		ahead.setInputFormat(FREQUENCY, 2, BLOCK);
+		ahead.open(new Decoder());
+		return ahead;
+	}
+
+	@Test
+	void refillsBetweenTheWatermarks() throws Exception
+	{
+		GatedAudioDevice device = new GatedAudioDevice(FREQUENCY, 2);
+		// 8820 and 4410 samples
+		DecodeAheadAudioDevice ahead = open(device, 100, 50);
+		float[] block = PcmRingBufferTest.ramp(0, BLOCK);
+
+		assertEquals(0, ahead.getMillisUntilRefill());
+		ahead.write(block, 0, BLOCK);
+		assertEquals(0, ahead.getMillisUntilRefill());
+
+		// past the low watermark output starts, and takes a chunk it can't hand on yet
+		ahead.write(block, 0, BLOCK);
+		StreamAudioDeviceTest.await(device::isWaiting, "output to start");
+		assertEquals(0, ahead.getBufferedMillis());
+
+		// the lead is built up to the high watermark again before the decoder may rest
+		for (int i=0; i<3; i++)
+		{
+			ahead.write(block, 0, BLOCK);
+			assertEquals(0, ahead.getMillisUntilRefill(), "after block " + i);
+		}
+		ahead.write(block, 0, BLOCK);
+		assertEquals((4 * BLOCK - 4410) * 1000 / (2 * FREQUENCY), ahead.getMillisUntilRefill());
+
+		// above the low watermark it may rest a little longer
+		device.allow(CHUNK);
+		StreamAudioDeviceTest.await(() -> ahead.getBufferedMillis() < 100 && device.isWaiting(), "the next chunk");
+		assertEquals(1000 * (2 * BLOCK) / (2 * FREQUENCY), ahead.getBufferedMillis());
+		assertEquals(Math.max(1, (2 * BLOCK - 4410) * 1000 / (2 * FREQUENCY)), ahead.getMillisUntilRefill());
+
+		// at the low watermark it must refill up to the high one
+		device.allow(CHUNK);
+		StreamAudioDeviceTest.await(() -> ahead.getBufferedMillis()==0, "the next chunk");
+		assertEquals(0, ahead.getMillisUntilRefill());
+		ahead.write(block, 0, BLOCK);
+		assertEquals(0, ahead.getMillisUntilRefill());
+
+		device.allowAll();
+		ahead.close();
+	}
+
+	@Test
+	void playsEverythingInOrder() throws Exception
+	{
+		GatedAudioDevice device = new GatedAudioDevice(FREQUENCY, 2);
+		device.allowAll();
+		DecodeAheadAudioDevice ahead = open(device, 100, 50);
+
+		int len = 100 * BLOCK;
+		float[] song = PcmRingBufferTest.ramp(1, len);
+		for (int offs=0; offs<len; offs+=BLOCK)
+		{
+			while (ahead.getMillisUntilRefill() > 0)
+				Thread.sleep(1);
+			ahead.write(song, offs, BLOCK);
+		}
+		ahead.flush();
+		assertTrue(ahead.isPlayedOut());
+		assertArrayEquals(song, device.played());
+		ahead.close();
+	}
+}
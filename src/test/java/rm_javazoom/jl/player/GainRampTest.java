@@ -0,0 +1,94 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class GainRampTest
+{
+	private static final int FREQUENCY = 44100;
+
+	// 0 to -40 dB at 200 dB per second takes 200 ms
+	private static final int RAMP_FRAMES = FREQUENCY / 5;
+
+	/**
+	 * Ramps stereo samples of 1 down to -40 dB, processed in blocks of
+	 * <code>block</code> frames with the target set again before each.
+	 */
+	static float[] rampDown(int block)
+	{
+		GainRamp ramp = new GainRamp();
+		float[] ones = new float[2 * block];
+		Arrays.fill(ones, 1F);
+		// the first samples start out at the target
+		ramp.process(ones, 0, new float[2 * block], 0, 2 * block, 2, FREQUENCY);
+
+		float[] out = new float[2 * (RAMP_FRAMES + FREQUENCY / 10)];
+		for (int offs=0; offs<out.length; offs+=2 * block)
+		{
+			// like a volume that's sent again every tick
+			ramp.setTarget(-40F, 200F);
+			ramp.process(ones, 0, out, offs, Math.min(2 * block, out.length - offs), 2, FREQUENCY);
+		}
+		return out;
+	}
+
+	@Test
+	void rampsAtAConstantRateInDecibels()
+	{
+		float[] out = rampDown(1152);
+		for (int f=0; f<RAMP_FRAMES - 1; f++)
+		{
+			double db = 20 * Math.log10(out[2 * f]);
+			assertEquals(-200.0 * (f + 1) / FREQUENCY, db, 0.01, "frame " + f);
+			assertEquals(out[2 * f], out[2 * f + 1], "frame " + f);
+		}
+		for (int f=RAMP_FRAMES + 1; f<out.length / 2; f++)
+			assertEquals(0.01F, out[2 * f], 1e-6F, "frame " + f);
+	}
+
+	@Test
+	void reachesTheTargetInTheSameTimeForAnyBlockSize()
+	{
+		float[] reference = rampDown(1152);
+		for (int block : new int[] { 1, 7, 64, 441, 4096, RAMP_FRAMES * 2 })
+		{
+			float[] out = rampDown(block);
+			int reached = 0;
+			while (Math.abs(out[2 * reached] - 0.01F) > 1e-6F)
+				reached++;
+			assertTrue(Math.abs(reached - RAMP_FRAMES) <= 2, block + " frame blocks reached it at " + reached);
+			// within 0.01 dB
+			for (int i=0; i<out.length; i++)
+				assertEquals(reference[i], out[i], reference[i] * 1.2e-3F, block + " frame blocks, sample " + i);
+		}
+	}
+
+	@Test
+	void jumpsWithoutARate()
+	{
+		GainRamp ramp = new GainRamp();
+		float[] in = { 1F, 1F, 1F, 1F };
+		float[] out = new float[4];
+
+		ramp.setTarget(-20F, 0F);
+		ramp.process(in, 0, out, 0, 4, 2, FREQUENCY);
+		assertEquals(0.1F, out[0], 1e-6F);
+		assertEquals(0.1F, out[3], 1e-6F);
+
+		// silent at and below SILENT_GAIN
+		ramp.setTarget(GainRamp.SILENT_GAIN, Float.POSITIVE_INFINITY);
+		ramp.process(in, 0, out, 0, 4, 2, FREQUENCY);
+		assertEquals(0F, out[0]);
+		assertEquals(0F, out[3]);
+
+		// starts at the target again after a reset
+		ramp.setTarget(0F, 1F);
+		ramp.reset();
+		ramp.process(in, 0, out, 0, 4, 2, FREQUENCY);
+		assertEquals(1F, out[0]);
+	}
+}
@@ -0,0 +1,102 @@
+package rm_javazoom.jl.player;
+
+import rm_javazoom.jl.decoder.JavaLayerException;
+
+/**
+ * A device that plays what it's given the moment it may, and keeps it.
+ * Writes wait until the test allows that many more samples, so it
+ * controls how far output gets.
+ */
+class GatedAudioDevice extends AudioDeviceBase
+{
+	private final int samplesPerSecond;
+
+	private float[] played = new float[0];
+	private int size = 0;
+	private long allowed = 0;
+	private boolean waiting = false;
+	private boolean closed = false;
+
+	GatedAudioDevice(int frequency, int channels)
+	{
+		samplesPerSecond = frequency * channels;
+	}
+
+	synchronized void allow(long samples)
+	{
+		allowed += samples;
+		notifyAll();
+	}
+
+	synchronized void allowAll()
+	{
+		allow(Long.MAX_VALUE / 2);
+	}
+
+	/**
+	 * True while a write waits to be allowed.
+	 */
+	synchronized boolean isWaiting()
+	{
+		return waiting;
+	}
+
+	synchronized float[] played()
+	{
+		float[] copy = new float[size];
+		System.arraycopy(played, 0, copy, 0, size);
+		return copy;
+	}
+
+	synchronized int size()
+	{
+		return size;
+	}
+
+	@Override
+	protected synchronized void writeImpl(float[] samples, int offs, int len)
+		throws JavaLayerException
+	{
+		while (allowed < len && !closed)
+		{
+			waiting = true;
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException ex)
+			{
+				throw new JavaLayerException("interrupted", ex);
+			}
+			finally
+			{
+				waiting = false;
+			}
+		}
+		if (closed)
+			return;
+
+		allowed -= len;
+		if (size + len > played.length)
+		{
+			float[] more = new float[Math.max(2 * played.length, size + len)];
+			System.arraycopy(played, 0, more, 0, size);
+			played = more;
+		}
+		System.arraycopy(samples, offs, played, size, len);
+		size += len;
+	}
+
+	@Override
+	protected synchronized void closeImpl()
+	{
+		closed = true;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized int getPosition()
+	{
+		return (int)(size * 1000L / samplesPerSecond);
+	}
+}
@@ -0,0 +1,200 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PcmCacheTest
+{
+	// samples that fill about one chunk
+	private static final int SONG_SAMPLES = PcmCache.CHUNK_BYTES / 2 - 1000;
+
+	/**
+	 * A ramp of stereo samples, different for every song.
+	 */
+	static float[] song(int seed, int samples)
+	{
+		float[] song = new float[samples];
+		for (int i=0; i<samples; i++)
+			song[i] = (seed * 1000 + i * 7) % 60000 - 30000;
+		return song;
+	}
+
+	static void record(PcmCache cache, String key, float[] song)
+	{
+		PcmCache.Writer writer = cache.record(key, 0);
+		assertNotNull(writer, key);
+		writer.setFormat(44100, 2);
+		// in blocks like the decoder writes
+		for (int offs=0; offs<song.length; offs+=2304)
+			writer.write(song, offs, Math.min(2304, song.length - offs));
+		writer.commit();
+	}
+
+	static float[] readAll(PcmCache.Reader reader)
+	{
+		float[] all = new float[0];
+		float[] block = new float[reader.getBlockSize() + 100];
+		int n;
+		while ((n = reader.read(block)) > 0)
+		{
+			assertTrue(n <= reader.getBlockSize());
+			float[] more = new float[all.length + n];
+			System.arraycopy(all, 0, more, 0, all.length);
+			System.arraycopy(block, 0, more, all.length, n);
+			all = more;
+		}
+		return all;
+	}
+
+	@Test
+	void readsBackWhatWasRecorded()
+	{
+		PcmCache cache = new PcmCache(8L * PcmCache.CHUNK_BYTES);
+		float[] song = song(1, 3 * PcmCache.CHUNK_BYTES / 4 + 10);
+		song[0] = 40000.5F;
+		song[1] = -40000.5F;
+		assertNull(cache.open("song", 0));
+		record(cache, "song", song);
+
+		PcmCache.Reader reader = cache.open("song", 0);
+		assertNotNull(reader);
+		assertEquals(44100, reader.getFrequency());
+		assertEquals(2, reader.getChannels());
+		assertEquals((long)song.length / 2 * 1000 / 44100, reader.getDurationMillis());
+
+		// stored as 16 bit, clipped
+		float[] read = readAll(reader);
+		assertEquals(song.length, read.length);
+		assertEquals(32767F, read[0]);
+		assertEquals(-32767F, read[1]);
+		for (int i=2; i<song.length; i++)
+			assertEquals(song[i], read[i], "sample " + i);
+
+		reader.seekMillis(1000);
+		float[] block = new float[reader.getBlockSize()];
+		assertEquals(reader.getBlockSize(), reader.read(block));
+		assertEquals(song[2 * 44100], block[0]);
+		reader.close();
+
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2L * song.length + 2L * reader.getBlockSize(), cache.getBytesRead());
+		assertEquals(2L * song.length, cache.getUsedBytes());
+		assertEquals(2L * PcmCache.CHUNK_BYTES, cache.getAllocatedBytes());
+	}
+
+	@Test
+	void addsOnlyCommittedSongs()
+	{
+		PcmCache cache = new PcmCache(8L * PcmCache.CHUNK_BYTES);
+		PcmCache.Writer writer = cache.record("song", 0);
+		writer.setFormat(44100, 2);
+		writer.write(song(1, SONG_SAMPLES), 0, SONG_SAMPLES);
+		assertNull(cache.open("song", 0));
+		writer.abort();
+		writer.commit();
+		assertNull(cache.open("song", 0));
+		assertEquals(0, cache.getEntries());
+
+		// a stream that changes format isn't cached either
+		writer = cache.record("song", 0);
+		writer.setFormat(44100, 2);
+		writer.write(song(1, 100), 0, 100);
+		writer.setFormat(48000, 2);
+		writer.write(song(1, 100), 0, 100);
+		writer.commit();
+		assertEquals(0, cache.getEntries());
+
+		// the chunks of both went back to be reused
+		record(cache, "song", song(1, SONG_SAMPLES));
+		assertEquals(PcmCache.CHUNK_BYTES, cache.getAllocatedBytes());
+	}
+
+	@Test
+	void opensOnlyTheSameVariant()
+	{
+		PcmCache cache = new PcmCache(8L * PcmCache.CHUNK_BYTES);
+		record(cache, "song", song(1, 100));
+		assertNull(cache.open("song", 1));
+		cache.open("song", 0).close();
+		cache.open("song", -1).close();
+	}
+
+	@Test
+	void evictsLeastRecentlyPlayed()
+	{
+		PcmCache cache = new PcmCache(4L * PcmCache.CHUNK_BYTES);
+		for (int i=0; i<4; i++)
+			record(cache, "song" + i, song(i, SONG_SAMPLES));
+		cache.open("song0", 0).close();
+
+		record(cache, "song4", song(4, SONG_SAMPLES));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(4, cache.getEntries());
+		assertNull(cache.open("song1", 0));
+		assertNotNull(cache.open("song0", 0));
+		assertTrue(cache.getAllocatedBytes() <= cache.getBudget());
+	}
+
+	@Test
+	void keepsSongsBeingPlayed()
+	{
+		PcmCache cache = new PcmCache(2L * PcmCache.CHUNK_BYTES);
+		record(cache, "song0", song(0, SONG_SAMPLES));
+		record(cache, "song1", song(1, SONG_SAMPLES));
+		PcmCache.Reader reader0 = cache.open("song0", 0);
+		PcmCache.Reader reader1 = cache.open("song1", 0);
+
+		// nothing can be evicted, so the new song isn't recorded
+		record(cache, "song2", song(2, SONG_SAMPLES));
+		assertEquals(0, cache.getEvictions());
+		assertNull(cache.open("song2", 0));
+
+		// a new recording of a song being played replaces it once that's closed
+		reader1.close();
+		record(cache, "song0", song(3, SONG_SAMPLES));
+		assertEquals(song(0, SONG_SAMPLES)[SONG_SAMPLES - 1], readAll(reader0)[SONG_SAMPLES - 1]);
+		reader0.close();
+		assertEquals(song(3, SONG_SAMPLES)[SONG_SAMPLES - 1], readAll(cache.open("song0", 0))[SONG_SAMPLES - 1]);
+	}
+
+	@Test
+	void dropsSongsLargerThanTheBudget()
+	{
+		PcmCache cache = new PcmCache(2L * PcmCache.CHUNK_BYTES);
+		record(cache, "long", song(1, 3 * PcmCache.CHUNK_BYTES / 2));
+		assertNull(cache.open("long", 0));
+		assertEquals(0, cache.getUsedBytes());
+		assertTrue(cache.getAllocatedBytes() <= cache.getBudget());
+
+		record(cache, "song0", song(0, SONG_SAMPLES));
+		record(cache, "song1", song(1, SONG_SAMPLES));
+		assertEquals(2, cache.getEntries());
+		assertEquals(2L * PcmCache.CHUNK_BYTES, cache.getAllocatedBytes());
+	}
+
+	@Test
+	void shrinksToTheBudget()
+	{
+		PcmCache cache = new PcmCache(4L * PcmCache.CHUNK_BYTES);
+		for (int i=0; i<4; i++)
+			record(cache, "song" + i, song(i, SONG_SAMPLES));
+
+		cache.setBudget(2L * PcmCache.CHUNK_BYTES);
+		assertEquals(2, cache.getEntries());
+		assertNotNull(cache.open("song3", 0));
+		assertTrue(cache.getAllocatedBytes() <= cache.getBudget());
+
+		cache.setBudget(0);
+		assertFalse(cache.isEnabled());
+		assertNull(cache.record("song", 0));
+		assertNull(cache.open("song3", 0));
+		// only the song still open is left
+		assertEquals(1, cache.getEntries());
+	}
+}
@@ -0,0 +1,146 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import rm_javazoom.jl.decoder.Decoder;
+
+class PcmMixerTest
+{
+	private static final int FREQUENCY = 44100;
+	private static final int BLOCK = 2304;
+	private static final int CHUNK = 2 * BLOCK;
+	private static final int CHUNK_FRAMES = CHUNK / 2;
+
+	static DecodeAheadAudioDevice crossfade(DecodeAheadAudioDevice previous, int millis) throws Exception
+	{
+		DecodeAheadAudioDevice next = new DecodeAheadAudioDevice(previous, millis, 2000, 50);
+		next.setInputFormat(FREQUENCY, 2, BLOCK);
+		next.open(new Decoder());
+		return next;
+	}
+
+	static void write(DecodeAheadAudioDevice device, float level, int blocks) throws Exception
+	{
+		float[] block = new float[BLOCK];
+		Arrays.fill(block, level);
+		for (int i=0; i<blocks; i++)
+			device.write(block, 0, BLOCK);
+	}
+
+	@Test
+	void crossfadesWithEqualPower() throws Exception
+	{
+		GatedAudioDevice device = new GatedAudioDevice(FREQUENCY, 2);
+		DecodeAheadAudioDevice a = DecodeAheadAudioDeviceTest.open(device, 2000, 50);
+		write(a, 1000F, 40);
+		// the first chunk of a waits to be played
+		StreamAudioDeviceTest.await(device::isWaiting, "output to start");
+
+		int fadeFrames = FREQUENCY / 10;
+		DecodeAheadAudioDevice b = crossfade(a, 100);
+		write(b, 2000F, 40);
+		device.allowAll();
+		int frames = CHUNK_FRAMES + fadeFrames + 100;
+		StreamAudioDeviceTest.await(() -> device.size() >= 2 * frames, "the crossfade");
+
+		float[] out = device.played();
+		for (int f=0; f<CHUNK_FRAMES; f++)
+			assertEquals(1000F, out[2 * f], "frame " + f);
+		// cos * A + sin * B, from the chunk after the one that was waiting
+		for (int k=0; k<fadeFrames; k++)
+		{
+			double angle = Math.PI / 2 * k / fadeFrames;
+			float expected = (float)(1000 * Math.cos(angle) + 2000 * Math.sin(angle));
+			int f = CHUNK_FRAMES + k;
+			assertEquals(expected, out[2 * f], 0.5F, "frame " + k + " of the fade");
+			assertEquals(out[2 * f], out[2 * f + 1], "frame " + k + " of the fade");
+		}
+		for (int f=CHUNK_FRAMES + fadeFrames; f<frames; f++)
+			assertEquals(2000F, out[2 * f], "frame " + f);
+
+		assertTrue(a.isFadedOut());
+		assertEquals(0, a.getUnderruns());
+		a.close();
+		b.close();
+	}
+
+	@Test
+	void chargesAnUnderrunDuringACrossfadeToTheOutgoingInput() throws Exception
+	{
+		GatedAudioDevice device = new GatedAudioDevice(FREQUENCY, 2);
+		DecodeAheadAudioDevice a = DecodeAheadAudioDeviceTest.open(device, 2000, 50);
+		// one chunk that's held up, and one more to mix into the next input
+		write(a, 1000F, 4);
+		StreamAudioDeviceTest.await(device::isWaiting, "output to start");
+
+		DecodeAheadAudioDevice b = crossfade(a, 1000);
+		write(b, 2000F, 40);
+		device.allowAll();
+
+		// a has nothing more while b has plenty
+		StreamAudioDeviceTest.await(() -> a.getUnderruns() > 0, "an underrun");
+		Thread.sleep(20);
+		assertEquals(1, a.getUnderruns());
+		assertEquals(0, b.getUnderruns());
+		assertEquals(2 * CHUNK, device.size());
+
+		// the crossfade carries on once a catches up, b didn't have to buffer again
+		write(a, 1000F, 4);
+		StreamAudioDeviceTest.await(() -> device.size() >= 4 * CHUNK, "the crossfade to go on");
+		assertEquals(0, b.getUnderruns());
+		float[] out = device.played();
+		for (int i=2 * CHUNK; i<4 * CHUNK; i++)
+			assertTrue(out[i] > 1000F && out[i] < 2000F, "sample " + i + " is " + out[i]);
+
+		a.close();
+		b.close();
+	}
+
+	@Test
+	void letsACrossfadeFinishBeforeTheNextOne() throws Exception
+	{
+		GatedAudioDevice device = new GatedAudioDevice(FREQUENCY, 2);
+		DecodeAheadAudioDevice a = DecodeAheadAudioDeviceTest.open(device, 2000, 50);
+		write(a, 1000F, 60);
+		StreamAudioDeviceTest.await(device::isWaiting, "output to start");
+
+		// half a second, so it's still going when the next song comes
+		int fadeFrames = FREQUENCY / 2;
+		DecodeAheadAudioDevice b = crossfade(a, 500);
+		write(b, 2000F, 60);
+		device.allow(2 * CHUNK);
+		StreamAudioDeviceTest.await(() -> device.size()==2 * CHUNK && device.isWaiting(), "the crossfade to start");
+
+		DecodeAheadAudioDevice c = crossfade(b, 500);
+		write(c, 3000F, 60);
+		device.allowAll();
+		int frames = CHUNK_FRAMES + 3 * fadeFrames;
+		StreamAudioDeviceTest.await(() -> device.size() >= 2 * frames, "both crossfades");
+
+		float[] out = device.played();
+		float largestStep = 0F;
+		int atB = 0;
+		for (int f=1; f<frames; f++)
+		{
+			largestStep = Math.max(largestStep, Math.abs(out[2 * f] - out[2 * f - 2]));
+			if (out[2 * f]==2000F)
+				atB++;
+		}
+		// dropping a part way through its fade would step by hundreds
+		assertTrue(largestStep < 5F, "step of " + largestStep);
+		// the first crossfade ended on b alone before the next one started
+		assertTrue(atB > 0);
+		assertTrue(a.isFadedOut());
+		assertTrue(b.isFadedOut());
+		assertEquals(3000F, out[2 * frames - 1]);
+
+		a.close();
+		b.close();
+		c.close();
+	}
+}
@@ -0,0 +1,104 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PcmRingBufferTest
+{
+	static float[] ramp(int first, int len)
+	{
+		float[] ramp = new float[len];
+		for (int i=0; i<len; i++)
+			ramp[i] = first + i;
+		return ramp;
+	}
+
+	@Test
+	void roundsUpToAPowerOfTwo()
+	{
+		assertEquals(4, new PcmRingBuffer(3).capacity());
+		assertEquals(1024, new PcmRingBuffer(1000).capacity());
+		assertEquals(1024, new PcmRingBuffer(1024).capacity());
+		assertEquals(2048, new PcmRingBuffer(1025).capacity());
+	}
+
+	@Test
+	void wrapsAround()
+	{
+		PcmRingBuffer ring = new PcmRingBuffer(16);
+		float[] out = new float[32];
+
+		assertEquals(10, ring.write(ramp(0, 10), 0, 10));
+		assertEquals(10, ring.read(out, 0, 10));
+		assertEquals(0, ring.size());
+
+		// starts at 10 and wraps at 16
+		assertEquals(16, ring.write(ramp(10, 20), 0, 20));
+		assertEquals(16, ring.size());
+		assertEquals(0, ring.write(ramp(26, 1), 0, 1));
+
+		// read in two parts, the first across the wrap
+		assertEquals(9, ring.read(out, 3, 9));
+		assertEquals(7, ring.read(out, 12, 32));
+		assertEquals(0, ring.read(out, 0, 1));
+		for (int i=0; i<16; i++)
+			assertEquals(10 + i, out[3 + i], "sample " + i);
+
+		ring.write(ramp(0, 5), 0, 5);
+		ring.clear();
+		assertEquals(0, ring.size());
+		assertEquals(0, ring.read(out, 0, 5));
+	}
+
+	@Test
+	void keepsOrderBetweenTwoThreads() throws Exception
+	{
+		final int total = 1_000_000;
+		PcmRingBuffer ring = new PcmRingBuffer(4096);
+
+		Thread producer = new Thread(() -> {
+			Random random = new Random(1);
+			float[] block = new float[3000];
+			int written = 0;
+			while (written < total)
+			{
+				int len = Math.min(1 + random.nextInt(block.length), total - written);
+				for (int i=0; i<len; i++)
+					block[i] = (written + i) % 1_000_000;
+				int offs = 0;
+				while (offs < len)
+				{
+					int n = ring.write(block, offs, len - offs);
+					if (n == 0)
+						Thread.yield();
+					offs += n;
+				}
+				written += len;
+			}
+		});
+		producer.start();
+
+		Random random = new Random(2);
+		float[] block = new float[3000];
+		int read = 0;
+		boolean inOrder = true;
+		while (read < total)
+		{
+			int n = ring.read(block, 0, 1 + random.nextInt(block.length));
+			for (int i=0; i<n; i++)
+				inOrder &= block[i] == (read + i) % 1_000_000;
+			if (n == 0)
+				Thread.yield();
+			read += n;
+		}
+		producer.join();
+
+		assertEquals(total, read);
+		assertEquals(0, ring.size());
+		assertTrue(inOrder, "samples came out of order");
+	}
+}
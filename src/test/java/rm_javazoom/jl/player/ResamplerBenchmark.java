@@ -0,0 +1,78 @@
+package rm_javazoom.jl.player;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the CPU time the <code>Resampler</code> takes for each second
+ * of audio it converts, at each quality. Not a test, run it by hand:
+ * <pre>
+ * java -cp ... rm_javazoom.jl.player.ResamplerBenchmark [seconds]
+ * </pre>
+ */
+class ResamplerBenchmark
+{
+	private static final int BLOCK_FRAMES = 1152;
+
+	public static void main(String[] args)
+	{
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+		int[][] conversions = {
+			{ 44100, 2, 48000, 2 },
+			{ 48000, 2, 44100, 2 },
+			{ 22050, 1, 48000, 2 },
+			{ 48000, 2, 48000, 2 },
+		};
+
+		System.out.println("conversion              taps  us per second  % of one core");
+		for (int[] c : conversions)
+		{
+			for (int taps : new int[] { Resampler.LOW_QUALITY, Resampler.MEDIUM_QUALITY, Resampler.HIGH_QUALITY })
+			{
+				// once to warm up, once to time
+				run(c, taps, seconds);
+				long nanos = run(c, taps, seconds);
+				double perSecond = (double)nanos / seconds;
+				// the same format is only copied, taps don't matter
+				boolean same = c[0]==c[2] && c[1]==c[3];
+				System.out.printf("%5d/%d -> %5d/%d     %4s  %13.0f  %13.3f%n",
+					c[0], c[1], c[2], c[3], same ? "-" : String.valueOf(taps), perSecond / 1000, perSecond / 1e7);
+				if (same)
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Converts <code>seconds</code> of a tone in blocks of one MP3 frame.
+	 *
+	 * @return the CPU time it took in nanoseconds, or the wall time where
+	 *		   the VM can't tell CPU time.
+	 */
+	static long run(int[] conversion, int taps, int seconds)
+	{
+		int channels = conversion[1];
+		Resampler resampler = new Resampler(conversion[0], channels, conversion[2], conversion[3], taps);
+		float[] tone = ResamplerTest.tone(440, conversion[0], conversion[0] * channels);
+		int blocks = conversion[0] * seconds / BLOCK_FRAMES;
+		int len = BLOCK_FRAMES * channels;
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		boolean cpu = threads.isCurrentThreadCpuTimeSupported();
+		long start = cpu ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+		float sink = 0F;
+		for (int b=0, offs=0; b<blocks; b++)
+		{
+			if (offs + len > tone.length)
+				offs = 0;
+			int n = resampler.process(tone, offs, len);
+			sink += resampler.getBuffer()[n - 1];
+			offs += len;
+		}
+		long end = cpu ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+		// keep the work from being optimised away
+		if (sink==Float.MAX_VALUE)
+			System.out.println(sink);
+		return end - start;
+	}
+}
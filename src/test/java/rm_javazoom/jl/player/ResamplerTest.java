@@ -0,0 +1,163 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ResamplerTest
+{
+	private static final int[] QUALITIES = { Resampler.LOW_QUALITY, Resampler.MEDIUM_QUALITY, Resampler.HIGH_QUALITY };
+
+	static float[] tone(double frequency, int sampleRate, int frames)
+	{
+		float[] tone = new float[frames];
+		for (int i=0; i<frames; i++)
+			tone[i] = (float)(0.5 * Math.sin(2 * Math.PI * frequency * i / sampleRate));
+		return tone;
+	}
+
+	/**
+	 * Runs all of <code>in</code> through in blocks of random length and
+	 * drains it.
+	 */
+	static float[] resample(Resampler resampler, float[] in, int channels, long seed)
+	{
+		Random random = new Random(seed);
+		float[] out = new float[resampler.getMaxOutput(in.length) + resampler.getMaxOutput(64 * channels)];
+		int outLen = 0;
+		for (int offs=0; offs<in.length; )
+		{
+			int len = Math.min((1 + random.nextInt(1500)) * channels, in.length - offs);
+			int n = resampler.process(in, offs, len);
+			assertTrue(n <= resampler.getMaxOutput(len), n + " samples from " + len);
+			System.arraycopy(resampler.getBuffer(), 0, out, outLen, n);
+			outLen += n;
+			offs += len;
+		}
+		int n = resampler.drain();
+		System.arraycopy(resampler.getBuffer(), 0, out, outLen, n);
+		outLen += n;
+
+		float[] trimmed = new float[outLen];
+		System.arraycopy(out, 0, trimmed, 0, outLen);
+		return trimmed;
+	}
+
+	/**
+	 * Signal to noise ratio in dB of a mono tone resampled, against the
+	 * same tone at the output rate delayed as far as the filter delays it.
+	 */
+	static double snr(double frequency, int inFrequency, int outFrequency, int taps)
+	{
+		float[] out = resample(new Resampler(inFrequency, 1, outFrequency, 1, taps), tone(frequency, inFrequency, inFrequency), 1, 1);
+
+		int gcd = inFrequency;
+		for (int b=outFrequency; b!=0; )
+		{
+			int t = gcd % b;
+			gcd = b;
+			b = t;
+		}
+		int up = outFrequency / gcd;
+		// the filter is centred (up * taps - 1) / 2 upsampled samples back
+		double delay = (up * taps - 1) / (2.0 * up) / inFrequency;
+
+		double signal = 0, noise = 0;
+		// leave out the filter filling up and running empty at each end
+		for (int m=taps * 2; m<outFrequency - taps * 2; m++)
+		{
+			double expected = 0.5 * Math.sin(2 * Math.PI * frequency * ((double)m / outFrequency - delay));
+			signal += expected * expected;
+			noise += (out[m] - expected) * (out[m] - expected);
+		}
+		return 10 * Math.log10(signal / noise);
+	}
+
+	@Test
+	void keepsATonePure()
+	{
+		double[] least = { 55, 70, 90 };
+		for (int q=0; q<QUALITIES.length; q++)
+		{
+			for (int[] rates : new int[][] { { 44100, 48000 }, { 48000, 44100 }, { 22050, 44100 }, { 32000, 48000 } })
+			{
+				double snr = snr(1000, rates[0], rates[1], QUALITIES[q]);
+				assertTrue(snr > least[q], QUALITIES[q] + " taps, " + rates[0] + " -> " + rates[1] + ": " + snr + " dB");
+			}
+		}
+	}
+
+	@Test
+	void stopsWhatTheOutputRateCannotHold()
+	{
+		// 20 kHz would alias to 2.05 kHz at 22050 Hz
+		double[] most = { -45, -70, -85 };
+		for (int q=0; q<QUALITIES.length; q++)
+		{
+			float[] out = resample(new Resampler(44100, 1, 22050, 1, QUALITIES[q]), tone(20000, 44100, 44100), 1, 1);
+			double power = 0;
+			for (int m=1000; m<21000; m++)
+				power += out[m] * out[m];
+			double db = 10 * Math.log10(power / 20000 / 0.125);
+			assertTrue(db < most[q], QUALITIES[q] + " taps let through " + db + " dB");
+		}
+	}
+
+	@Test
+	void givesTheExactNumberOfSamples()
+	{
+		int[][] conversions = { { 44100, 48000 }, { 48000, 44100 }, { 22050, 44100 }, { 44100, 22050 }, { 32000, 48000 }, { 11025, 48000 } };
+		for (int[] rates : conversions)
+		{
+			for (int taps : QUALITIES)
+			{
+				for (int frames : new int[] { 1, 1151, 1152, 44100, 100_003 })
+				{
+					Resampler resampler = new Resampler(rates[0], 2, rates[1], 2, taps);
+					float[] out = resample(resampler, new float[2 * frames], 2, frames);
+
+					// every output frame up to the end of the input and the
+					// half filter drained after it
+					long expected = ((long)(frames + taps / 2) * rates[1] + rates[0] - 1) / rates[0];
+					assertEquals(2 * expected, out.length, rates[0] + " -> " + rates[1] + ", " + taps + " taps, " + frames + " frames");
+				}
+			}
+		}
+	}
+
+	@Test
+	void mapsChannels()
+	{
+		float[] stereo = { 1F, 3F, -2F, 2F, 0.5F, 0.25F };
+		Resampler down = new Resampler(44100, 2, 44100, 1, Resampler.HIGH_QUALITY);
+		assertFalse(down.isPassThrough());
+		assertEquals(3, down.process(stereo, 0, stereo.length));
+		assertArrayEquals(new float[] { 2F, 0F, 0.375F }, Arrays.copyOf(down.getBuffer(), 3));
+
+		float[] mono = { 1F, -1F, 0.5F };
+		Resampler up = new Resampler(44100, 1, 44100, 2, Resampler.HIGH_QUALITY);
+		assertEquals(6, up.process(mono, 0, mono.length));
+		assertArrayEquals(new float[] { 1F, 1F, -1F, -1F, 0.5F, 0.5F }, Arrays.copyOf(up.getBuffer(), 6));
+	}
+
+	@Test
+	void passesTheSameFormatThrough()
+	{
+		Resampler same = new Resampler(48000, 2, 48000, 2, Resampler.HIGH_QUALITY);
+		assertTrue(same.isPassThrough());
+		float[] in = PcmRingBufferTest.ramp(1, 2000);
+		assertArrayEquals(in, resample(same, in, 2, 1));
+
+		// a new stream doesn't start with the end of the last
+		same.process(in, 0, 10);
+		same.reset();
+		assertEquals(4, same.process(in, 100, 4));
+		assertArrayEquals(new float[] { 101F, 102F, 103F, 104F }, Arrays.copyOf(same.getBuffer(), 4));
+	}
+}
@@ -0,0 +1,262 @@
+package rm_javazoom.jl.player;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.jupiter.api.Test;
+
+import rm_javazoom.jl.decoder.JavaLayerException;
+
+class StreamAudioDeviceTest
+{
+	private static final int FREQUENCY = 44100;
+
+	// 10 ms buffers keep the real time playback of the tests short
+	private static final int BUFFER_MILLIS = 10;
+
+	/**
+	 * Keeps everything the player takes from the stream, silence included.
+	 */
+	static class Recorder extends HeadlessStreamPlayer
+	{
+		private short[] taken = new short[0];
+		private int size = 0;
+
+		Recorder(StreamAudioDevice device)
+		{
+			super(device);
+		}
+
+		@Override
+		protected synchronized void consume(ByteBuffer buffer)
+		{
+			int n = buffer.remaining() / 2;
+			if (size + n > taken.length)
+			{
+				short[] more = new short[Math.max(2 * taken.length, size + n)];
+				System.arraycopy(taken, 0, more, 0, size);
+				taken = more;
+			}
+			buffer.asShortBuffer().get(taken, size, n);
+			size += n;
+		}
+
+		synchronized short[] taken()
+		{
+			short[] copy = new short[size];
+			System.arraycopy(taken, 0, copy, 0, size);
+			return copy;
+		}
+
+		synchronized int size()
+		{
+			return size;
+		}
+	}
+
+	static StreamAudioDevice open() throws JavaLayerException
+	{
+		StreamAudioDevice device = new StreamAudioDevice(BUFFER_MILLIS, 2);
+		device.open(new AudioFormat(FREQUENCY, 16, 2, true, false));
+		return device;
+	}
+
+	/**
+	 * Stereo samples that are never 0, so silence can be told apart.
+	 */
+	static float[] samples(int first, int len)
+	{
+		float[] samples = new float[len];
+		for (int i=0; i<len; i++)
+			samples[i] = 1 + (first + i) % 20000;
+		return samples;
+	}
+
+	static short[] withoutSilence(short[] taken)
+	{
+		int n = 0;
+		short[] kept = new short[taken.length];
+		for (short s : taken)
+		{
+			if (s!=0)
+				kept[n++] = s;
+		}
+		short[] result = new short[n];
+		System.arraycopy(kept, 0, result, 0, n);
+		return result;
+	}
+
+	static short[] expected(int len)
+	{
+		short[] expected = new short[len];
+		for (int i=0; i<len; i++)
+			expected[i] = (short)(1 + i % 20000);
+		return expected;
+	}
+
+	static void await(BooleanSupplier condition, String what) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (!condition.getAsBoolean())
+		{
+			assertTrue(System.nanoTime() < deadline, "timed out waiting for " + what);
+			Thread.sleep(2);
+		}
+	}
+
+	@Test
+	void playsToTheEndOfTheStream() throws Exception
+	{
+		StreamAudioDevice device = open();
+		Recorder player = new Recorder(device);
+		player.start();
+
+		int len = FREQUENCY / 5 * 2;
+		for (int offs=0; offs<len; offs+=2304)
+			device.write(samples(offs, Math.min(2304, len - offs)), 0, Math.min(2304, len - offs));
+		PcmStream stream = device.getStream();
+		// returns once the player has taken everything
+		device.flush();
+		assertEquals(200, device.getPosition());
+		device.close();
+
+		assertNull(device.getStream());
+		assertTrue(stream.isEnded());
+		await(() -> !stream.isAttached(), "the player to let go of the stream");
+		assertEquals(1, player.getStreams());
+		assertArrayEquals(expected(len), withoutSilence(player.taken()));
+		player.stop();
+	}
+
+	@Test
+	void fadesOutWithoutAClick() throws Exception
+	{
+		StreamAudioDevice device = open();
+		Recorder player = new Recorder(device);
+		player.start();
+
+		float[] loud = new float[2304];
+		Arrays.fill(loud, 10000F);
+		Thread writer = new Thread(() -> {
+			try
+			{
+				// far more than is played before the fade, the writes after it are dropped
+				for (int i=0; i<1000; i++)
+					device.write(loud, 0, loud.length);
+			}
+			catch (JavaLayerException ex)
+			{
+				throw new RuntimeException(ex);
+			}
+		});
+		writer.start();
+
+		await(() -> player.size() > FREQUENCY / 10, "some of the song to play");
+		PcmStream stream = device.getStream();
+		device.fadeOut(20);
+		writer.join(5000);
+		assertFalse(writer.isAlive(), "a write still waits for the stream");
+		await(stream::isEnded, "the end of the fade");
+		await(() -> !stream.isAttached(), "the player to let go of the stream");
+
+		short[] taken = player.taken();
+		assertTrue(taken.length < 1000 * loud.length);
+		assertEquals(0, taken[taken.length - 1]);
+		assertEquals(0, taken[taken.length - 2]);
+		// everything before the fade was at full level, and the fade is smooth
+		int start = 0;
+		while (taken[start]==0)
+			start++;
+		int fading = 0;
+		for (int i=start + 2; i<taken.length; i++)
+		{
+			assertTrue(taken[i] <= taken[i - 2], "sample " + i + " went up");
+			assertTrue(taken[i - 2] - taken[i] <= 100, "sample " + i + " jumped");
+			if (taken[i] > 0 && taken[i] < 10000)
+				fading++;
+		}
+		// at least one whole buffer was still queued to fade
+		assertTrue(fading >= FREQUENCY * BUFFER_MILLIS / 1000 * 2 - 4, "fade of " + fading + " samples");
+		device.close();
+		player.stop();
+	}
+
+	@Test
+	void anotherPlayerCarriesOnWhereTheLastStopped() throws Exception
+	{
+		StreamAudioDevice device = open();
+		Recorder first = new Recorder(device);
+		first.start();
+
+		int len = FREQUENCY / 2 * 2;
+		int written = 0;
+		while (first.size() < FREQUENCY / 10)
+		{
+			device.write(samples(written, 2304), 0, 2304);
+			written += 2304;
+		}
+		// a sound engine dropping the source, e.g. for a device change
+		first.stop();
+		PcmStream stream = device.getStream();
+		assertFalse(stream.isAttached());
+
+		Recorder second = new Recorder(device);
+		second.start();
+		for (; written<len; written+=2304)
+			device.write(samples(written, Math.min(2304, len - written)), 0, Math.min(2304, len - written));
+		device.flush();
+		device.close();
+		await(() -> !stream.isAttached(), "the second player to let go of the stream");
+
+		short[] firstTaken = withoutSilence(first.taken());
+		short[] secondTaken = withoutSilence(second.taken());
+		assertTrue(firstTaken.length > 0);
+		assertTrue(secondTaken.length > 0);
+		short[] both = new short[firstTaken.length + secondTaken.length];
+		System.arraycopy(firstTaken, 0, both, 0, firstTaken.length);
+		System.arraycopy(secondTaken, 0, both, firstTaken.length, secondTaken.length);
+		assertArrayEquals(expected(len), both);
+		assertEquals(1, first.getStreams());
+		assertEquals(1, second.getStreams());
+		second.stop();
+	}
+
+	@Test
+	void playsSilenceWhileNothingIsWritten() throws Exception
+	{
+		StreamAudioDevice device = open();
+		Recorder player = new Recorder(device);
+		player.start();
+
+		int len = FREQUENCY / 20 * 2;
+		device.write(samples(0, len), 0, len);
+		device.flush();
+		PcmStream stream = device.getStream();
+		// the decoder stalls for a while, the stream keeps going on silence
+		await(() -> stream.getUnderruns() >= 3, "underruns");
+		long silent = player.getBytesPlayed() - stream.getBytesRead();
+		assertTrue(silent > 0);
+
+		device.write(samples(len, len), 0, len);
+		device.flush();
+		device.close();
+		await(() -> !stream.isAttached(), "the player to let go of the stream");
+
+		short[] taken = player.taken();
+		assertTrue(taken.length * 2L > 4L * len);
+		assertEquals(4L * len, stream.getBytesRead());
+		assertArrayEquals(expected(2 * len), withoutSilence(taken));
+		// the silence is between the two writes, not after the end
+		assertTrue(taken[taken.length - 1]!=0);
+		player.stop();
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not, write to the Free Software
+ *   Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ *----------------------------------------------------------------------
+ */
+package rm_javazoom.jl.decoder;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Polyphase windowing of the synthesis filter on the incubating Vector API.
+ * <p>
+ * The scalar filter computes each pcm sample as a 16 tap dot product
+ * along a row of V, which would need a horizontal add per sample. Instead
+ * this keeps a transposed copy of both V vectors so the vector lanes run
+ * over 16 neighbouring pcm samples at once and no reduction is needed.
+ * <p>
+ * This class must only be touched once <code>SynthesisFilter</code> has
+ * checked that the <code>jdk.incubator.vector</code> module is present,
+ * otherwise loading it fails.
+ */
+final class VectorSynthesis
+{
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	private static final int LANES = SPECIES.length();
+
+	// pcm samples computed per step, 32 unless the filter is decimating
+	private final int width;
+	private final int inc;
+
+	// vt[width*j + i] == v[16*inc*i + j]
+	private final float[] vt1;
+	private final float[] vt2;
+
+	/**
+	 * @param width		32, or 16 or 8 to compute only every second or
+	 *					fourth sample.
+	 */
+	VectorSynthesis(int width)
+	{
+		this.width = width;
+		inc = 32 / width;
+		vt1 = new float[16 * width];
+		vt2 = new float[16 * width];
+	}
+
+	/**
+	 * Returns true if the platform has vectors wide enough to be worth it,
+	 * and a row of <code>width</code> samples is a whole number of vectors.
+	 */
+	static boolean isSupported(int width)
+	{
+		return LANES >= 4 && LANES <= width && (width % LANES) == 0;
+	}
+
+	public void reset()
+	{
+		Arrays.fill(vt1, 0.0f);
+		Arrays.fill(vt2, 0.0f);
+	}
+
+	/**
+	 * Computes the PCM samples of one synthesis step.
+	 *
+	 * @param v1			The first V vector of the filter.
+	 * @param v2			The second V vector of the filter.
+	 * @param actual_v		Whichever of v1 and v2 is read this step.
+	 * @param pos			The write position compute_new_v just wrote.
+	 * @param dw			The window for this write position, laid out
+	 *						so that <code>dw[width*j + i]</code> weights
+	 *						<code>actual_v[16*inc*i + j]</code>.
+	 * @param scalefactor	Scale applied to each sample.
+	 * @param out			Receives the <code>width</code> samples.
+	 */
+	void compute_pcm_samples(float[] v1, float[] v2, float[] actual_v, int pos,
+							 float[] dw, float scalefactor, float[] out)
+	{
+		// compute_new_v only wrote column pos of each V vector
+		final float[] t1 = vt1;
+		final float[] t2 = vt2;
+		final int col = pos * width;
+		for (int i=0, k=pos; i<width; i++, k+=16*inc)
+		{
+			t1[col + i] = v1[k];
+			t2[col + i] = v2[k];
+		}
+
+		final float[] vt = (actual_v == v1) ? t1 : t2;
+		for (int i=0; i<width; i+=LANES)
+		{
+			FloatVector acc = FloatVector.fromArray(SPECIES, vt, i)
+					.mul(FloatVector.fromArray(SPECIES, dw, i));
+			for (int j=width; j<16*width; j+=width)
+			{
+				acc = FloatVector.fromArray(SPECIES, vt, j + i)
+						.fma(FloatVector.fromArray(SPECIES, dw, j + i), acc);
+			}
+			acc.mul(scalefactor).intoArray(out, i);
+		}
+	}
+}